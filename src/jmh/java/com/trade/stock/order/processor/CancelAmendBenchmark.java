@@ -0,0 +1,92 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.exception.ResourceNotFoundException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link OrderProcessor#deleteOrder} and {@link OrderProcessor#processUpdate} on a resting book,
+ * by number of price levels per side and number of stocks. Cancel score is the time of a batch of cancels.
+ * Book is seeded once per trial and every iteration cancels the next distinct resting orders in random order.
+ * Cancelled orders are added back after every iteration and amends alternate between the amended and the original
+ * order, so the book keeps its shape for the whole run.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class CancelAmendBenchmark {
+
+    static final int CANCELS = 100;
+
+    @Param({"100", "10000"})
+    int depth;
+
+    @Param({"1", "100"})
+    int tickers;
+
+    private OrderProcessor processor;
+    private TradeOrderEntity[] amends;
+    private TradeOrderEntity[] originals;
+    //Symbol id of every original order, amends go in interned like they do from the service.
+    private int[] symbols;
+    private int nextAmend;
+    private int nextCancel;
+    private List<TradeOrderEntity> cancels;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        processor = OrderFlowGenerator.newProcessor();
+        List<TradeOrderEntity> shuffled = new OrderFlowGenerator(tickers, 42L).seedBook(processor, depth, 1);
+        Collections.shuffle(shuffled, new Random(7L));
+        originals = shuffled.toArray(new TradeOrderEntity[0]);
+        amends = new TradeOrderEntity[originals.length];
+        symbols = new int[originals.length];
+        for (int i = 0; i < originals.length; i++) {
+            amends[i] = OrderFlowGenerator.amend(originals[i], 1L, 2 * OrderFlowGenerator.LOT);
+            symbols[i] = OrderProcessor.symbols.find(originals[i].getStockTicker());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void pickCancels() {
+        cancels = new ArrayList<>(CANCELS);
+        for (int i = 0; i < CANCELS; i++) {
+            cancels.add(originals[nextCancel++ % originals.length]);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void restoreCancels() {
+        //Iteration fixtures also run around amend, only orders which were actually cancelled are added back.
+        for (TradeOrderEntity order : cancels) {
+            if (!OrderProcessor.orderIndex.containsKey(order.getOrderId())) {
+                processor.process(order);
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void cancel() throws ResourceNotFoundException {
+        for (TradeOrderEntity order : cancels) {
+            processor.deleteOrder(order.getOrderId());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public void amend() throws ResourceNotFoundException {
+        int index = nextAmend++ % (2 * originals.length);
+        int order = index % originals.length;
+        processor.processUpdate(index < originals.length ? amends[order] : originals[order], symbols[order]);
+    }
+}
@@ -0,0 +1,122 @@
+package com.trade.stock.order.processor;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TradeType;
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.dao.journal.NoOpOrderJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds order books and order flows for the benchmarks on top of {@link TestDataCreatorForOrderProcessor}.
+ * Prices are whole ticks of the default tick size around a mid price, BUY levels below it and SELL levels above it,
+ * so a seeded book never crosses. Flows are generated up front so that benchmarks only measure the processor.
+ */
+final class OrderFlowGenerator {
+
+    static final long MID_PRICE = 100_000L;
+    static final long LOT = 100L;
+
+    private final int tickers;
+    private final Random random;
+    private long nextOrderId = 1;
+
+    OrderFlowGenerator(int tickers, long seed) {
+        this.tickers = tickers;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Processor with in memory books only, previous books are dropped and logging is silenced.
+     */
+    static OrderProcessor newProcessor() {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        TestDataCreatorForOrderProcessor.emptyOrders();
+        EngineProperties properties = new EngineProperties();
+        return new OrderProcessor(properties, new ExecutionReportStream(properties), new MarketDataFeed(properties),
+                new StripedOrderIdGenerator(properties), new EngineEventLog(properties),
+                new EngineMetrics(new SimpleMeterRegistry()), new NoOpOrderJournal(),
+                TestDataCreatorForOrderProcessor.noSnapshots());
+    }
+
+    static String ticker(int index) {
+        return "STK" + index;
+    }
+
+    /**
+     * Seed every stock with given number of price levels per side.
+     * @param processor
+     * @param levels price levels per side
+     * @param ordersPerLevel
+     * @return resting orders
+     */
+    List<TradeOrderEntity> seedBook(OrderProcessor processor, int levels, int ordersPerLevel) {
+        List<TradeOrderEntity> resting = new ArrayList<>(tickers * levels * ordersPerLevel * 2);
+        for (int t = 0; t < tickers; t++) {
+            for (int level = 1; level <= levels; level++) {
+                for (int k = 0; k < ordersPerLevel; k++) {
+                    resting.add(order(ticker(t), TradeType.BUY, MID_PRICE - level, LOT));
+                    resting.add(order(ticker(t), TradeType.SELL, MID_PRICE + level, LOT));
+                }
+            }
+        }
+        resting.forEach(processor::process);
+        return resting;
+    }
+
+    /**
+     * Orders resting on a random level of their own side within given depth, they never cross.
+     */
+    TradeOrderEntity[] passiveFlow(int count, int levels) {
+        TradeOrderEntity[] flow = new TradeOrderEntity[count];
+        for (int i = 0; i < count; i++) {
+            TradeType side = i % 2 == 0 ? TradeType.BUY : TradeType.SELL;
+            long distance = 1 + random.nextInt(levels);
+            flow[i] = order(randomTicker(), side, side == TradeType.BUY ? MID_PRICE - distance : MID_PRICE + distance, LOT);
+        }
+        return flow;
+    }
+
+    /**
+     * BUY orders each taking given number of whole resting orders from the top of the SELL side.
+     * Limit price reaches the whole seeded depth so that the sweep is only bounded by quantity.
+     */
+    TradeOrderEntity[] aggressiveFlow(int count, int levels, int ordersTaken) {
+        TradeOrderEntity[] flow = new TradeOrderEntity[count];
+        for (int i = 0; i < count; i++) {
+            flow[i] = order(randomTicker(), TradeType.BUY, MID_PRICE + levels, LOT * ordersTaken);
+        }
+        return flow;
+    }
+
+    /**
+     * Amend of a resting order, same stock and side with price moved given number of ticks away from the spread.
+     */
+    static TradeOrderEntity amend(TradeOrderEntity resting, long ticksAway, long quantity) {
+        long price = resting.getPrice().movePointRight(2).longValueExact();
+        long amended = resting.getTradeType() == TradeType.BUY ? price - ticksAway : price + ticksAway;
+        return order(resting.getOrderId(), resting.getStockTicker(), resting.getTradeType(), amended, quantity);
+    }
+
+    private String randomTicker() {
+        return ticker(random.nextInt(tickers));
+    }
+
+    private TradeOrderEntity order(String stockTicker, TradeType side, long priceTicks, long quantity) {
+        return order(nextOrderId++, stockTicker, side, priceTicks, quantity);
+    }
+
+    private static TradeOrderEntity order(long orderId, String stockTicker, TradeType side, long priceTicks, long quantity) {
+        return TestDataCreatorForOrderProcessor.createTradeOrderEntity(orderId, stockTicker, side, BigInteger.valueOf(quantity),
+                BigDecimal.valueOf(priceTicks, 2), OrderType.LIMIT, orderId);
+    }
+}
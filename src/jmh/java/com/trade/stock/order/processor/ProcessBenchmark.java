@@ -0,0 +1,70 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link OrderProcessor#process} for one new order, by scenario and book depth.
+ *   NO_CROSS : order rests on a random level of its own side
+ *   FULL_CROSS : order is completely filled by the first resting order of the other side
+ *   SWEEP : order takes given number of whole price levels of the other side
+ * Every iteration starts from a freshly seeded book and runs one batch of pre generated orders, so crossing scenarios
+ * never run out of liquidity. Single shot score is the time of the whole batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ProcessBenchmark {
+
+    static final int BATCH = 10_000;
+
+    public enum Scenario { NO_CROSS, FULL_CROSS, SWEEP }
+
+    @Param({"NO_CROSS", "FULL_CROSS", "SWEEP"})
+    Scenario scenario;
+
+    @Param({"10", "1000"})
+    int depth;
+
+    @Param("5")
+    int sweepLevels;
+
+    private OrderProcessor processor;
+    private TradeOrderEntity[] flow;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        processor = OrderFlowGenerator.newProcessor();
+        OrderFlowGenerator generator = new OrderFlowGenerator(1, 42L);
+        switch (scenario) {
+            case NO_CROSS:
+                generator.seedBook(processor, depth, 1);
+                flow = generator.passiveFlow(BATCH, depth);
+                break;
+            case FULL_CROSS:
+                int ordersPerLevel = (BATCH + depth - 1) / depth;
+                generator.seedBook(processor, depth, ordersPerLevel);
+                flow = generator.aggressiveFlow(BATCH, depth, 1);
+                break;
+            case SWEEP:
+                int levels = Math.max(depth, BATCH * sweepLevels);
+                generator.seedBook(processor, levels, 1);
+                flow = generator.aggressiveFlow(BATCH, levels, sweepLevels);
+                break;
+            default:
+                throw new IllegalStateException("Unknown scenario " + scenario);
+        }
+    }
+
+    @Benchmark
+    public void process() {
+        for (TradeOrderEntity order : flow) {
+            processor.process(order);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.OrderBookQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link OrderProcessor#retrieveOrderBook} by number of price levels per side, one order per level.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RetrieveOrderBookBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    int depth;
+
+    private OrderProcessor processor;
+    private int symbol;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        processor = OrderFlowGenerator.newProcessor();
+        new OrderFlowGenerator(1, 42L).seedBook(processor, depth, 1);
+        symbol = OrderProcessor.symbols.find(OrderFlowGenerator.ticker(0));
+    }
+
+    @Benchmark
+    public List<TradeOrderEntity> retrieveOrderBook() throws ResourceNotFoundException {
+        return processor.retrieveOrderBook(symbol, new OrderBookQuery()).getOrders();
+    }
+}
@@ -1,21 +1,27 @@
 package com.trade.stock.order.api;
 
-import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.constants.TradeType;
 import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.MarketDepth;
+import com.trade.stock.order.model.OrderBookQuery;
 import com.trade.stock.order.model.OrderResponse;
+import com.trade.stock.order.model.TopOfBook;
 import com.trade.stock.order.model.TradeRequest;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springdoc.api.annotations.ParameterObject;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static com.trade.stock.order.constants.Constants.*;
 
@@ -30,6 +36,7 @@ public interface StockOrderApi {
      * @param tradeRequest
      * @return OrderResponse
      * This method provides functionality to create trade order for given stock.
+     * Response is sent asynchronously once the matching engine processed the order, no request thread waits for it.
      */
     @Operation(summary = "Generate Stock trade order for given stock")
     @ApiResponses(value = {
@@ -41,7 +48,26 @@ public interface StockOrderApi {
             @ApiResponse(responseCode = "400", description = "Missing stock ticker",
                     content = @Content) })
     @PostMapping(value = ORDER, produces = MediaType.APPLICATION_JSON_VALUE)
-    ResponseEntity<OrderResponse> stockOrderCreate(@Valid @RequestBody TradeRequest tradeRequest);
+    CompletableFuture<ResponseEntity<OrderResponse>> stockOrderCreate(@Valid @RequestBody TradeRequest tradeRequest);
+
+    /**
+     *
+     * @param tradeRequests
+     * @return List<OrderResponse>
+     * This method provides functionality to create a batch of trade orders in one call. Body is either a JSON array
+     * or newline delimited JSON, one trade request per line. Whole batch is rejected if any order is invalid.
+     * Response is sent asynchronously once the matching engine processed the batch.
+     */
+    @Operation(summary = "Generate batch of Stock trade orders")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Generate batch of Stock trade orders, one response per order",
+                    content = { @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = OrderResponse.class)) }),
+            @ApiResponse(responseCode = "400", description = "Invalid order in batch",
+                    content = @Content) })
+    @PostMapping(value = ORDER+BATCH, consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    CompletableFuture<ResponseEntity<List<OrderResponse>>> stockOrderCreateBatch(@RequestBody List<TradeRequest> tradeRequests);
 
     /**
      *
@@ -68,9 +94,13 @@ public interface StockOrderApi {
     /**
      *
      * @param stockTicker
+     * @param query
      * @return List<TradeOrderEntity>
      * @throws ResourceNotFoundException
-     * This method provide functionality to retrieve entire order book for given stock.
+     * This method provide functionality to retrieve order book for given stock, BUY orders then SELL orders in priority order.
+     * Query can restrict the orders to one side and to the best price levels, and split them in pages of limit orders.
+     * Cursor of the next page is returned in the X-Next-Cursor header, header is absent on the last page.
+     * Whole order book (no query) is served from a cached view, ETag header is the version of the book.
      * Throws ResourceNotFoundException if given stock doesn't have any orders.
      */
     @Operation(summary = "Retrieve order book for given stock ticker")
@@ -78,10 +108,73 @@ public interface StockOrderApi {
             @ApiResponse(responseCode = "200", description = "Retrieve order book for given stock ticker",
                     content = { @Content(mediaType = "application/json",
                             schema = @Schema(implementation = String.class)) }),
+            @ApiResponse(responseCode = "400", description = "Invalid levels, limit or cursor",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "No data found",
                     content = @Content) })
     @GetMapping(value = ORDER+STOCK_NAME, produces = MediaType.APPLICATION_JSON_VALUE)
-    ResponseEntity<List<TradeOrderEntity>> retrieveOrderBook(@NotNull @PathVariable("stockTicker") String stockTicker) throws ResourceNotFoundException;
+    ResponseEntity<?> retrieveOrderBook(@NotNull @PathVariable("stockTicker") String stockTicker,
+                                                             @ParameterObject OrderBookQuery query) throws ResourceNotFoundException;
+
+    /**
+     *
+     * @param stockTicker
+     * @param levels
+     * @param side
+     * @return MarketDepth
+     * @throws ResourceNotFoundException
+     * This method provide functionality to retrieve aggregated price levels (L2) of given stock, best price first.
+     * Only levels of given side are returned when side is set.
+     * Sequence of the response is the one of the last depth update it reflects.
+     * Throws ResourceNotFoundException if given stock never had any order.
+     */
+    @Operation(summary = "Retrieve aggregated price levels for given stock ticker")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Retrieve aggregated price levels for given stock ticker",
+                    content = { @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = MarketDepth.class)) }),
+            @ApiResponse(responseCode = "400", description = "Invalid number of levels",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "No data found",
+                    content = @Content) })
+    @GetMapping(value = ORDER+STOCK_NAME+DEPTH, produces = MediaType.APPLICATION_JSON_VALUE)
+    ResponseEntity<MarketDepth> retrieveDepth(@NotNull @PathVariable("stockTicker") String stockTicker,
+                                              @RequestParam(value = "levels", defaultValue = "10") int levels,
+                                              @RequestParam(value = "side", required = false) TradeType side) throws ResourceNotFoundException;
+
+    /**
+     *
+     * @param stockTicker
+     * @return TopOfBook
+     * @throws ResourceNotFoundException
+     * This method provide functionality to retrieve best bid and best ask (L1) of given stock.
+     * Throws ResourceNotFoundException if given stock never had any order.
+     */
+    @Operation(summary = "Retrieve top of book for given stock ticker")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Retrieve top of book for given stock ticker",
+                    content = { @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = TopOfBook.class)) }),
+            @ApiResponse(responseCode = "404", description = "No data found",
+                    content = @Content) })
+    @GetMapping(value = ORDER+STOCK_NAME+TOP, produces = MediaType.APPLICATION_JSON_VALUE)
+    ResponseEntity<TopOfBook> retrieveTopOfBook(@NotNull @PathVariable("stockTicker") String stockTicker) throws ResourceNotFoundException;
+
+    /**
+     *
+     * @param stockTicker
+     * @return SseEmitter
+     * This method provide functionality to stream market data of given stock as Server-Sent Events.
+     * Stream starts with the depth image (event depth) followed by depth updates (event update) and fills (event fill)
+     * as they happen. Depth updates of a client which is behind are coalesced per level.
+     * @throws ResourceNotFoundException when stock never had an order
+     */
+    @Operation(summary = "Stream depth updates and fills for given stock ticker")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stream depth updates and fills for given stock ticker",
+                    content = { @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE) }) })
+    @GetMapping(value = ORDER+STOCK_NAME+STREAM, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter streamMarketData(@NotNull @PathVariable("stockTicker") String stockTicker) throws ResourceNotFoundException;
 
     /**
      *
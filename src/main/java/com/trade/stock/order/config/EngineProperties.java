@@ -0,0 +1,196 @@
+package com.trade.stock.order.config;
+
+import com.trade.stock.order.dao.journal.FsyncPolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Matching engine settings, bound from order.engine.* properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "order.engine")
+public class EngineProperties {
+
+    /**
+     * Number of single threaded matching loops. Every stock ticker is owned by exactly one of them.
+     */
+    private int shards = 4;
+
+    /**
+     * Capacity of the inbound queue of each matching loop. Submitters wait when it is full.
+     */
+    private int queueCapacity = 65536;
+
+    /**
+     * Maximum number of orders accepted in one batch request.
+     */
+    private int maxBatchSize = 10000;
+
+    /**
+     * Price increment used when a stock has no tick size of its own. Prices have to be a multiple of it.
+     */
+    private BigDecimal tickSize = new BigDecimal("0.01");
+
+    /**
+     * Tick size per stock ticker.
+     */
+    private Map<String, BigDecimal> tickSizes = new HashMap<>();
+
+    /**
+     * Number of execution reports kept in the ring read by subscribers. Has to be a power of two.
+     */
+    private int reportBufferSize = 65536;
+
+    /**
+     * Number of depth updates kept in the ring read by market data subscribers. Has to be a power of two.
+     */
+    private int depthBufferSize = 65536;
+
+    /**
+     * Order journal settings.
+     */
+    private Journal journal = new Journal();
+
+    /**
+     * Order book snapshot settings.
+     */
+    private Snapshot snapshot = new Snapshot();
+
+    /**
+     * Minimum time between two rebuilds of the cached view of the whole order book of a stock. While a book keeps
+     * changing, reads in between get the last view built, which is at most that old.
+     */
+    private long viewRefreshMs = 50;
+
+    /**
+     * Market data streaming settings.
+     */
+    private Stream stream = new Stream();
+
+    /**
+     * Engine event log settings.
+     */
+    private EventLog eventLog = new EventLog();
+
+    /**
+     * Expiry of GTD and DAY orders.
+     */
+    private Expiry expiry = new Expiry();
+
+    @Data
+    public static class Journal {
+
+        /**
+         * Journal every order, amend, cancel and fill and rebuild the order books from it on startup.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Directory of the journal segment files.
+         */
+        private String directory = "journal";
+
+        /**
+         * Size in bytes of each memory mapped segment file.
+         */
+        private int segmentSize = 64 * 1024 * 1024;
+
+        /**
+         * When appended records are forced to disk.
+         */
+        private FsyncPolicy fsync = FsyncPolicy.GROUP;
+
+        /**
+         * Interval of the group commit flusher, used with GROUP fsync policy.
+         */
+        private long flushIntervalMs = 5;
+    }
+
+    @Data
+    public static class Snapshot {
+
+        /**
+         * Write order book snapshots in background and recover from the latest one plus the journal tail.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Directory of the snapshot files, one file per matching shard.
+         */
+        private String directory = "snapshot";
+
+        /**
+         * Time between two snapshots of the same shard. Shards are snapshotted one after the other across the interval.
+         */
+        private long intervalMs = 60000;
+    }
+
+    @Data
+    public static class Stream {
+
+        /**
+         * Threads writing streamed events to the clients. A slow client only holds one of them while it is written to.
+         */
+        private int senderThreads = 2;
+
+        /**
+         * Fills kept for a client which is behind. Depth updates are coalesced per level, fills are not,
+         * a client falling further behind is disconnected and has to reconnect.
+         */
+        private int fillBacklog = 1024;
+
+        /**
+         * Time after which a stream is closed, clients reconnect to continue.
+         */
+        private long timeoutMs = 30 * 60 * 1000;
+    }
+
+    @Data
+    public static class EventLog {
+
+        /**
+         * Log orders, amends and cancels accepted by the engine. When disabled the matching shards skip the log entirely.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Log one order out of this many, every event of a sampled order is logged. 1 logs every order.
+         */
+        private int sampleRate = 1;
+
+        /**
+         * Size of the ring buffer between the matching shards and the log writer, has to be a power of two.
+         * Events are dropped rather than slowing matching down when the writer falls a full ring behind.
+         */
+        private int bufferSize = 65536;
+    }
+
+    @Data
+    public static class Expiry {
+
+        /**
+         * Resolution of the expiry timer wheel, orders expire at most this late.
+         */
+        private long tickMs = 100;
+
+        /**
+         * Number of slots of the expiry timer wheel of each matching shard, has to be a power of two.
+         * Orders expiring more than one turn of the wheel ahead stay in their slot for the extra turns.
+         */
+        private int wheelSize = 4096;
+
+        /**
+         * Time of day when DAY orders expire, ISO local time.
+         */
+        private String dayEnd = "00:00";
+
+        /**
+         * Time zone of the trading day.
+         */
+        private String timeZone = "UTC";
+    }
+}
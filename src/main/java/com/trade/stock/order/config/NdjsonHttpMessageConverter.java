@@ -0,0 +1,46 @@
+package com.trade.stock.order.config;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static com.trade.stock.order.constants.Constants.APPLICATION_NDJSON_VALUE;
+
+/**
+ * Reads newline delimited JSON request bodies into a {@link List}, one element per line.
+ * Lines are parsed one after the other straight from the request stream. Read only, responses stay plain JSON.
+ */
+public class NdjsonHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+    public NdjsonHttpMessageConverter(ObjectMapper objectMapper) {
+        super(objectMapper, MediaType.parseMediaType(APPLICATION_NDJSON_VALUE));
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return getJavaType(type, contextClass).isCollectionLikeType() && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        JavaType elementType = getJavaType(type, contextClass).getContentType();
+        try (MappingIterator<Object> lines = getObjectMapper().readerFor(elementType).readValues(inputMessage.getBody())) {
+            return lines.readAll();
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("NDJSON parse error: " + e.getMessage(), e, inputMessage);
+        }
+    }
+}
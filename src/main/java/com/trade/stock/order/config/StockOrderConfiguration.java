@@ -1,13 +1,19 @@
 package com.trade.stock.order.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.trade.stock.order.dao.journal.MappedOrderJournal;
+import com.trade.stock.order.dao.journal.NoOpOrderJournal;
+import com.trade.stock.order.dao.journal.OrderJournal;
 import io.swagger.v3.oas.models.Components;
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.info.Info;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 
 @Configuration
+@EnableConfigurationProperties(EngineProperties.class)
 public class StockOrderConfiguration {
 
     @Bean
@@ -18,4 +24,14 @@ public class StockOrderConfiguration {
                         "This is Stock trade order API, provides functionality to add order , update , retrieve ,delete order"));
     }
 
+    @Bean
+    public NdjsonHttpMessageConverter ndjsonHttpMessageConverter(ObjectMapper objectMapper) {
+        return new NdjsonHttpMessageConverter(objectMapper);
+    }
+
+    @Bean(destroyMethod = "close")
+    public OrderJournal orderJournal(EngineProperties properties) {
+        return properties.getJournal().isEnabled() ? new MappedOrderJournal(properties.getJournal()) : new NoOpOrderJournal();
+    }
+
 }
@@ -10,5 +10,11 @@ public final class Constants {
     public static final String ORDER = "/order";
     public static final String STOCK_NAME = "/{stockTicker}";
     public static final String ORDER_ID = "/{orderId}";
+    public static final String BATCH = "/batch";
+    public static final String DEPTH = "/depth";
+    public static final String TOP = "/top";
+    public static final String STREAM = "/stream";
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
 
 }
@@ -1,5 +1,11 @@
 package com.trade.stock.order.constants;
 
+/**
+ * MARKET_TO_LIMIT order trades at the best price of the counter side, its remaining quantity becomes a LIMIT order
+ * at that price.
+ * STOP and STOP_LIMIT orders wait until the stock trades at their stop price (at or above for BUY, at or below for SELL)
+ * and then become a MARKET or a LIMIT order.
+ */
 public enum OrderType {
-    MARKET, LIMIT
+    MARKET, LIMIT, MARKET_TO_LIMIT, STOP, STOP_LIMIT
 }
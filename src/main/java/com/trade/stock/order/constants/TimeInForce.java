@@ -0,0 +1,13 @@
+package com.trade.stock.order.constants;
+
+/**
+ * How long the quantity of an order left after matching stays in the book.
+ *   GTC : Good till cancelled, remaining quantity rests in the book (default)
+ *   IOC : Immediate or cancel, remaining quantity is cancelled right after matching
+ *   FOK : Fill or kill, order is cancelled without any fill unless it can be filled completely right away
+ *   GTD : Good till date, remaining quantity rests in the book until the expire time of the order
+ *   DAY : Remaining quantity rests in the book until the end of the trading day
+ */
+public enum TimeInForce {
+    GTC, IOC, FOK, GTD, DAY
+}
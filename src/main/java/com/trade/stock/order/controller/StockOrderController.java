@@ -2,19 +2,28 @@ package com.trade.stock.order.controller;
 
 import com.trade.stock.order.api.StockOrderApi;
 import static com.trade.stock.order.constants.Constants.BASEPATH;
+import static com.trade.stock.order.constants.Constants.NEXT_CURSOR_HEADER;
 
-import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.constants.TradeType;
 import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.MarketDepth;
+import com.trade.stock.order.model.OrderBookPage;
+import com.trade.stock.order.model.OrderBookQuery;
+import com.trade.stock.order.model.OrderBookView;
 import com.trade.stock.order.model.OrderResponse;
+import com.trade.stock.order.model.TopOfBook;
 import com.trade.stock.order.model.TradeRequest;
+import com.trade.stock.order.service.MarketDataStreamService;
 import com.trade.stock.order.service.OrderBookService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Prajakt Kulkarni
@@ -27,33 +36,72 @@ import java.util.List;
 public class StockOrderController implements StockOrderApi {
 
     final OrderBookService orderbookService;
+    final MarketDataStreamService streamService;
 
-    public StockOrderController(OrderBookService orderbookService) {
+    public StockOrderController(OrderBookService orderbookService, MarketDataStreamService streamService) {
         this.orderbookService = orderbookService;
+        this.streamService = streamService;
     }
 
     @Override
-    public ResponseEntity<OrderResponse> stockOrderCreate(TradeRequest tradeRequest) {
-        log.info("Stock order creation : START");
-        return new ResponseEntity<>(orderbookService.stockOrder(tradeRequest), HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<OrderResponse>> stockOrderCreate(TradeRequest tradeRequest) {
+        log.debug("Stock order creation : START");
+        return orderbookService.stockOrder(tradeRequest).thenApply(response -> new ResponseEntity<>(response, HttpStatus.OK));
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<List<OrderResponse>>> stockOrderCreateBatch(List<TradeRequest> tradeRequests) {
+        log.debug("Stock order batch creation : START");
+        return orderbookService.stockOrders(tradeRequests).thenApply(responses -> new ResponseEntity<>(responses, HttpStatus.OK));
     }
 
     @Override
     public ResponseEntity<OrderResponse> stockOrderCreateUpdate(Long orderId, TradeRequest tradeRequest) throws ResourceNotFoundException {
-        log.info("Stock order updation : START");
+        log.debug("Stock order updation : START");
         return new ResponseEntity<>(orderbookService.stockOrder(orderId, tradeRequest), HttpStatus.OK);
     }
 
     @Override
-    public ResponseEntity<List<TradeOrderEntity>> retrieveOrderBook(String stockName) throws ResourceNotFoundException {
-        log.info("Stock order book retrieval : START");
-        return new ResponseEntity<>(orderbookService.retrieveOrderBook(stockName),HttpStatus.OK);
+    public ResponseEntity<?> retrieveOrderBook(String stockName, OrderBookQuery query) throws ResourceNotFoundException {
+        log.debug("Stock order book retrieval : START");
+        if (isWholeBook(query)) {
+            OrderBookView view = orderbookService.retrieveOrderBookView(stockName);
+            return ResponseEntity.ok().eTag(Long.toString(view.getVersion())).body(view.getJson());
+        }
+        OrderBookPage page = orderbookService.retrieveOrderBook(stockName, query);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getOrders());
+
+    }
+
+    private static boolean isWholeBook(OrderBookQuery query) {
+        return query.getSide() == null && query.getLevels() == null && query.getLimit() == null
+                && (query.getCursor() == null || query.getCursor().isEmpty());
+    }
+
+    @Override
+    public ResponseEntity<MarketDepth> retrieveDepth(String stockTicker, int levels, TradeType side) throws ResourceNotFoundException {
+        log.debug("Stock depth retrieval : START");
+        return new ResponseEntity<>(orderbookService.retrieveDepth(stockTicker, levels, side), HttpStatus.OK);
+    }
 
+    @Override
+    public ResponseEntity<TopOfBook> retrieveTopOfBook(String stockTicker) throws ResourceNotFoundException {
+        return new ResponseEntity<>(orderbookService.retrieveTopOfBook(stockTicker), HttpStatus.OK);
+    }
+
+    @Override
+    public SseEmitter streamMarketData(String stockTicker) throws ResourceNotFoundException {
+        log.debug("Market data stream : START");
+        return streamService.stream(stockTicker);
     }
 
     @Override
     public ResponseEntity<OrderResponse> deleteOrder(Long orderId) throws ResourceNotFoundException  {
-        log.info("Stock order deletion : START");
+        log.debug("Stock order deletion : START");
         return new ResponseEntity<>(orderbookService.deleteOrder(orderId), HttpStatus.OK);
     }
 }
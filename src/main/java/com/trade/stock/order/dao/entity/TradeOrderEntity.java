@@ -1,14 +1,24 @@
 package com.trade.stock.order.dao.entity;
 
 import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TimeInForce;
 import com.trade.stock.order.constants.TradeType;
 import lombok.*;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 
+/**
+ * Order as accepted by the API. Identity is the order id, equals and hashCode never look at price or quantity.
+ * Order without id yet (id is handed out on the matching shard) is only equal to itself.
+ * Hash is the hash of the order id only, it changes when the id is assigned : an order must not be put in a hashed
+ * collection before it has its id.
+ * Matching engine does not modify it, open quantity of a resting order is kept by the engine next to it.
+ * Time in force is GTC when not set, expire time (epoch millis) is only used by GTD orders.
+ * Stop price is only used by STOP and STOP_LIMIT orders.
+ * Display quantity makes an iceberg order, only that much of its quantity is shown in the book at a time.
+ */
 @Data
-@EqualsAndHashCode
 public class TradeOrderEntity implements Serializable {
 
     private Long orderId;
@@ -18,5 +28,24 @@ public class TradeOrderEntity implements Serializable {
     private BigInteger quantity;
     private TradeType tradeType;
     private OrderType orderType;
+    private TimeInForce timeInForce;
+    private Long expireTime;
+    private BigDecimal stopPrice;
+    private BigInteger displayQuantity;
 
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof TradeOrderEntity)) {
+            return false;
+        }
+        return orderId != null && orderId.equals(((TradeOrderEntity) other).orderId);
+    }
+
+    @Override
+    public int hashCode() {
+        return orderId != null ? orderId.hashCode() : 0;
+    }
 }
@@ -0,0 +1,20 @@
+package com.trade.stock.order.dao.journal;
+
+/**
+ * When appended journal records are forced to disk.
+ */
+public enum FsyncPolicy {
+    /**
+     * Force after every record. Nothing acknowledged is lost, every order pays a disk flush.
+     */
+    ALWAYS,
+    /**
+     * Group commit, a background flusher forces all records appended since the previous flush at a fixed interval.
+     * At most one interval of records can be lost on power failure.
+     */
+    GROUP,
+    /**
+     * Never force, the OS writes mapped pages back on its own. Survives process crashes but not power failure.
+     */
+    OS
+}
@@ -0,0 +1,38 @@
+package com.trade.stock.order.dao.journal;
+
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.model.ExecutionReport;
+import lombok.Value;
+
+/**
+ * One entry of the order journal. Depending on its type a record carries
+ *   NEW, AMEND : the order as accepted
+ *   CANCEL : order id and stock of the removed order
+ *   FILL : the execution report
+ */
+@Value
+public class JournalRecord {
+
+    public enum Type {
+        NEW, AMEND, CANCEL, FILL
+    }
+
+    Type type;
+    long sequence;
+    TradeOrderEntity order;
+    Long orderId;
+    String stockTicker;
+    ExecutionReport fill;
+
+    static JournalRecord order(Type type, long sequence, TradeOrderEntity order) {
+        return new JournalRecord(type, sequence, order, order.getOrderId(), order.getStockTicker(), null);
+    }
+
+    static JournalRecord cancel(long sequence, Long orderId, String stockTicker) {
+        return new JournalRecord(Type.CANCEL, sequence, null, orderId, stockTicker, null);
+    }
+
+    static JournalRecord fill(long sequence, ExecutionReport fill) {
+        return new JournalRecord(Type.FILL, sequence, null, null, fill.getStockTicker(), fill);
+    }
+}
@@ -0,0 +1,175 @@
+package com.trade.stock.order.dao.journal;
+
+import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TimeInForce;
+import com.trade.stock.order.constants.TradeType;
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.model.ExecutionReport;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary layout of a journal record body.
+ *   type (byte), sequence (long), then per type
+ *   NEW, AMEND : order id, stock, trade time, trade type, order type, price, quantity, time in force, expire time,
+ *                stop price, display quantity
+ *   CANCEL : order id, stock
+ *   FILL : trade id, stock, aggressor order id, passive order id, aggressor side, price, quantity, trade time
+ * Prices and quantities are written unscaled so they are restored exactly.
+ */
+final class JournalRecordCodec {
+
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final byte NULL_ENUM = -1;
+
+    private JournalRecordCodec() {
+    }
+
+    static void write(ByteBuffer buffer, JournalRecord record) {
+        buffer.put((byte) record.getType().ordinal());
+        buffer.putLong(record.getSequence());
+        switch (record.getType()) {
+            case NEW:
+            case AMEND:
+                TradeOrderEntity order = record.getOrder();
+                putLong(buffer, order.getOrderId());
+                putString(buffer, order.getStockTicker());
+                putLong(buffer, order.getTradeTime());
+                putEnum(buffer, order.getTradeType());
+                putEnum(buffer, order.getOrderType());
+                putDecimal(buffer, order.getPrice());
+                putInteger(buffer, order.getQuantity());
+                putEnum(buffer, order.getTimeInForce());
+                putLong(buffer, order.getExpireTime());
+                putDecimal(buffer, order.getStopPrice());
+                putInteger(buffer, order.getDisplayQuantity());
+                break;
+            case CANCEL:
+                putLong(buffer, record.getOrderId());
+                putString(buffer, record.getStockTicker());
+                break;
+            case FILL:
+                ExecutionReport fill = record.getFill();
+                buffer.putLong(fill.getTradeId());
+                putString(buffer, fill.getStockTicker());
+                putLong(buffer, fill.getAggressorOrderId());
+                putLong(buffer, fill.getPassiveOrderId());
+                putEnum(buffer, fill.getAggressorSide());
+                putDecimal(buffer, fill.getPrice());
+                putInteger(buffer, fill.getQuantity());
+                buffer.putLong(fill.getTradeTime());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal record type " + record.getType());
+        }
+    }
+
+    /**
+     * Set the sequence of an encoded body, records are encoded before their sequence is known.
+     * @param body encoded record positioned at its start
+     * @param sequence
+     */
+    static void writeSequence(ByteBuffer body, long sequence) {
+        body.putLong(body.position() + 1, sequence);
+    }
+
+    static JournalRecord read(ByteBuffer buffer) {
+        JournalRecord.Type type = JournalRecord.Type.values()[buffer.get()];
+        long sequence = buffer.getLong();
+        switch (type) {
+            case NEW:
+            case AMEND:
+                TradeOrderEntity order = new TradeOrderEntity();
+                order.setOrderId(getLong(buffer));
+                order.setStockTicker(getString(buffer));
+                order.setTradeTime(getLong(buffer));
+                order.setTradeType(getEnum(buffer, TradeType.values()));
+                order.setOrderType(getEnum(buffer, OrderType.values()));
+                order.setPrice(getDecimal(buffer));
+                order.setQuantity(getInteger(buffer));
+                order.setTimeInForce(getEnum(buffer, TimeInForce.values()));
+                order.setExpireTime(getLong(buffer));
+                order.setStopPrice(getDecimal(buffer));
+                order.setDisplayQuantity(getInteger(buffer));
+                return JournalRecord.order(type, sequence, order);
+            case CANCEL:
+                return JournalRecord.cancel(sequence, getLong(buffer), getString(buffer));
+            default:
+                ExecutionReport fill = new ExecutionReport(buffer.getLong(), getString(buffer), getLong(buffer), getLong(buffer),
+                        getEnum(buffer, TradeType.values()), getDecimal(buffer), getInteger(buffer), buffer.getLong());
+                return JournalRecord.fill(sequence, fill);
+        }
+    }
+
+    private static void putLong(ByteBuffer buffer, Long value) {
+        buffer.putLong(value == null ? NULL_LONG : value);
+    }
+
+    private static Long getLong(ByteBuffer buffer) {
+        long value = buffer.getLong();
+        return value == NULL_LONG ? null : value;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        putBytes(buffer, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = getBytes(buffer);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putEnum(ByteBuffer buffer, Enum<?> value) {
+        buffer.put(value == null ? NULL_ENUM : (byte) value.ordinal());
+    }
+
+    private static <E extends Enum<E>> E getEnum(ByteBuffer buffer, E[] values) {
+        byte ordinal = buffer.get();
+        return ordinal == NULL_ENUM ? null : values[ordinal];
+    }
+
+    private static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+        buffer.putInt(value == null ? 0 : value.scale());
+        putInteger(buffer, value == null ? null : value.unscaledValue());
+    }
+
+    private static BigDecimal getDecimal(ByteBuffer buffer) {
+        int scale = buffer.getInt();
+        BigInteger unscaled = getInteger(buffer);
+        return unscaled == null ? null : new BigDecimal(unscaled, scale);
+    }
+
+    private static void putInteger(ByteBuffer buffer, BigInteger value) {
+        putBytes(buffer, value == null ? null : value.toByteArray());
+    }
+
+    private static BigInteger getInteger(ByteBuffer buffer) {
+        byte[] bytes = getBytes(buffer);
+        return bytes == null ? null : new BigInteger(bytes);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Journal field too long : " + bytes.length + " bytes");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
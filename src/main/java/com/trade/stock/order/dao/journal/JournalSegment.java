@@ -0,0 +1,95 @@
+package com.trade.stock.order.dao.journal;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Fixed size journal file mapped in memory. Records are written straight into the mapping,
+ * the unused tail of a segment stays zero which marks the end of its records.
+ */
+final class JournalSegment {
+
+    private final MappedByteBuffer buffer;
+
+    private JournalSegment(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Map given file, it is created and preallocated to size when it doesn't exist.
+     * @param file
+     * @param size
+     * @return mapped segment positioned at its start
+     */
+    static JournalSegment map(Path file, int size) {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            //Mapping stays valid once the channel is closed.
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            return new JournalSegment(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to map journal segment " + file, e);
+        }
+    }
+
+    /**
+     * Map given file for reading, file is left as it is.
+     * @param file
+     * @return mapped segment positioned at its start
+     */
+    static JournalSegment mapReadOnly(Path file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            return new JournalSegment(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to map journal segment " + file, e);
+        }
+    }
+
+    MappedByteBuffer buffer() {
+        return buffer;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return true when everything from current position to the end is zero.
+     */
+    boolean isClean() {
+        int i = buffer.position();
+        for (; i + 8 <= buffer.limit(); i += 8) {
+            if (buffer.getLong(i) != 0) {
+                return false;
+            }
+        }
+        for (; i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Zero everything from current position to the end, drops a torn or stale tail.
+     */
+    void truncate() {
+        ByteBuffer tail = buffer.duplicate();
+        byte[] zeros = new byte[Math.min(8192, tail.remaining())];
+        while (tail.hasRemaining()) {
+            tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+}
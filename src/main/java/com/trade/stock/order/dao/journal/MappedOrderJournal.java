@@ -0,0 +1,444 @@
+package com.trade.stock.order.dao.journal;
+
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.model.ExecutionReport;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Order journal written into fixed size memory mapped segment files.
+ * Segment file is named after the sequence of its first record, each record is framed as
+ *   length of body (int), CRC32 of body (int), body (see {@link JournalRecordCodec})
+ * A zero length marks the end of the records of a segment. Appending is a copy into the mapping, when records
+ * reach the disk is decided by the {@link FsyncPolicy}.
+ * Matching shards append concurrently without a lock : a writer claims the sequence and the bytes of its record in
+ * one CAS on the tail of the current segment, then encodes, copies and forces on its own. Only rolling to a new
+ * segment is serialized, writers arriving meanwhile wait for the new tail.
+ * On open the journal is scanned, a torn or corrupt tail is cut off and appending resumes right after the last
+ * valid record. A record whose writer died before it was complete leaves a hole : records completed after it by the
+ * other shards were acknowledged, scanning goes on past the hole to the next valid record.
+ */
+@Slf4j
+public class MappedOrderJournal implements OrderJournal {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+    private static final int MIN_SEGMENT_SIZE = 4096;
+    //End of the claimed bytes of a segment which is full and being rolled.
+    private static final long SEALED = 0xFFFFFFFFL;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final List<Path> segmentFiles;
+    private final ThreadLocal<CRC32> crcs = ThreadLocal.withInitial(CRC32::new);
+    private final ThreadLocal<ByteBuffer> scratches = ThreadLocal.withInitial(() -> ByteBuffer.allocate(512));
+    private final ScheduledExecutorService flusher;
+    private volatile Tail tail;
+    //Tail rolled last, writers which claimed before the roll may still be copying into it.
+    private volatile Tail previous;
+    private volatile boolean closed;
+
+    public MappedOrderJournal(EngineProperties.Journal settings) {
+        if (settings.getSegmentSize() < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Journal segment size has to be at least " + MIN_SEGMENT_SIZE + " bytes");
+        }
+        this.directory = Paths.get(settings.getDirectory());
+        this.segmentSize = settings.getSegmentSize();
+        this.fsyncPolicy = settings.getFsync();
+        this.segmentFiles = listSegments();
+        open();
+        if (fsyncPolicy == FsyncPolicy.GROUP) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, settings.getFlushIntervalMs(), settings.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+        log.info("Order journal opened in {}, {} segments, next sequence {}, fsync {}", directory, segmentFiles.size(), position() + 1, fsyncPolicy);
+    }
+
+    @Override
+    public long appendOrder(JournalRecord.Type type, TradeOrderEntity order) {
+        return append(sequence -> JournalRecord.order(type, sequence, order));
+    }
+
+    @Override
+    public long appendCancel(Long orderId, String stockTicker) {
+        return append(sequence -> JournalRecord.cancel(sequence, orderId, stockTicker));
+    }
+
+    @Override
+    public long appendFill(ExecutionReport fill) {
+        return append(sequence -> JournalRecord.fill(sequence, fill));
+    }
+
+    @Override
+    public void replay(long fromSequence, Consumer<JournalRecord> consumer) {
+        long lastSequence = 0;
+        long count = 0;
+        List<Path> files = new ArrayList<>(segmentFiles);
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            if (i + 1 < files.size() && firstSequenceOf(files.get(i + 1)) <= fromSequence) {
+                //Every record of this segment is older than requested.
+                continue;
+            }
+            ByteBuffer view = JournalSegment.mapReadOnly(file).buffer().duplicate();
+            JournalRecord record;
+            while ((record = nextAfterHole(view, lastSequence)) != null) {
+                lastSequence = record.getSequence();
+                if (lastSequence >= fromSequence) {
+                    consumer.accept(record);
+                    count++;
+                }
+            }
+        }
+        log.info("Order journal replayed {} records", count);
+    }
+
+    /**
+     * Records claimed but still being copied by other shards are included, records of the calling shard are all complete.
+     */
+    @Override
+    public long position() {
+        return tail.nextSequence() - 1;
+    }
+
+    @Override
+    public void force() {
+        flush();
+    }
+
+    /**
+     * Current segment is sealed and appending goes on in a new segment starting right after given sequence.
+     */
+    @Override
+    public synchronized void advanceTo(long sequence) {
+        Tail current = tail;
+        long nextSequence = current.nextSequence();
+        if (nextSequence > sequence) {
+            return;
+        }
+        current.claims.set((nextSequence - current.firstSequence) << 32 | SEALED);
+        roll(current, sequence + 1);
+        log.warn("Order journal is behind the snapshots, next sequence moved from {} to {}", nextSequence, sequence + 1);
+    }
+
+    /**
+     * Delete segment files holding only records before given sequence. Current segment is always kept.
+     * @param sequence first sequence which has to be kept
+     */
+    @Override
+    public synchronized void truncateBefore(long sequence) {
+        while (segmentFiles.size() > 1 && firstSequenceOf(segmentFiles.get(1)) <= sequence) {
+            Path file = segmentFiles.remove(0);
+            try {
+                Files.deleteIfExists(file);
+                log.info("Order journal segment {} deleted", file);
+            } catch (IOException e) {
+                log.error("Unable to delete journal segment {}", file, e);
+                segmentFiles.add(0, file);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Force records appended since the last flush to disk. Called by the group commit flusher.
+     */
+    public void flush() {
+        if (closed) {
+            return;
+        }
+        //Appends carry on while the disk catches up.
+        forceIfDirty(previous);
+        forceIfDirty(tail);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        if (previous != null) {
+            previous.segment.force();
+        }
+        tail.segment.force();
+        log.info("Order journal closed, next sequence {}", position() + 1);
+    }
+
+    private long append(LongFunction<JournalRecord> recordFactory) {
+        //Encoded before its sequence is known, claim needs the size of the record.
+        ByteBuffer body = encode(recordFactory.apply(0L));
+        int size = HEADER_SIZE + body.remaining();
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("Journal record of " + body.remaining() + " bytes doesn't fit in a segment");
+        }
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("Order journal is closed");
+            }
+            Tail current = tail;
+            long claims = current.claims.get();
+            long count = claims >>> 32;
+            long end = claims & SEALED;
+            if (end == SEALED) {
+                //Another writer is rolling the segment.
+                Thread.yield();
+            } else if (end + size > current.segment.capacity()) {
+                if (current.claims.compareAndSet(claims, count << 32 | SEALED)) {
+                    roll(current, current.firstSequence + count);
+                }
+            } else if (current.claims.compareAndSet(claims, (count + 1) << 32 | (end + size))) {
+                long sequence = current.firstSequence + count;
+                write(current, (int) end, sequence, body);
+                return sequence;
+            }
+        }
+    }
+
+    private void write(Tail current, int start, long sequence, ByteBuffer body) {
+        JournalRecordCodec.writeSequence(body, sequence);
+        int length = body.remaining();
+        CRC32 crc = crcs.get();
+        crc.reset();
+        crc.update(body.duplicate());
+        ByteBuffer out = current.segment.buffer().duplicate();
+        out.position(start + HEADER_SIZE);
+        out.put(body);
+        out.putInt(start + 4, (int) crc.getValue());
+        //Length last, a record becomes visible to a reader only once it is complete.
+        out.putInt(start, length);
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            current.segment.force();
+        } else {
+            current.dirty = true;
+        }
+    }
+
+    private ByteBuffer encode(JournalRecord record) {
+        ByteBuffer scratch = scratches.get();
+        while (true) {
+            scratch.clear();
+            try {
+                JournalRecordCodec.write(scratch, record);
+                scratch.flip();
+                return scratch;
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+                scratches.set(scratch);
+            }
+        }
+    }
+
+    /**
+     * Called by the writer which sealed the full tail, the only one rolling it.
+     */
+    private synchronized void roll(Tail full, long firstSequence) {
+        Path file = directory.resolve(segmentName(firstSequence));
+        JournalSegment segment = JournalSegment.map(file, segmentSize);
+        segmentFiles.add(file);
+        previous = full;
+        tail = new Tail(segment, firstSequence, 0);
+        if (fsyncPolicy != FsyncPolicy.OS) {
+            forceIfDirty(full);
+        }
+        log.info("Order journal rolled to {}", file);
+    }
+
+    private static void forceIfDirty(Tail tail) {
+        if (tail != null && tail.dirty) {
+            tail.dirty = false;
+            tail.segment.force();
+        }
+    }
+
+    /**
+     * Scan existing segments, find where appending resumes and cut off anything after the last valid record of
+     * every segment. Holes left by incomplete records before a valid one are skipped and kept.
+     */
+    private void open() {
+        long lastSequence = 0;
+        JournalSegment current = null;
+        for (Path file : segmentFiles) {
+            JournalSegment segment = JournalSegment.map(file, segmentSize);
+            ByteBuffer view = segment.buffer().duplicate();
+            JournalRecord record;
+            while (true) {
+                while ((record = next(view, lastSequence)) != null) {
+                    lastSequence = record.getSequence();
+                }
+                int end = view.position();
+                if (!skipHole(view, lastSequence)) {
+                    break;
+                }
+                log.warn("Order journal {} has an incomplete record at {} after sequence {}, skipped", file, end, lastSequence);
+            }
+            segment.buffer().position(view.position());
+            current = segment;
+            if (!segment.isClean()) {
+                log.warn("Order journal {} has a torn or corrupt record after sequence {}, dropped", file, lastSequence);
+                segment.truncate();
+            }
+        }
+        if (current == null) {
+            Path file = directory.resolve(segmentName(lastSequence + 1));
+            current = JournalSegment.map(file, segmentSize);
+            segmentFiles.add(file);
+        }
+        tail = new Tail(current, lastSequence + 1, current.buffer().position());
+    }
+
+    /**
+     * Read record at the position of the view, or the first valid record after a hole when there is none there.
+     */
+    private JournalRecord nextAfterHole(ByteBuffer view, long lastSequence) {
+        JournalRecord record = next(view, lastSequence);
+        if (record == null && skipHole(view, lastSequence)) {
+            record = next(view, lastSequence);
+        }
+        return record;
+    }
+
+    /**
+     * Look for the next valid record after the position of the view, which is not a valid record : slot claimed by
+     * a writer which died before its record was complete, while writers of other shards completed theirs after it.
+     * Records are not aligned so every position is tried, length, CRC and sequence tell a record from what the dead
+     * writer left. Runs of zero bytes, where no record can start, are skipped 5 bytes at a time.
+     * @return true with the view moved to the next valid record, false with the view left as it is when there is none
+     */
+    private boolean skipHole(ByteBuffer view, long lastSequence) {
+        ByteBuffer probe = view.duplicate();
+        for (int start = view.position() + 1; start + HEADER_SIZE <= view.limit(); start++) {
+            if (start + 8 <= view.limit() && view.getLong(start) == 0) {
+                start += 4;
+                continue;
+            }
+            probe.position(start);
+            if (next(probe, lastSequence) != null) {
+                view.position(start);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read record at the position of the view and move past it.
+     * @param view
+     * @param lastSequence sequence of the previous record, records must be strictly increasing
+     * @return record or null at the end of the segment or on an invalid record, view is then left at its start
+     */
+    private JournalRecord next(ByteBuffer view, long lastSequence) {
+        int start = view.position();
+        if (isEnd(view)) {
+            return null;
+        }
+        int length = view.getInt(start);
+        int checksum = view.getInt(start + 4);
+        if (length < 0 || length > view.remaining() - HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer body = view.duplicate();
+        body.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + length);
+        CRC32 check = new CRC32();
+        check.update(body.duplicate());
+        if ((int) check.getValue() != checksum) {
+            return null;
+        }
+        JournalRecord record;
+        try {
+            record = JournalRecordCodec.read(body);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            return null;
+        }
+        if (record.getSequence() <= lastSequence) {
+            return null;
+        }
+        view.position(start + HEADER_SIZE + length);
+        return record;
+    }
+
+    private static boolean isEnd(ByteBuffer view) {
+        return view.remaining() < HEADER_SIZE || view.getInt(view.position()) == 0;
+    }
+
+    private List<Path> listSegments() {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                return files.filter(MappedOrderJournal::isSegment).sorted().collect(Collectors.toList());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open order journal in " + directory, e);
+        }
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Segment being appended. Writers claim their record with a single CAS on claims :
+     *   number of records claimed through this tail (high 32 bits), end of the claimed bytes (low 32 bits)
+     * Sequence of a record is the first sequence of the tail plus the number of records claimed before it,
+     * so records are laid out in sequence order.
+     */
+    private static final class Tail {
+
+        final JournalSegment segment;
+        final long firstSequence;
+        final AtomicLong claims;
+        volatile boolean dirty;
+
+        Tail(JournalSegment segment, long firstSequence, int position) {
+            this.segment = segment;
+            this.firstSequence = firstSequence;
+            this.claims = new AtomicLong(position);
+        }
+
+        long nextSequence() {
+            return firstSequence + (claims.get() >>> 32);
+        }
+    }
+
+    private static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+
+    private static long firstSequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
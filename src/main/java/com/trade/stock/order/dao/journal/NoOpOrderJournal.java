@@ -0,0 +1,57 @@
+package com.trade.stock.order.dao.journal;
+
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.model.ExecutionReport;
+
+import java.util.function.Consumer;
+
+/**
+ * Journal used when journaling is disabled, order books live in memory only.
+ */
+public class NoOpOrderJournal implements OrderJournal {
+
+    @Override
+    public long appendOrder(JournalRecord.Type type, TradeOrderEntity order) {
+        return -1L;
+    }
+
+    @Override
+    public long appendCancel(Long orderId, String stockTicker) {
+        return -1L;
+    }
+
+    @Override
+    public long appendFill(ExecutionReport fill) {
+        return -1L;
+    }
+
+    @Override
+    public void replay(long fromSequence, Consumer<JournalRecord> consumer) {
+        //Nothing journaled.
+    }
+
+    @Override
+    public long position() {
+        return 0L;
+    }
+
+    @Override
+    public void force() {
+        //Nothing journaled.
+    }
+
+    @Override
+    public void advanceTo(long sequence) {
+        //Nothing journaled.
+    }
+
+    @Override
+    public void truncateBefore(long sequence) {
+        //Nothing journaled.
+    }
+
+    @Override
+    public void close() {
+        //Nothing to release.
+    }
+}
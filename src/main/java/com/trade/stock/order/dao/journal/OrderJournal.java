@@ -0,0 +1,59 @@
+package com.trade.stock.order.dao.journal;
+
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.model.ExecutionReport;
+
+import java.util.function.Consumer;
+
+/**
+ * Append only log of every change applied to the order books, used to rebuild them after a restart.
+ * Appends are made by the matching shards, records of one stock are journaled in the order they were applied.
+ */
+public interface OrderJournal extends AutoCloseable {
+
+    /**
+     * Journal an accepted new order or amend.
+     * @param type NEW or AMEND
+     * @param order
+     * @return sequence of the record
+     */
+    long appendOrder(JournalRecord.Type type, TradeOrderEntity order);
+
+    long appendCancel(Long orderId, String stockTicker);
+
+    long appendFill(ExecutionReport fill);
+
+    /**
+     * Deliver journaled records in sequence order. Called once on startup, before any append.
+     * @param fromSequence first sequence the caller needs, records before it may be skipped
+     * @param consumer
+     */
+    void replay(long fromSequence, Consumer<JournalRecord> consumer);
+
+    /**
+     * @return sequence of the last appended record, 0 when journal is empty.
+     */
+    long position();
+
+    /**
+     * Force every record appended so far to disk, whatever the fsync policy.
+     */
+    void force();
+
+    /**
+     * Make sure records appended from now on get a sequence above given one. Called on startup before any append,
+     * when the journal lost records a snapshot already reflects : new records must not be taken as part of that
+     * snapshot on the next recovery.
+     * @param sequence
+     */
+    void advanceTo(long sequence);
+
+    /**
+     * Release journal history which is no longer needed for recovery.
+     * @param sequence first sequence which has to be kept
+     */
+    void truncateBefore(long sequence);
+
+    @Override
+    void close();
+}
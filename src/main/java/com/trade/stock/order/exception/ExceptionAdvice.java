@@ -24,6 +24,17 @@ public class ExceptionAdvice extends ResponseEntityExceptionHandler {
         return error;
     }
 
+    @ExceptionHandler(InvalidOrderException.class)
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    public @ResponseBody
+    OrderResponse handleInvalidOrder(final InvalidOrderException exception,
+                                         final HttpServletRequest request) {
+
+        OrderResponse error = new OrderResponse();
+        error.setResponse(exception.getMessage());
+        return error;
+    }
+
     @ExceptionHandler({RuntimeException.class})
     @ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
     public @ResponseBody OrderResponse handleException(final Exception exception,
@@ -0,0 +1,12 @@
+package com.trade.stock.order.exception;
+
+public class InvalidOrderException extends RuntimeException {
+
+    public InvalidOrderException(final String message) {
+        super(message);
+    }
+
+    public InvalidOrderException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
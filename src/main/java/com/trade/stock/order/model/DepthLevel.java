@@ -0,0 +1,17 @@
+package com.trade.stock.order.model;
+
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Aggregated price level : total open quantity and number of resting orders at one price.
+ */
+@Value
+public class DepthLevel {
+
+    BigDecimal price;
+    BigInteger quantity;
+    int orderCount;
+}
@@ -0,0 +1,27 @@
+package com.trade.stock.order.model;
+
+import com.trade.stock.order.constants.TradeType;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Change of one aggregated price level of a book side.
+ * Sequence is per stock and has no gap, a client applying updates on top of a {@link MarketDepth} of the same stock
+ * keeps an exact copy of the levels and can detect a missed update.
+ * Quantity and order count are the new totals of the level, both zero when the level is deleted.
+ */
+@Value
+public class DepthUpdate {
+
+    public enum Action { ADD, CHANGE, DELETE }
+
+    long sequence;
+    String stockTicker;
+    TradeType side;
+    Action action;
+    BigDecimal price;
+    BigInteger quantity;
+    int orderCount;
+}
@@ -0,0 +1,24 @@
+package com.trade.stock.order.model;
+
+import com.trade.stock.order.constants.TradeType;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * One fill between an incoming (aggressor) order and a resting (passive) order.
+ * Reports are immutable, they are shared between the matching shards and every subscriber.
+ */
+@Value
+public class ExecutionReport {
+
+    long tradeId;
+    String stockTicker;
+    Long aggressorOrderId;
+    Long passiveOrderId;
+    TradeType aggressorSide;
+    BigDecimal price;
+    BigInteger quantity;
+    long tradeTime;
+}
@@ -0,0 +1,18 @@
+package com.trade.stock.order.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Best price levels of both sides of a stock (L2), best price first.
+ * Sequence is the one of the last {@link DepthUpdate} reflected, updates above it apply on top of this image.
+ */
+@Value
+public class MarketDepth {
+
+    String stockTicker;
+    long sequence;
+    List<DepthLevel> bids;
+    List<DepthLevel> asks;
+}
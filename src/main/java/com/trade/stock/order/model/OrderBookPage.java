@@ -0,0 +1,16 @@
+package com.trade.stock.order.model;
+
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One page of resting orders in priority order, next cursor is null on the last page.
+ */
+@Value
+public class OrderBookPage {
+
+    List<TradeOrderEntity> orders;
+    String nextCursor;
+}
@@ -0,0 +1,20 @@
+package com.trade.stock.order.model;
+
+import com.trade.stock.order.constants.TradeType;
+import lombok.Data;
+
+/**
+ * Part of an order book to retrieve, every criteria is optional.
+ *   side : only orders of this side, both sides (BUY first) otherwise
+ *   levels : only orders of the best price levels of each side, resting MARKET orders being the first level
+ *   limit : maximum number of orders in one page
+ *   cursor : next cursor of the previous page, to continue where it stopped
+ */
+@Data
+public class OrderBookQuery {
+
+    private TradeType side;
+    private Integer levels;
+    private Integer limit;
+    private String cursor;
+}
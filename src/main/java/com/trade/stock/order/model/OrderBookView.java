@@ -0,0 +1,19 @@
+package com.trade.stock.order.model;
+
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Immutable image of the whole order book of a stock at given version, BUY orders then SELL orders in priority order.
+ * Json holds the serialized orders once the view is published to readers, it is null in the raw view built by the engine.
+ */
+@Value
+public class OrderBookView {
+
+    String stockTicker;
+    long version;
+    List<TradeOrderEntity> orders;
+    byte[] json;
+}
@@ -0,0 +1,16 @@
+package com.trade.stock.order.model;
+
+import lombok.Value;
+
+/**
+ * Best bid and best ask of a stock (L1), a side without priced orders has no level.
+ * Sequence is the one of the {@link DepthUpdate} which last changed it.
+ */
+@Value
+public class TopOfBook {
+
+    String stockTicker;
+    long sequence;
+    DepthLevel bid;
+    DepthLevel ask;
+}
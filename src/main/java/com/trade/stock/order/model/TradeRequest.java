@@ -1,6 +1,7 @@
 package com.trade.stock.order.model;
 
 import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TimeInForce;
 import com.trade.stock.order.constants.TradeType;
 import lombok.Data;
 
@@ -23,4 +24,13 @@ public class TradeRequest {
     private TradeType tradeType;
     @NotNull(message = "Order Type is mandatory")
     private OrderType orderType;
+    //GTC when not given.
+    private TimeInForce timeInForce;
+    //Epoch millis, mandatory for GTD orders.
+    private Long expireTime;
+    //Mandatory for STOP and STOP_LIMIT orders.
+    private BigDecimal stopPrice;
+    //Iceberg order, only this much of the quantity is shown in the book at a time.
+    @Positive
+    private BigInteger displayQuantity;
 }
@@ -0,0 +1,47 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.constants.TradeType;
+import com.trade.stock.order.exception.InvalidOrderException;
+
+/**
+ * Position of the last order returned by a page of an order book : side, price level (ticks), order id and queue
+ * sequence of the order. Order id finds the order again when it is still in place, queue sequence gives its position
+ * in the level when it is gone or was queued again (iceberg replenish, amend).
+ * Also carries the worst price level included when the query is limited to the best levels, so that every page
+ * covers the levels seen by the first one.
+ * Text form is side:price:orderId:sequence:lastLevel, last level is empty when all levels are included.
+ */
+final class BookCursor {
+
+    final TradeType side;
+    final long price;
+    final long orderId;
+    final long sequence;
+    final Long lastLevel;
+
+    BookCursor(TradeType side, long price, long orderId, long sequence, Long lastLevel) {
+        this.side = side;
+        this.price = price;
+        this.orderId = orderId;
+        this.sequence = sequence;
+        this.lastLevel = lastLevel;
+    }
+
+    static BookCursor parse(String cursor) {
+        String[] parts = cursor.split(":", -1);
+        try {
+            if (parts.length != 5) {
+                throw new IllegalArgumentException();
+            }
+            return new BookCursor(TradeType.valueOf(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                    Long.parseLong(parts[3]), parts[4].isEmpty() ? null : Long.valueOf(parts[4]));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidOrderException("Invalid cursor " + cursor, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return side + ":" + price + ":" + orderId + ":" + sequence + ":" + (lastLevel == null ? "" : lastLevel);
+    }
+}
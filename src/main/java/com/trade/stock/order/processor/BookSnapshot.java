@@ -0,0 +1,104 @@
+package com.trade.stock.order.processor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Point in time image of the order books owned by one matching shard.
+ * Captured on the shard thread as plain arrays so the shard can carry on matching while the image is written.
+ *   journalPosition : last journal sequence reflected in the image, replay skips records of these stocks up to it
+ *   tradeId : last trade id handed out when the image was taken
+ *   orderId : order id high water mark when the image was taken, orders filled before it are in no image
+ */
+final class BookSnapshot {
+
+    final int shard;
+    final int shardCount;
+    final long journalPosition;
+    final long tradeId;
+    final long orderId;
+    final List<TickerImage> tickers;
+
+    BookSnapshot(int shard, int shardCount, long journalPosition, long tradeId, long orderId, List<TickerImage> tickers) {
+        this.shard = shard;
+        this.shardCount = shardCount;
+        this.journalPosition = journalPosition;
+        this.tradeId = tradeId;
+        this.orderId = orderId;
+        this.tickers = tickers;
+    }
+
+    int orderCount() {
+        int count = 0;
+        for (TickerImage ticker : tickers) {
+            count += ticker.buy == null ? 0 : ticker.buy.size;
+            count += ticker.sell == null ? 0 : ticker.sell.size;
+            count += ticker.buyStops == null ? 0 : ticker.buyStops.size;
+            count += ticker.sellStops == null ? 0 : ticker.sellStops.size;
+        }
+        return count;
+    }
+
+    /**
+     * Both sides of the book of one stock and its pending stop orders, price in ticks of the stored tick size.
+     */
+    static final class TickerImage {
+        final String stockTicker;
+        final BigDecimal tickSize;
+        final SideImage buy;
+        final SideImage sell;
+        final SideImage buyStops;
+        final SideImage sellStops;
+        final long lastTradePrice;
+
+        TickerImage(String stockTicker, BigDecimal tickSize, SideImage buy, SideImage sell) {
+            this(stockTicker, tickSize, buy, sell, null, null, TickSizeTable.MARKET_PRICE);
+        }
+
+        TickerImage(String stockTicker, BigDecimal tickSize, SideImage buy, SideImage sell,
+                    SideImage buyStops, SideImage sellStops, long lastTradePrice) {
+            this.stockTicker = stockTicker;
+            this.tickSize = tickSize;
+            this.buy = buy;
+            this.sell = sell;
+            this.buyStops = buyStops;
+            this.sellStops = sellStops;
+            this.lastTradePrice = lastTradePrice;
+        }
+    }
+
+    /**
+     * Resting orders of one side in priority order.
+     */
+    static final class SideImage {
+        final int size;
+        final long[] orderIds;
+        final long[] tradeTimes;
+        final byte[] orderTypes;
+        //Ordinal of the time in force, -1 when not set.
+        final byte[] timeInForces;
+        //Expiry of GTD and DAY orders, 0 for orders which don't expire.
+        final long[] expireTimes;
+        final long[] prices;
+        //Stop price of pending stop orders, 0 for orders of the book.
+        final long[] stopPrices;
+        final long[] quantities;
+        //Hidden quantity and visible slice size of iceberg orders, 0 for other orders.
+        final long[] hiddenQuantities;
+        final long[] displayQuantities;
+
+        SideImage(int size) {
+            this.size = size;
+            this.orderIds = new long[size];
+            this.tradeTimes = new long[size];
+            this.orderTypes = new byte[size];
+            this.timeInForces = new byte[size];
+            this.expireTimes = new long[size];
+            this.prices = new long[size];
+            this.stopPrices = new long[size];
+            this.quantities = new long[size];
+            this.hiddenQuantities = new long[size];
+            this.displayQuantities = new long[size];
+        }
+    }
+}
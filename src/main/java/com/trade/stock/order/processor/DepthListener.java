@@ -0,0 +1,14 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.model.DepthUpdate;
+
+/**
+ * Notified of every change of a priced level of an {@link OrderBookSide}, on the shard owning the stock.
+ * Side is already up to date when called, a deleted level is no longer part of it.
+ */
+interface DepthListener {
+
+    DepthListener NONE = (side, action, level) -> { };
+
+    void levelChanged(OrderBookSide side, DepthUpdate.Action action, PriceLevel level);
+}
@@ -0,0 +1,20 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import lombok.Value;
+
+/**
+ * Order accepted by a matching shard, published to the {@link EngineEventLog}.
+ * Order entity is the one held by the book, it is never modified once the order is in the book.
+ */
+@Value
+class EngineEvent {
+
+    enum Type {
+        NEW, AMEND, CANCEL, EXPIRE, TRIGGER
+    }
+
+    Type type;
+    TradeOrderEntity order;
+    long time;
+}
@@ -0,0 +1,80 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Structured log of the orders, amends and cancels accepted by the matching shards.
+ * Shards only publish the event into a lock free {@link EventRingBuffer}, formatting and writing happen on the
+ * log writer thread. Sampling is decided from the order id, so a sampled order has all its events logged and shards
+ * share no counter. Disabled log or non sampled orders cost the shard a single branch.
+ * Events are written at INFO as key=value pairs to the engine.events logger.
+ */
+@Component
+public class EngineEventLog {
+
+    private static final Logger EVENTS = LoggerFactory.getLogger("engine.events");
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private final boolean enabled;
+    private final int sampleRate;
+    private final EventRingBuffer<EngineEvent> events;
+    private EventRingBuffer<EngineEvent>.Subscription writer;
+
+    public EngineEventLog(EngineProperties properties) {
+        EngineProperties.EventLog eventLog = properties.getEventLog();
+        if (eventLog.getSampleRate() < 1) {
+            throw new IllegalArgumentException("Event log sample rate has to be at least 1");
+        }
+        this.enabled = eventLog.isEnabled();
+        this.sampleRate = eventLog.getSampleRate();
+        this.events = new EventRingBuffer<>("engine-events", eventLog.getBufferSize());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            writer = events.subscribe("engine-event-log", EngineEventLog::write);
+        }
+    }
+
+    /**
+     * @return number of events published so far, sampled out events are not counted.
+     */
+    public long published() {
+        return events.published();
+    }
+
+    void order(EngineEvent.Type type, TradeOrderEntity order) {
+        if (enabled && isSampled(order.getOrderId())) {
+            events.publish(new EngineEvent(type, order, System.currentTimeMillis()));
+        }
+    }
+
+    boolean isSampled(Long orderId) {
+        return sampleRate == 1 || orderId == null || Long.remainderUnsigned(orderId * MIX, sampleRate) == 0;
+    }
+
+    private static void write(EngineEvent event) {
+        TradeOrderEntity order = event.getOrder();
+        if (EVENTS.isInfoEnabled()) {
+            EVENTS.info("event={} orderId={} stock={} side={} type={} price={} quantity={} time={}", event.getType(),
+                    order.getOrderId(), order.getStockTicker(), order.getTradeType(), order.getOrderType(), order.getPrice(),
+                    order.getQuantity(), event.getTime());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.trade.stock.order.processor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of the matching path, exposed through the actuator metrics endpoint.
+ *   order.ack.latency : new order accepted by the service until processed by its shard (queueing included)
+ *   order.fill.latency : order entering the processor until each of its fills as aggressor
+ *   order.fills : number of fills, rate is computed by the registry
+ *   order.book.orders / order.book.levels : resting orders and price levels per stock and side
+ * Latencies are kept in HDR histograms (p50, p99, p99.9 and percentile buckets), recording is lock free.
+ * Book gauges read the sides without synchronization, values are approximate while the shard is changing them.
+ */
+@Component
+public class EngineMetrics {
+
+    private final MeterRegistry registry;
+    private final Timer ackLatency;
+    private final Timer fillLatency;
+    private final Counter fills;
+
+    public EngineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.ackLatency = latency("order.ack.latency", "New order accepted until processed by its matching shard");
+        this.fillLatency = latency("order.fill.latency", "Order entering the processor until its fills as aggressor");
+        this.fills = Counter.builder("order.fills").description("Fills executed by the matching shards").register(registry);
+    }
+
+    /**
+     * @param acceptedAt {@link System#nanoTime()} when the order was accepted
+     */
+    public void acked(long acceptedAt) {
+        ackLatency.record(System.nanoTime() - acceptedAt, TimeUnit.NANOSECONDS);
+    }
+
+    void filled(long acceptedAt) {
+        fills.increment();
+        fillLatency.record(System.nanoTime() - acceptedAt, TimeUnit.NANOSECONDS);
+    }
+
+    void bookSide(String stockTicker, OrderBookSide side) {
+        String tradeType = side.getTradeType().name();
+        Gauge.builder("order.book.orders", side, OrderBookSide::size)
+                .tags("stock", stockTicker, "side", tradeType)
+                .description("Resting orders")
+                .register(registry);
+        Gauge.builder("order.book.levels", side, OrderBookSide::levelCount)
+                .tags("stock", stockTicker, "side", tradeType)
+                .description("Price levels, resting MARKET orders counting as one level")
+                .register(registry);
+    }
+
+    private Timer latency(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+}
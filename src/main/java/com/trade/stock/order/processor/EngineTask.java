@@ -0,0 +1,13 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.exception.ResourceNotFoundException;
+
+/**
+ * Unit of work executed on the matching loop that owns a stock.
+ * @param <T> result handed back to the submitter
+ */
+@FunctionalInterface
+public interface EngineTask<T> {
+
+    T execute() throws ResourceNotFoundException;
+}
@@ -0,0 +1,162 @@
+package com.trade.stock.order.processor;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi producer / multi consumer broadcast ring of events.
+ * Producers claim a sequence with a single atomic increment and publish into the slot of that sequence, they never
+ * wait for consumers. Every subscriber reads the ring on its own thread at its own pace.
+ * A subscriber which falls more than a full ring behind loses the overwritten events, they are counted as overruns.
+ * @param <E> immutable event type
+ */
+@Slf4j
+public final class EventRingBuffer<E> {
+
+    private static final int SPIN_TRIES = 100;
+    private static final long MAX_PARK_NANOS = 100_000L;
+
+    private final String name;
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Slot<E>> slots;
+    //Next sequence to be claimed by a producer.
+    private final AtomicLong cursor = new AtomicLong();
+
+    public EventRingBuffer(String name, int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer capacity has to be a power of two");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of events published so far.
+     */
+    public long published() {
+        return cursor.get();
+    }
+
+    /**
+     * Publish event to all subscribers. Lock free, never blocks the caller.
+     * @param event
+     * @return sequence of the event
+     */
+    public long publish(E event) {
+        long sequence = cursor.getAndIncrement();
+        Slot<E> slot = new Slot<>(sequence, event);
+        int index = (int) (sequence & mask);
+        //Guard against a slower producer overwriting a newer event of the same slot after a full wrap.
+        Slot<E> current;
+        do {
+            current = slots.get(index);
+        } while ((current == null || current.sequence < sequence) && !slots.compareAndSet(index, current, slot));
+        return sequence;
+    }
+
+    /**
+     * Start a subscriber thread receiving every event published from now on, in sequence order.
+     * Handler exceptions are logged and do not stop the subscription.
+     * @param subscriber name of the subscriber, used for its thread
+     * @param handler
+     * @return subscription to close when events are no longer needed
+     */
+    public Subscription subscribe(String subscriber, Consumer<? super E> handler) {
+        Subscription subscription = new Subscription(subscriber, cursor.get(), handler);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    private static final class Slot<E> {
+        final long sequence;
+        final E event;
+
+        Slot(long sequence, E event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+    }
+
+    /**
+     * Reader of the ring running on its own daemon thread.
+     */
+    public final class Subscription implements Runnable, AutoCloseable {
+
+        private final Consumer<? super E> handler;
+        private final Thread thread;
+        private final AtomicLong overruns = new AtomicLong();
+        private volatile long next;
+        private volatile boolean running = true;
+
+        private Subscription(String subscriber, long next, Consumer<? super E> handler) {
+            this.next = next;
+            this.handler = handler;
+            this.thread = new Thread(this, name + "-" + subscriber);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * @return sequence of the next event this subscriber will read.
+         */
+        public long position() {
+            return next;
+        }
+
+        /**
+         * @return number of events lost because the subscriber fell behind by more than the ring capacity.
+         */
+        public long overruns() {
+            return overruns.get();
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            long sequence = next;
+            int idle = 0;
+            while (running) {
+                Slot<E> slot = slots.get((int) (sequence & mask));
+                if (slot != null && slot.sequence == sequence) {
+                    try {
+                        handler.accept(slot.event);
+                    } catch (RuntimeException e) {
+                        log.error("Subscriber {} failed on event {}", thread.getName(), sequence, e);
+                    }
+                    next = ++sequence;
+                    idle = 0;
+                } else if (slot != null && slot.sequence > sequence) {
+                    long resume = Math.max(sequence + 1, cursor.get() - capacity);
+                    overruns.addAndGet(resume - sequence);
+                    log.warn("Subscriber {} overrun, skipped {} events", thread.getName(), resume - sequence);
+                    next = sequence = resume;
+                } else {
+                    idle(++idle);
+                }
+            }
+        }
+
+        private void idle(int idle) {
+            if (idle < SPIN_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1_000L * (idle - SPIN_TRIES + 1)));
+            }
+        }
+    }
+}
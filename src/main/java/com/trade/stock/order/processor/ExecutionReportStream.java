@@ -0,0 +1,76 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.model.ExecutionReport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Stream of execution reports produced by the matching shards.
+ * Shards publish into a lock free {@link EventRingBuffer}, downstream consumers (clearing, risk...) subscribe
+ * and receive every fill in real time on their own thread without ever blocking matching.
+ */
+@Component
+@Slf4j
+public class ExecutionReportStream {
+
+    private final EventRingBuffer<ExecutionReport> reports;
+    private final AtomicLong tradeIds = new AtomicLong();
+    private final List<EventRingBuffer<ExecutionReport>.Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public ExecutionReportStream(EngineProperties properties) {
+        this.reports = new EventRingBuffer<>("execution-reports", properties.getReportBufferSize());
+    }
+
+    /**
+     * Subscribe to all fills executed from now on.
+     * @param subscriber name of the subscriber
+     * @param handler called on the subscriber thread, in trade sequence order
+     * @return subscription to close when fills are no longer needed
+     */
+    public EventRingBuffer<ExecutionReport>.Subscription subscribe(String subscriber, Consumer<ExecutionReport> handler) {
+        EventRingBuffer<ExecutionReport>.Subscription subscription = reports.subscribe(subscriber, handler);
+        subscriptions.add(subscription);
+        log.info("Execution report subscriber {} added", subscriber);
+        return subscription;
+    }
+
+    /**
+     * @return number of execution reports published so far.
+     */
+    public long published() {
+        return reports.published();
+    }
+
+    long nextTradeId() {
+        return tradeIds.incrementAndGet();
+    }
+
+    long lastTradeId() {
+        return tradeIds.get();
+    }
+
+    /**
+     * Make sure trade ids handed out from now on are above given id, used on recovery.
+     * @param tradeId
+     */
+    void advanceTradeId(long tradeId) {
+        tradeIds.accumulateAndGet(tradeId, Math::max);
+    }
+
+    void publish(ExecutionReport report) {
+        reports.publish(report);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscriptions.forEach(EventRingBuffer.Subscription::close);
+        subscriptions.clear();
+    }
+}
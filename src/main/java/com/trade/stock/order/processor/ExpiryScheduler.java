@@ -0,0 +1,62 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Advances the expiry wheel of every matching shard once per expiry tick, on the shard itself.
+ * A round waits for every shard before the next one is scheduled, a busy shard delays expiry but never piles rounds up.
+ */
+@Component
+@Slf4j
+public class ExpiryScheduler {
+
+    private final MatchingEngine engine;
+    private final OrderProcessor processor;
+    private final ScheduledExecutorService executor;
+
+    public ExpiryScheduler(EngineProperties properties, MatchingEngine engine, OrderProcessor processor) {
+        this.engine = engine;
+        this.processor = processor;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickMs = properties.getExpiry().getTickMs();
+        executor.scheduleWithFixedDelay(this::expireOrders, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Expire orders of every shard up to the current time.
+     */
+    void expireOrders() {
+        CompletableFuture<?>[] rounds = new CompletableFuture<?>[engine.getShardCount()];
+        for (int shard = 0; shard < rounds.length; shard++) {
+            int expiringShard = shard;
+            rounds[shard] = engine.submitToShard(shard, () -> {
+                processor.expireOrders(expiringShard, System.currentTimeMillis());
+                return null;
+            });
+        }
+        try {
+            CompletableFuture.allOf(rounds).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Order expiry failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,97 @@
+package com.trade.stock.order.processor;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel of the resting orders of one matching shard which expire (GTD, DAY).
+ * Time is cut in ticks, an order is linked in the slot of its expiry tick (modulo the wheel size) through
+ * {@link OrderNode#nextExpiry}, so scheduling is O(1) and never allocates.
+ * Advancing the wheel only visits the slots of the ticks elapsed, an order whose expiry is more than one turn away is
+ * kept in its slot until the turn of its expiry.
+ * Orders leaving the book before they expire are not unlinked, they are dropped when their slot is visited.
+ * Not thread safe, a wheel is only touched by the matching shard owning it.
+ */
+final class ExpiryWheel {
+
+    private final long tickMs;
+    private final OrderNode[] slots;
+    private final int mask;
+    //Next tick to visit, every tick before it has been visited.
+    private long currentTick;
+    private int size;
+
+    ExpiryWheel(long tickMs, int wheelSize, long now) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("Expiry tick has to be positive");
+        }
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Expiry wheel size has to be a power of two");
+        }
+        this.tickMs = tickMs;
+        this.slots = new OrderNode[wheelSize];
+        this.mask = wheelSize - 1;
+        this.currentTick = now / tickMs;
+    }
+
+    /**
+     * @return number of orders linked in the wheel, including orders which already left the book.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Link order in the slot of its expiry time. Order already past its expiry goes to the next tick visited.
+     * Order already linked (stop order which was scheduled while pending) is left in place.
+     * @param node order with {@link OrderNode#expireAt} set
+     */
+    void schedule(OrderNode node) {
+        if (node.expiryScheduled) {
+            return;
+        }
+        node.expiryScheduled = true;
+        long tick = Math.max(tickOf(node.expireAt), currentTick);
+        int slot = (int) (tick & mask);
+        node.nextExpiry = slots[slot];
+        slots[slot] = node;
+        size++;
+    }
+
+    /**
+     * Visit every tick up to given time, each slot at most once whatever the time elapsed since the previous call.
+     * @param now current time in millis
+     * @param expired called with every order of the visited slots whose expiry time has been reached
+     */
+    void advance(long now, Consumer<OrderNode> expired) {
+        long target = now / tickMs;
+        long last = Math.min(target, currentTick + mask);
+        for (long tick = currentTick; tick <= last; tick++) {
+            expire((int) (tick & mask), target, expired);
+        }
+        currentTick = Math.max(currentTick, target + 1);
+    }
+
+    private void expire(int slot, long target, Consumer<OrderNode> expired) {
+        OrderNode node = slots[slot];
+        OrderNode kept = null;
+        while (node != null) {
+            OrderNode next = node.nextExpiry;
+            if (tickOf(node.expireAt) <= target) {
+                node.nextExpiry = null;
+                node.expiryScheduled = false;
+                size--;
+                expired.accept(node);
+            } else {
+                node.nextExpiry = kept;
+                kept = node;
+            }
+            node = next;
+        }
+        slots[slot] = kept;
+    }
+
+    //Rounded up, an order is never expired before its time.
+    private long tickOf(long time) {
+        return (time + tickMs - 1) / tickMs;
+    }
+}
@@ -0,0 +1,146 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.constants.TradeType;
+import com.trade.stock.order.model.DepthLevel;
+import com.trade.stock.order.model.DepthUpdate;
+import com.trade.stock.order.model.TopOfBook;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Incremental market data of the order books.
+ * Every change of a priced level is published as a {@link DepthUpdate} into a lock free {@link EventRingBuffer},
+ * sequenced per stock. Top of book (L1) of every stock is kept up to date from the same changes and can be read
+ * from any thread without going through the matching engine.
+ * Depth state of a stock is kept on its {@link TickerBook}, updates reach it by symbol and price it with the tick size
+ * of the book.
+ */
+@Component
+@Slf4j
+public class MarketDataFeed {
+
+    private final EventRingBuffer<DepthUpdate> updates;
+    private final List<EventRingBuffer<DepthUpdate>.Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public MarketDataFeed(EngineProperties properties) {
+        this.updates = new EventRingBuffer<>("depth-updates", properties.getDepthBufferSize());
+    }
+
+    /**
+     * Subscribe to all depth updates published from now on.
+     * @param subscriber name of the subscriber
+     * @param handler called on the subscriber thread, in sequence order of every stock
+     * @return subscription to close when updates are no longer needed
+     */
+    public EventRingBuffer<DepthUpdate>.Subscription subscribe(String subscriber, Consumer<DepthUpdate> handler) {
+        EventRingBuffer<DepthUpdate>.Subscription subscription = updates.subscribe(subscriber, handler);
+        subscriptions.add(subscription);
+        log.info("Depth update subscriber {} added", subscriber);
+        return subscription;
+    }
+
+    /**
+     * @return number of depth updates published so far.
+     */
+    public long published() {
+        return updates.published();
+    }
+
+    /**
+     * Lock free, safe to call from any thread.
+     * @param stockTicker
+     * @return best bid and ask of given stock or null when it never had an order.
+     */
+    public TopOfBook topOfBook(String stockTicker) {
+        TickerBook book = OrderProcessor.symbols.book(stockTicker);
+        TickerDepth depth = book == null ? null : book.depth;
+        return depth == null ? null : depth.top;
+    }
+
+    /**
+     * Must be called from the shard owning the stock.
+     * @param book
+     * @return listener publishing level changes of the book sides of given stock.
+     */
+    DepthListener listener(TickerBook book) {
+        TickerDepth depth = book.depth;
+        if (depth == null) {
+            depth = new TickerDepth(book);
+            book.depth = depth;
+        }
+        return depth;
+    }
+
+    /**
+     * Must be called from the shard owning the stock.
+     * @param book
+     * @return sequence of the last update of given stock, 0 when there was none.
+     */
+    long sequence(TickerBook book) {
+        TickerDepth depth = book.depth;
+        return depth == null ? 0L : depth.sequence;
+    }
+
+    static DepthLevel toLevel(TickerBook book, PriceLevel level) {
+        return new DepthLevel(TickSizeTable.toPrice(book.tickSize, level.getPrice()), BigInteger.valueOf(level.totalQuantity()),
+                level.orderCount());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscriptions.forEach(EventRingBuffer.Subscription::close);
+        subscriptions.clear();
+    }
+
+    /**
+     * Depth state of one stock. Sequence and best prices are only written by the shard owning the stock,
+     * top of book is replaced as a whole so readers always see a consistent bid and ask.
+     */
+    final class TickerDepth implements DepthListener {
+
+        private final TickerBook book;
+        private final String stockTicker;
+        private long sequence;
+        private long bestBid = TickSizeTable.MARKET_PRICE;
+        private long bestAsk = TickSizeTable.MARKET_PRICE;
+        private volatile TopOfBook top;
+
+        TickerDepth(TickerBook book) {
+            this.book = book;
+            this.stockTicker = book.stockTicker;
+            this.top = new TopOfBook(stockTicker, 0L, null, null);
+        }
+
+        @Override
+        public void levelChanged(OrderBookSide side, DepthUpdate.Action action, PriceLevel level) {
+            sequence++;
+            boolean deleted = action == DepthUpdate.Action.DELETE;
+            updates.publish(new DepthUpdate(sequence, stockTicker, side.getTradeType(), action,
+                    TickSizeTable.toPrice(book.tickSize, level.getPrice()),
+                    deleted ? BigInteger.ZERO : BigInteger.valueOf(level.totalQuantity()),
+                    deleted ? 0 : level.orderCount()));
+            boolean buy = side.getTradeType() == TradeType.BUY;
+            long bestPrice = buy ? bestBid : bestAsk;
+            //Only a change at the best price, or a new best price, moves the top of book.
+            if (level == side.bestLevel() || level.getPrice() == bestPrice) {
+                PriceLevel best = side.bestLevel();
+                DepthLevel bestLevel = best == null ? null : toLevel(book, best);
+                long price = best == null ? TickSizeTable.MARKET_PRICE : best.getPrice();
+                if (buy) {
+                    bestBid = price;
+                    top = new TopOfBook(stockTicker, sequence, bestLevel, top.getAsk());
+                } else {
+                    bestAsk = price;
+                    top = new TopOfBook(stockTicker, sequence, top.getBid(), bestLevel);
+                }
+            }
+        }
+    }
+}
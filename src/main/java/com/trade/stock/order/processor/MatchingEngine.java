@@ -0,0 +1,248 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+
+/**
+ * @author prajaktkulkarni
+ * Sharded matching engine. Stock tickers are hashed on a fixed set of single threaded {@link MatchingShard}s.
+ * All work for a stock is handed over to its shard so order books never need locking and there is no
+ * contention between orders of the same stock.
+ * Requests intern their stock ticker once through {@link #symbolOf(String)}, the hash is taken when the symbol is
+ * registered and routing, order ids and books all go by symbol id from then on.
+ * Backlog of every shard and the number of submissions blocked on a full shard queue are exposed as metrics.
+ */
+@Component
+@Slf4j
+public class MatchingEngine implements MeterBinder {
+
+    private final MatchingShard[] shards;
+
+    public MatchingEngine(EngineProperties properties) {
+        if (properties.getShards() < 1) {
+            throw new IllegalArgumentException("At least one matching shard is required");
+        }
+        this.shards = new MatchingShard[properties.getShards()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new MatchingShard(i, properties.getQueueCapacity());
+            shards[i].start();
+        }
+        log.info("Matching engine started with {} shards", shards.length);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Intern stock ticker so that its requests are routed and reach the book by symbol id. Called once per request,
+     * before it is handed over. Safe to call from any thread.
+     * @param stockTicker
+     * @return symbol id of the stock, registered on first use
+     */
+    public int symbolOf(String stockTicker) {
+        return OrderProcessor.symbols.register(stockTicker);
+    }
+
+    /**
+     * Same as {@link #symbolOf(String)} for reads, which must not register a stock that never had an order.
+     * @param stockTicker
+     * @return symbol id of the stock or -1 when it was never registered
+     */
+    public int findSymbol(String stockTicker) {
+        return OrderProcessor.symbols.find(stockTicker);
+    }
+
+    /**
+     * @param symbol
+     * @return index of the shard owning given stock.
+     */
+    public int shardFor(int symbol) {
+        return shardFor(symbol, shards.length);
+    }
+
+    /**
+     * @param symbol
+     * @param shardCount
+     * @return index of the shard owning given stock in an engine of given number of shards.
+     */
+    public static int shardFor(int symbol, int shardCount) {
+        return Math.floorMod(OrderProcessor.symbols.book(symbol).hash, shardCount);
+    }
+
+    /**
+     * Shard of a stock which may not be registered, used for journal records on recovery.
+     * Same shard as {@link #shardFor(int, int)} : shards follow the ticker and not the symbol id, which is not stable
+     * across restarts, so snapshots and journal positions of a shard stay valid.
+     * @param stockTicker
+     * @param shardCount
+     * @return index of the shard owning given stock in an engine of given number of shards.
+     */
+    public static int shardFor(String stockTicker, int shardCount) {
+        return Math.floorMod(hash(stockTicker), shardCount);
+    }
+
+    static int hash(String stockTicker) {
+        int hash = stockTicker.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    public int backlog(int shard) {
+        return shards[shard].backlog();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (MatchingShard shard : shards) {
+            String index = Integer.toString(shard.getIndex());
+            Gauge.builder("order.engine.backlog", shard, MatchingShard::backlog)
+                    .tag("shard", index)
+                    .description("Tasks waiting in the inbound queue of the shard")
+                    .register(registry);
+            FunctionCounter.builder("order.engine.blocked.submits", shard, MatchingShard::blockedSubmits)
+                    .tag("shard", index)
+                    .description("Submissions which had to wait for room in the inbound queue of the shard")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Hand over task to the shard owning given stock.
+     * @param symbol
+     * @param task
+     * @param <T>
+     * @return future completed once the shard executed the task
+     */
+    public <T> CompletableFuture<T> submit(int symbol, EngineTask<T> task) {
+        return shards[shardFor(symbol)].submit(task);
+    }
+
+    /**
+     * Hand over task to given shard, used for work covering every stock of a shard.
+     * @param shard
+     * @param task
+     * @param <T>
+     * @return future completed once the shard executed the task
+     */
+    public <T> CompletableFuture<T> submitToShard(int shard, EngineTask<T> task) {
+        return shards[shard].submit(task);
+    }
+
+    /**
+     * Execute task on the shard owning given stock and wait for its result.
+     * @param symbol
+     * @param task
+     * @param <T>
+     * @return task result
+     * @throws ResourceNotFoundException when thrown by the task
+     */
+    public <T> T execute(int symbol, EngineTask<T> task) throws ResourceNotFoundException {
+        return await(submit(symbol, task));
+    }
+
+    /**
+     * Execute task on the shard owning given stock and wait for its completion.
+     * @param symbol
+     * @param task
+     */
+    public void run(int symbol, Runnable task) {
+        try {
+            execute(symbol, () -> {
+                task.run();
+                return null;
+            });
+        } catch (ResourceNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Pipeline a batch through the engine. Items are grouped by the shard owning their stock, keeping batch order
+     * inside each group, and every group is handed over as a single task. Shards work on their groups in parallel.
+     * @param items
+     * @param symbols symbol id of the stock of every item, in batch order
+     * @param shardTask work on the items of one shard and their symbol ids, called on that shard, returns one result
+     *                  per item in group order
+     * @param <T>
+     * @param <R>
+     * @return future of one result per item in batch order, completed once every shard is done with its group
+     */
+    public <T, R> CompletableFuture<List<R>> submitBatch(List<T> items, int[] symbols,
+                                                         BiFunction<List<T>, int[], List<R>> shardTask) {
+        int[] shardOf = new int[items.size()];
+        int[] groupSizes = new int[shards.length];
+        for (int i = 0; i < shardOf.length; i++) {
+            shardOf[i] = shardFor(symbols[i]);
+            groupSizes[shardOf[i]]++;
+        }
+        List<List<T>> groups = new ArrayList<>(shards.length);
+        int[][] groupSymbols = new int[shards.length][];
+        for (int i = 0; i < shards.length; i++) {
+            groups.add(new ArrayList<>(groupSizes[i]));
+            groupSymbols[i] = new int[groupSizes[i]];
+        }
+        for (int i = 0; i < shardOf.length; i++) {
+            List<T> group = groups.get(shardOf[i]);
+            groupSymbols[shardOf[i]][group.size()] = symbols[i];
+            group.add(items.get(i));
+        }
+        List<CompletableFuture<List<R>>> results = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            List<T> group = groups.get(i);
+            int[] groupSymbol = groupSymbols[i];
+            results.add(group.isEmpty() ? CompletableFuture.completedFuture(Collections.<R>emptyList())
+                    : shards[i].submit(() -> shardTask.apply(group, groupSymbol)));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenApply(done -> {
+            //Results of each group are taken back in batch order.
+            int[] next = new int[shards.length];
+            List<R> merged = new ArrayList<>(shardOf.length);
+            for (int shard : shardOf) {
+                merged.add(results.get(shard).join().get(next[shard]++));
+            }
+            return merged;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (MatchingShard shard : shards) {
+            shard.stop();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws ResourceNotFoundException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for matching engine", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ResourceNotFoundException) {
+                throw (ResourceNotFoundException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
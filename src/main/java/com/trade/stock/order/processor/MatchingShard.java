@@ -0,0 +1,125 @@
+package com.trade.stock.order.processor;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single threaded matching loop. Commands for the stocks owned by this shard are executed one at a time
+ * in arrival order, so order books of those stocks are only ever touched by this thread.
+ * Tasks still queued when the shard stops, or submitted after, fail with a {@link RejectedExecutionException}
+ * so no caller waits forever.
+ */
+@Slf4j
+final class MatchingShard implements Runnable {
+
+    private final int index;
+    private final BlockingQueue<Command<?>> inbound;
+    private final Thread thread;
+    //Submissions which found the inbound queue full and had to wait for the shard.
+    private final LongAdder blockedSubmits = new LongAdder();
+    private volatile boolean running = true;
+
+    MatchingShard(int index, int queueCapacity) {
+        this.index = index;
+        this.inbound = new ArrayBlockingQueue<>(queueCapacity);
+        this.thread = new Thread(this, "matching-shard-" + index);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int backlog() {
+        return inbound.size();
+    }
+
+    long blockedSubmits() {
+        return blockedSubmits.sum();
+    }
+
+    /**
+     * Queue task on this shard. Blocks the caller while the inbound queue is full.
+     * @param task
+     * @param <T>
+     * @return future completed by the matching loop
+     */
+    <T> CompletableFuture<T> submit(EngineTask<T> task) {
+        Command<T> command = new Command<>(task);
+        if (!running) {
+            command.reject(index);
+            return command.result;
+        }
+        try {
+            if (!inbound.offer(command)) {
+                blockedSubmits.increment();
+                inbound.put(command);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            command.result.completeExceptionally(e);
+        }
+        //Shard stopped while the task was queued, it may have been missed by the final drain.
+        if (!running && inbound.remove(command)) {
+            command.reject(index);
+        }
+        return command.result;
+    }
+
+    void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        log.info("Matching shard {} : START", index);
+        while (running) {
+            Command<?> command;
+            try {
+                command = inbound.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            command.run();
+        }
+        Command<?> pending;
+        int rejected = 0;
+        while ((pending = inbound.poll()) != null) {
+            pending.reject(index);
+            rejected++;
+        }
+        log.info("Matching shard {} : END, {} pending tasks rejected", index, rejected);
+    }
+
+    private static final class Command<T> {
+
+        private final EngineTask<T> task;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private Command(EngineTask<T> task) {
+            this.task = task;
+        }
+
+        private void run() {
+            try {
+                result.complete(task.execute());
+            } catch (Exception | Error e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void reject(int shard) {
+            result.completeExceptionally(new RejectedExecutionException("Matching shard " + shard + " is stopped"));
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.constants.TradeType;
+import com.trade.stock.order.model.DepthUpdate;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * One side (BUY or SELL) of the order book of a stock.
+ * Orders are grouped by price into {@link PriceLevel}s which are kept sorted from best to worst price
+ *   BUY : Highest to Lowest
+ *   SELL : Lowest to Highest
+ * Resting MARKET orders (orders with the MARKET price) are kept in their own level which is always ahead of every priced level.
+ * Best level is cached so top of book is available without walking the tree.
+ * Every resting order is registered in the order id index shared by all books so it can be reached in O(1).
+ * Iceberg orders only show their display quantity, levels and depth never include hidden quantity.
+ * Every change of a priced level is reported to the {@link DepthListener} of the side.
+ * Version of the side is bumped on every change and is the only state readable from other threads.
+ * Not thread safe, a side is only touched by the matching shard owning its stock.
+ */
+final class OrderBookSide {
+
+    private final TradeType tradeType;
+    private final Map<Long, OrderNode> orderIndex;
+    private final DepthListener depthListener;
+    private final NavigableMap<Long, PriceLevel> levels;
+    private final PriceLevel marketLevel = new PriceLevel(TickSizeTable.MARKET_PRICE);
+    private PriceLevel bestLevel;
+    private int size;
+    //Last queue sequence handed out, orders get a new one each time they join the tail of a level.
+    private long queueSequence;
+    //Single writer (owning shard), read by any thread to find out whether a cached view of the book is still current.
+    private volatile long version;
+
+    OrderBookSide(TradeType tradeType, Map<Long, OrderNode> orderIndex) {
+        this(tradeType, orderIndex, DepthListener.NONE);
+    }
+
+    OrderBookSide(TradeType tradeType, Map<Long, OrderNode> orderIndex, DepthListener depthListener) {
+        this.tradeType = tradeType;
+        this.orderIndex = orderIndex;
+        this.depthListener = depthListener;
+        this.levels = new TreeMap<>(tradeType == TradeType.BUY ? Comparator.<Long>reverseOrder() : Comparator.<Long>naturalOrder());
+    }
+
+    TradeType getTradeType() {
+        return tradeType;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return number of price levels, resting MARKET orders counting as one level.
+     */
+    int levelCount() {
+        return levels.size() + (marketLevel.isEmpty() ? 0 : 1);
+    }
+
+    long version() {
+        return version;
+    }
+
+    /**
+     * Add order at the tail of its price level. Creates the level when it is the first order at that price.
+     * Iceberg order is split into its visible slice and hidden quantity.
+     * @param node
+     */
+    void add(OrderNode node) {
+        if (node.displayQuantity > 0 && node.quantity > node.displayQuantity) {
+            node.hidden += node.quantity - node.displayQuantity;
+            node.quantity = node.displayQuantity;
+        }
+        PriceLevel level;
+        DepthUpdate.Action action = null;
+        if (node.market) {
+            level = marketLevel;
+        } else {
+            level = levels.get(node.price);
+            action = DepthUpdate.Action.CHANGE;
+            if (level == null) {
+                level = new PriceLevel(node.price);
+                levels.put(node.price, level);
+                action = DepthUpdate.Action.ADD;
+                if (bestLevel == null || isBetter(node.price, bestLevel.getPrice())) {
+                    bestLevel = level;
+                }
+            }
+        }
+        node.book = this;
+        node.queueSequence = ++queueSequence;
+        level.append(node);
+        orderIndex.put(node.order.getOrderId(), node);
+        size++;
+        version++;
+        if (action != null) {
+            depthListener.levelChanged(this, action, level);
+        }
+    }
+
+    /**
+     * @return best priced level or null when there is no priced order on this side.
+     */
+    PriceLevel bestLevel() {
+        return bestLevel;
+    }
+
+    /**
+     * Walks only the levels returned, cost doesn't depend on the depth of the side.
+     * @param count
+     * @return up to given number of priced levels, best price first.
+     */
+    List<PriceLevel> topLevels(int count) {
+        List<PriceLevel> top = new ArrayList<>(Math.min(count, levels.size()));
+        Iterator<PriceLevel> iterator = levels.values().iterator();
+        while (top.size() < count && iterator.hasNext()) {
+            top.add(iterator.next());
+        }
+        return top;
+    }
+
+    /**
+     * Levels in priority order, resting MARKET orders first, walked lazily.
+     * @param price first priced level to return (or the next worse one when it is gone), null or MARKET price to start
+     *              from top of book
+     * @return iterator over the levels
+     */
+    Iterator<PriceLevel> levelsFrom(Long price) {
+        if (price != null && price != TickSizeTable.MARKET_PRICE) {
+            return levels.tailMap(price, true).values().iterator();
+        }
+        if (marketLevel.isEmpty()) {
+            return levels.values().iterator();
+        }
+        return Stream.concat(Stream.of(marketLevel), levels.values().stream()).iterator();
+    }
+
+    /**
+     * @param count number of levels, resting MARKET orders counting as one level
+     * @return price of the last of the given number of best levels or null when side has no more levels than that.
+     */
+    Long lastLevelPrice(int count) {
+        Iterator<PriceLevel> iterator = levelsFrom(null);
+        PriceLevel level = null;
+        for (int i = 0; i < count; i++) {
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            level = iterator.next();
+        }
+        return iterator.hasNext() ? level.getPrice() : null;
+    }
+
+    /**
+     * @param level
+     * @param lastPrice price of the worst level to include
+     * @return true when given level is worse than the last level to include.
+     */
+    boolean isBeyond(PriceLevel level, long lastPrice) {
+        if (level == marketLevel) {
+            return false;
+        }
+        return lastPrice == TickSizeTable.MARKET_PRICE || isBetter(lastPrice, level.getPrice());
+    }
+
+    /**
+     * Fill or kill check, reads the quantity held by each level and never touches the orders.
+     * Hidden quantity of iceberg orders counts, it is filled as their slices are replenished.
+     * Walks the levels from the best one until enough quantity is found or the limit price is passed.
+     * @param quantity
+     * @param limitPrice worst price a counter order accepts, MARKET price for no limit
+     * @return true when the orders of this side matching given limit hold at least given quantity.
+     */
+    boolean canFill(long quantity, long limitPrice) {
+        return canFill(quantity, limitPrice, true);
+    }
+
+    /**
+     * @param quantity
+     * @param limitPrice worst price a counter order accepts, MARKET price for no limit
+     * @param withMarketLevel false when resting MARKET orders can't trade (no price to trade at)
+     * @return true when the orders of this side matching given limit hold at least given quantity.
+     */
+    boolean canFill(long quantity, long limitPrice, boolean withMarketLevel) {
+        long available = withMarketLevel ? marketLevel.totalQuantity() + marketLevel.hiddenQuantity() : 0L;
+        for (PriceLevel level : levels.values()) {
+            if (available >= quantity) {
+                return true;
+            }
+            if (limitPrice != TickSizeTable.MARKET_PRICE && isBetter(limitPrice, level.getPrice())) {
+                return false;
+            }
+            available += level.totalQuantity() + level.hiddenQuantity();
+        }
+        return available >= quantity;
+    }
+
+    /**
+     * @return order with highest priority on this side or null when side is empty.
+     */
+    OrderNode peek() {
+        if (!marketLevel.isEmpty()) {
+            return marketLevel.head();
+        }
+        return bestLevel == null ? null : bestLevel.head();
+    }
+
+    /**
+     * @return order with highest priority among the priced orders of this side, resting MARKET orders left aside,
+     * or null when there is none.
+     */
+    OrderNode peekPriced() {
+        return bestLevel == null ? null : bestLevel.head();
+    }
+
+    /**
+     * Remove given order from the book.
+     * @param node
+     */
+    void remove(OrderNode node) {
+        PriceLevel level = node.level;
+        level.unlink(node);
+        orderIndex.remove(node.order.getOrderId(), node);
+        size--;
+        version++;
+        if (level == marketLevel) {
+            return;
+        }
+        if (level.isEmpty()) {
+            levels.remove(level.getPrice());
+            if (level == bestLevel) {
+                Map.Entry<Long, PriceLevel> best = levels.firstEntry();
+                bestLevel = best == null ? null : best.getValue();
+            }
+            depthListener.levelChanged(this, DepthUpdate.Action.DELETE, level);
+        } else {
+            depthListener.levelChanged(this, DepthUpdate.Action.CHANGE, level);
+        }
+    }
+
+    /**
+     * Partially fill a resting order and keep level quantity in line.
+     * @param node
+     * @param quantity
+     */
+    void reduce(OrderNode node, long quantity) {
+        node.quantity -= quantity;
+        node.level.reduce(quantity);
+        version++;
+        if (node.level != marketLevel) {
+            depthListener.levelChanged(this, DepthUpdate.Action.CHANGE, node.level);
+        }
+    }
+
+    /**
+     * Lower the open quantity of a resting order in place, the order keeps its place in its level.
+     * Hidden quantity of an iceberg order goes first, visible slice is only cut when the new quantity is below it.
+     * @param node
+     * @param quantity new open quantity, positive and not above the current one
+     */
+    void reduceTo(OrderNode node, long quantity) {
+        long cut = node.quantity + node.hidden - quantity;
+        long hiddenCut = Math.min(cut, node.hidden);
+        node.hidden -= hiddenCut;
+        node.level.reduceHidden(hiddenCut);
+        if (cut > hiddenCut) {
+            reduce(node, cut - hiddenCut);
+        }
+    }
+
+    /**
+     * Refill the visible slice of an iceberg order whose slice is filled, from its hidden quantity.
+     * Order goes to the tail of its level and loses time priority, as a new order for the slice would.
+     * Level stays in place even when the order was its only one, cost is O(1).
+     * @param node iceberg order with filled visible slice and hidden quantity left
+     */
+    void replenish(OrderNode node) {
+        PriceLevel level = node.level;
+        level.unlink(node);
+        long slice = Math.min(node.displayQuantity, node.hidden);
+        node.hidden -= slice;
+        node.quantity = slice;
+        node.queueSequence = ++queueSequence;
+        level.append(node);
+        version++;
+        if (level != marketLevel) {
+            depthListener.levelChanged(this, DepthUpdate.Action.CHANGE, level);
+        }
+    }
+
+    /**
+     * @return all resting orders of this side in priority order.
+     */
+    List<OrderNode> orders() {
+        List<OrderNode> orders = new ArrayList<>(size);
+        collect(marketLevel, orders);
+        for (PriceLevel level : levels.values()) {
+            collect(level, orders);
+        }
+        return orders;
+    }
+
+    private boolean isBetter(long price, long otherPrice) {
+        return tradeType == TradeType.BUY ? price > otherPrice : price < otherPrice;
+    }
+
+    private static void collect(PriceLevel level, List<OrderNode> orders) {
+        for (OrderNode node = level.head(); node != null; node = node.next) {
+            orders.add(node);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.trade.stock.order.processor;
+
+/**
+ * Source of order ids. Ids are positive, unique and increasing in the order they are handed out for a matching shard.
+ */
+public interface OrderIdGenerator {
+
+    /**
+     * Must be called from the matching shard owning the stock so ids follow the processing order of the shard.
+     * @param symbol symbol id of the stock
+     * @return id of a new order of given stock
+     */
+    long nextId(int symbol);
+
+    /**
+     * Make sure ids handed out from now on are above given id, used on recovery.
+     * @param orderId
+     */
+    void advance(long orderId);
+
+    /**
+     * @return id at or above every id handed out so far, advancing to it is enough to never hand out an id twice
+     */
+    long highWaterMark();
+}
@@ -0,0 +1,60 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+
+/**
+ * Resting order inside a {@link PriceLevel}. Nodes are linked in arrival order so that the
+ * level can be consumed from head and any node can be unlinked without scanning.
+ * Node is the value of the order id index, it knows its book side and level so cancel and amend are O(1).
+ * Pending stop orders are held by the {@link StopIndex} of their stock instead of a book side.
+ * Price (ticks) and open quantity (lots) are kept as primitives, the order entity is only the API view of the request
+ * and is never modified once the order is in the book, fills only change the node.
+ * Iceberg order only shows its display quantity, open quantity is the visible slice and the rest is hidden.
+ * MARKET and STOP orders have no price, they rest in the market level of their side and only trade at the price
+ * of a priced counter order.
+ */
+final class OrderNode {
+
+    final TradeOrderEntity order;
+    //Symbol id of the stock, set when the order enters its book so cancels are routed without the ticker.
+    int symbol;
+    final long price;
+    //MARKET or STOP order, price is only the key of the market level and never a trade price.
+    final boolean market;
+    long quantity;
+    //Quantity of an iceberg order not shown in the book, 0 for other orders.
+    long hidden;
+    //Size of the visible slice of an iceberg order, 0 for other orders.
+    long displayQuantity;
+    //System.nanoTime() when the order entered the processor, 0 for orders restored or replayed on recovery.
+    long acceptedAt;
+    //Epoch millis when the order leaves the book (GTD, DAY), 0 for orders which don't expire.
+    long expireAt;
+    //Stop price (ticks) of STOP and STOP_LIMIT orders, 0 for other orders.
+    final long stopPrice;
+    //Next order in the same slot of the ExpiryWheel of its shard.
+    OrderNode nextExpiry;
+    //Set while the order is linked in the ExpiryWheel of its shard, an order is linked at most once.
+    boolean expiryScheduled;
+    //Index holding the order while it waits for its stop price, null once triggered.
+    StopIndex stops;
+    OrderBookSide book;
+    //Position of the order in the queue of its side, increasing with every append so it follows the order of a level.
+    long queueSequence;
+    PriceLevel level;
+    OrderNode prev;
+    OrderNode next;
+
+    OrderNode(TradeOrderEntity order, long price, long quantity) {
+        this(order, price, quantity, 0L);
+    }
+
+    OrderNode(TradeOrderEntity order, long price, long quantity, long stopPrice) {
+        this.order = order;
+        this.price = price;
+        this.market = order.getOrderType() == OrderType.MARKET || order.getOrderType() == OrderType.STOP;
+        this.quantity = quantity;
+        this.stopPrice = stopPrice;
+    }
+}
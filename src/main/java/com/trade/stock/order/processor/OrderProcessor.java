@@ -1,250 +1,760 @@
 package com.trade.stock.order.processor;
 
+import com.trade.stock.order.config.EngineProperties;
 import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TimeInForce;
 import com.trade.stock.order.constants.TradeType;
+import com.trade.stock.order.dao.journal.JournalRecord;
+import com.trade.stock.order.dao.journal.OrderJournal;
+import com.trade.stock.order.exception.InvalidOrderException;
 import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.DepthLevel;
+import com.trade.stock.order.model.ExecutionReport;
+import com.trade.stock.order.model.MarketDepth;
+import com.trade.stock.order.model.OrderBookPage;
+import com.trade.stock.order.model.OrderBookQuery;
+import com.trade.stock.order.model.OrderBookView;
 import com.trade.stock.order.model.OrderResponse;
 import com.trade.stock.order.dao.entity.TradeOrderEntity;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.stream.Collectors;
-
-import static java.util.Comparator.comparing;
+import java.util.function.Consumer;
 
 /**
  * @author prajaktkulkarni
  * This class is brain of stock order processing.
+ * Order books are not thread safe. All calls for a stock must be made from the {@link MatchingEngine} shard owning it.
+ * Every accepted change is appended to the {@link OrderJournal} and the books are rebuilt from it on startup.
+ * Accepted changes are also published to the {@link EngineEventLog}, the matching path itself only logs at DEBUG.
+ * Matching runs on fixed point values (price in ticks, quantity in lots), orders are converted when they enter
+ * the processor and resting orders are converted back only when the book is retrieved.
+ * GTD and DAY orders resting in the book are linked in the {@link ExpiryWheel} of the shard owning their stock,
+ * expired orders are cancelled when the {@link ExpiryScheduler} advances the wheel on that shard.
+ * STOP and STOP_LIMIT orders wait in the {@link StopIndex} of their stock, the stops crossed by the trades of an order
+ * are released once that order is processed and go through matching in turn.
  */
 @Component
 @Slf4j
 public class OrderProcessor {
 
     public static final String ORDER_DOESN_T_EXISTS_FOR_UPDATION = "Order doesn't exists for updation";
-    static Map<String, PriorityBlockingQueue<TradeOrderEntity>> buyMap = new ConcurrentHashMap<>();
-    static Map<String, PriorityBlockingQueue<TradeOrderEntity>> sellMap = new ConcurrentHashMap<>();
-    private static final int INITIAL_CAPACITY = 100;
+    public static final String SUCCESSFUL_EXECUTION = "Successful execution";
+    public static final String REJECTED = "Rejected : ";
+    //Stock ticker -> dense symbol id, books of every stock are held in the slot of their symbol.
+    static final SymbolRegistry symbols = new SymbolRegistry();
+    //Order id -> resting order node, shared by all stocks and maintained by the books on add, fill and cancel.
+    static Map<Long, OrderNode> orderIndex = new ConcurrentHashMap<>();
+
+    private final TickSizeTable tickSizes;
+    private final ExecutionReportStream executionReports;
+    private final MarketDataFeed marketData;
+    private final OrderIdGenerator orderIds;
+    private final EngineEventLog events;
+    private final EngineMetrics metrics;
+    private final OrderJournal journal;
+    private final SnapshotStore snapshotStore;
+    //One expiry wheel per matching shard, only touched by that shard.
+    private final ExpiryWheel[] expiryWheels;
+    private final LocalTime dayEnd;
+    private final ZoneId timeZone;
+    private final Consumer<OrderNode> expireOrder = this::expire;
+    //Set while the journal is replayed on startup, replayed changes are neither journaled again nor reported.
+    private boolean replaying;
+
+    public OrderProcessor(EngineProperties properties, ExecutionReportStream executionReports, MarketDataFeed marketData,
+                          OrderIdGenerator orderIds, EngineEventLog events, EngineMetrics metrics,
+                          OrderJournal journal, SnapshotStore snapshotStore) {
+        this.tickSizes = new TickSizeTable(properties);
+        symbols.bind(tickSizes);
+        this.executionReports = executionReports;
+        this.marketData = marketData;
+        this.orderIds = orderIds;
+        this.events = events;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.snapshotStore = snapshotStore;
+        EngineProperties.Expiry expiry = properties.getExpiry();
+        this.expiryWheels = new ExpiryWheel[properties.getShards()];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < expiryWheels.length; i++) {
+            expiryWheels[i] = new ExpiryWheel(expiry.getTickMs(), expiry.getWheelSize(), now);
+        }
+        this.dayEnd = LocalTime.parse(expiry.getDayEnd());
+        this.timeZone = ZoneId.of(expiry.getTimeZone());
+    }
+
+    /**
+     * Rebuild order books from the latest snapshot and the journal tail after it.
+     * Each shard snapshot holds the journal position it reflects, records of its stocks up to that position are skipped.
+     * Remaining orders, amends and cancels are applied again in journal order, matching is deterministic so fills
+     * are reproduced and journaled FILL records only move the trade id sequence forward.
+     * Order ids handed out after recovery continue above every snapshot and journaled order id, journal sequences
+     * continue above every snapshot position even when the journal lost records the snapshots reflect.
+     * Runs on startup before the matching engine accepts any request.
+     */
+    @PostConstruct
+    public void recover() {
+        log.info("Order book recovery : START");
+        long start = System.currentTimeMillis();
+        List<BookSnapshot> snapshots = snapshotStore.loadLatest();
+        long[] positions = new long[snapshots.size()];
+        for (BookSnapshot snapshot : snapshots) {
+            restore(snapshot);
+            positions[snapshot.shard] = snapshot.journalPosition;
+            executionReports.advanceTradeId(snapshot.tradeId);
+            orderIds.advance(snapshot.orderId);
+        }
+        long fromSequence = Arrays.stream(positions).min().orElse(0L) + 1;
+        replaying = true;
+        try {
+            journal.replay(fromSequence, record -> {
+                if (positions.length == 0
+                        || record.getSequence() > positions[MatchingEngine.shardFor(record.getStockTicker(), positions.length)]) {
+                    apply(record);
+                }
+            });
+        } finally {
+            replaying = false;
+        }
+        journal.advanceTo(Arrays.stream(positions).max().orElse(0L));
+        log.info("Order book recovery : END, {} shard snapshots, {} resting orders in {} ms", snapshots.size(),
+                orderIndex.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Image of the books of all stocks owned by given shard. Must be called from that shard, only copies primitives
+     * so matching resumes as soon as the copy is done and the image is written in background.
+     * @param shard
+     * @param shardCount
+     * @return snapshot of the shard
+     */
+    BookSnapshot capture(int shard, int shardCount) {
+        List<BookSnapshot.TickerImage> tickers = new ArrayList<>();
+        for (TickerBook book : symbols.books()) {
+            if ((book.buy != null || book.sell != null || book.stops != null)
+                    && MatchingEngine.shardFor(book.symbol, shardCount) == shard) {
+                StopIndex stops = book.stops;
+                tickers.add(new BookSnapshot.TickerImage(book.stockTicker, book.tickSize,
+                        image(book.buy == null ? null : book.buy.orders()), image(book.sell == null ? null : book.sell.orders()),
+                        image(stops == null ? null : stops.orders(TradeType.BUY)),
+                        image(stops == null ? null : stops.orders(TradeType.SELL)), book.lastTradePrice));
+            }
+        }
+        return new BookSnapshot(shard, shardCount, journal.position(), executionReports.lastTradeId(),
+                orderIds.highWaterMark(), tickers);
+    }
+
+    private static BookSnapshot.SideImage image(List<OrderNode> orders) {
+        if (orders == null) {
+            return null;
+        }
+        BookSnapshot.SideImage image = new BookSnapshot.SideImage(orders.size());
+        int i = 0;
+        for (OrderNode node : orders) {
+            image.orderIds[i] = node.order.getOrderId();
+            image.tradeTimes[i] = node.order.getTradeTime() == null ? 0L : node.order.getTradeTime();
+            image.orderTypes[i] = (byte) node.order.getOrderType().ordinal();
+            image.timeInForces[i] = node.order.getTimeInForce() == null ? -1 : (byte) node.order.getTimeInForce().ordinal();
+            image.expireTimes[i] = node.expireAt;
+            image.prices[i] = node.price;
+            image.stopPrices[i] = node.stopPrice;
+            image.quantities[i] = node.quantity;
+            image.hiddenQuantities[i] = node.hidden;
+            image.displayQuantities[i] = node.displayQuantity;
+            i++;
+        }
+        return image;
+    }
+
+    private void restore(BookSnapshot snapshot) {
+        for (BookSnapshot.TickerImage ticker : snapshot.tickers) {
+            TickerBook book = symbols.book(symbols.register(ticker.stockTicker));
+            restore(ticker, TradeType.BUY, ticker.buy, book, false);
+            restore(ticker, TradeType.SELL, ticker.sell, book, false);
+            restore(ticker, TradeType.BUY, ticker.buyStops, book, true);
+            restore(ticker, TradeType.SELL, ticker.sellStops, book, true);
+            book.lastTradePrice = ticker.lastTradePrice;
+            if (ticker.lastTradePrice != TickSizeTable.MARKET_PRICE
+                    && ticker.tickSize.compareTo(book.tickSize) != 0) {
+                try {
+                    book.lastTradePrice = TickSizeTable.toTicks(book.stockTicker, book.tickSize,
+                            ticker.tickSize.multiply(BigDecimal.valueOf(ticker.lastTradePrice)));
+                } catch (InvalidOrderException e) {
+                    book.lastTradePrice = TickSizeTable.MARKET_PRICE;
+                }
+            }
+        }
+    }
+
+    /**
+     * Restore orders of one side of the book, or pending stop orders of one side.
+     */
+    private void restore(BookSnapshot.TickerImage ticker, TradeType tradeType, BookSnapshot.SideImage image,
+                         TickerBook book, boolean pending) {
+        if (image == null) {
+            return;
+        }
+        OrderBookSide side = pending ? null : sideOf(book, tradeType);
+        boolean sameTickSize = ticker.tickSize.compareTo(book.tickSize) == 0;
+        for (int i = 0; i < image.size; i++) {
+            OrderType orderType = OrderType.values()[image.orderTypes[i]];
+            TradeOrderEntity entity = new TradeOrderEntity();
+            entity.setOrderId(image.orderIds[i]);
+            entity.setStockTicker(ticker.stockTicker);
+            entity.setTradeTime(image.tradeTimes[i]);
+            entity.setTradeType(tradeType);
+            entity.setOrderType(orderType);
+            entity.setTimeInForce(image.timeInForces[i] < 0 ? null : TimeInForce.values()[image.timeInForces[i]]);
+            entity.setExpireTime(entity.getTimeInForce() == TimeInForce.GTD ? image.expireTimes[i] : null);
+            boolean market = orderType == OrderType.MARKET || orderType == OrderType.STOP;
+            entity.setPrice(market ? null : ticker.tickSize.multiply(BigDecimal.valueOf(image.prices[i])));
+            entity.setQuantity(BigInteger.valueOf(image.quantities[i] + image.hiddenQuantities[i]));
+            entity.setDisplayQuantity(image.displayQuantities[i] == 0 ? null : BigInteger.valueOf(image.displayQuantities[i]));
+            entity.setStopPrice(image.stopPrices[i] != 0 ? ticker.tickSize.multiply(BigDecimal.valueOf(image.stopPrices[i])) : null);
+            try {
+                //Tick size changed since the snapshot, price has to be expressed in the new ticks.
+                long price = sameTickSize || market ? image.prices[i]
+                        : TickSizeTable.toTicks(book.stockTicker, book.tickSize, entity.getPrice());
+                long stopPrice = sameTickSize || image.stopPrices[i] == 0 ? image.stopPrices[i]
+                        : TickSizeTable.toTicks(book.stockTicker, book.tickSize, entity.getStopPrice());
+                OrderNode node = new OrderNode(entity, price, image.quantities[i], stopPrice);
+                node.symbol = book.symbol;
+                node.expireAt = image.expireTimes[i];
+                node.hidden = image.hiddenQuantities[i];
+                node.displayQuantity = image.displayQuantities[i];
+                if (pending) {
+                    stopsOf(book).add(node);
+                } else {
+                    side.add(node);
+                }
+                scheduleExpiry(node);
+                orderIds.advance(entity.getOrderId());
+            } catch (InvalidOrderException e) {
+                log.warn("Order {} of snapshot dropped : {}", entity.getOrderId(), e.getMessage());
+            }
+        }
+    }
+
+    private void apply(JournalRecord record) {
+        try {
+            switch (record.getType()) {
+                case NEW:
+                    orderIds.advance(record.getOrderId());
+                    process(record.getOrder());
+                    break;
+                case AMEND:
+                    processUpdate(record.getOrder());
+                    break;
+                case CANCEL:
+                    deleteOrder(record.getOrderId());
+                    break;
+                case FILL:
+                    executionReports.advanceTradeId(record.getFill().getTradeId());
+                    break;
+                default:
+                    break;
+            }
+        } catch (ResourceNotFoundException | InvalidOrderException e) {
+            log.warn("Journal record {} could not be applied : {}", record.getSequence(), e.getMessage());
+        }
+    }
 
     /**
      * This is starting point of order processing.
      * Based on order type flow will differ and will call either to process buy or sell order.
+     * Must be called from the matching shard owning the stock of the order.
      * @param order
      */
     public void process(TradeOrderEntity order)
     {
-        log.info("Process stock order : START");
+        process(order, symbols.register(order.getStockTicker()));
+    }
+
+    /**
+     * Process order of a stock already interned through {@link MatchingEngine#symbolOf(String)}, book is reached by its slot.
+     * Must be called from the matching shard owning the stock of the order.
+     * @param order
+     * @param symbol symbol id of the stock of the order
+     */
+    public void process(TradeOrderEntity order, int symbol)
+    {
+        log.debug("Process stock order : START");
+        TickerBook book = symbols.book(symbol);
+        OrderNode node = toNode(order, book.tickSize);
+        if (!replaying) {
+            node.acceptedAt = System.nanoTime();
+            journal.appendOrder(JournalRecord.Type.NEW, order);
+            events.order(EngineEvent.Type.NEW, order);
+        }
+        enter(node, book);
+    }
+
+    /**
+     * New order, or amended order which can't keep its place, enters the book : matched right away or parked until
+     * its stop price is reached.
+     */
+    private void enter(OrderNode node, TickerBook book) {
+        TradeOrderEntity order = node.order;
+        node.symbol = book.symbol;
+        if (node.stopPrice != 0 && !isTriggered(node, book.lastTradePrice)) {
+            stopsOf(book).add(node);
+            scheduleExpiry(node);
+            return;
+        }
         TradeType tradeType = order.getTradeType();
         switch (tradeType) {
             case BUY:
-                processBuyOrder(order);
+                processBuyOrder(node, book);
                 break;
 
             case SELL:
-                processSellOrder(order);
+                processSellOrder(node, book);
                 break;
             default:
                 break;
         }
+        releaseStops(book);
+    }
 
+    private static boolean isTriggered(OrderNode order, long tradePrice) {
+        return tradePrice != TickSizeTable.MARKET_PRICE && (order.order.getTradeType() == TradeType.BUY
+                ? tradePrice >= order.stopPrice : tradePrice <= order.stopPrice);
     }
 
+    private StopIndex stopsOf(TickerBook book) {
+        if (book.stops == null) {
+            book.stops = new StopIndex(orderIndex);
+        }
+        return book.stops;
+    }
 
-    private void processSellOrder(TradeOrderEntity order) {
-        log.info("Process stock SELL order : START");
-        //Get all available buy orders.
-        PriorityBlockingQueue<TradeOrderEntity> buyOrders = buyMap.get(order.getStockTicker());
-        if(buyOrders == null || buyOrders.isEmpty())
-        {
-            processFirstOrder(order,sellMap);
-        }else {
-            processIncrementalOrders(order,buyMap);
+    /**
+     * Match the stop orders triggered by the trades of the order just processed. Their own trades can trigger more
+     * stops, release goes on until no stop is crossed anymore. Stock without stop orders only pays the null check.
+     */
+    private void releaseStops(TickerBook book) {
+        StopIndex stops = book.stops;
+        if (stops == null || !stops.hasTraded()) {
+            return;
+        }
+        List<OrderNode> triggered = new ArrayList<>();
+        while (stops.hasTraded()) {
+            triggered.clear();
+            stops.release(triggered);
+            for (OrderNode node : triggered) {
+                log.debug("Stop order {} triggered", node.order.getOrderId());
+                if (!replaying) {
+                    node.acceptedAt = System.nanoTime();
+                    events.order(EngineEvent.Type.TRIGGER, node.order);
+                }
+                match(node, book.counterSide(node.order.getTradeType()), book);
+            }
         }
-        log.info("Process stock SELL order : END");
     }
 
-    private void processBuyOrder(TradeOrderEntity order) {
-        log.info("Process stock BUY order : START");
-        //Get all available sell orders.
-        PriorityBlockingQueue<TradeOrderEntity> sellOrders = sellMap.get(order.getStockTicker());
-        if(sellOrders == null || sellOrders.isEmpty())
-        {
-            processFirstOrder(order,buyMap);
-        }else {
-            processIncrementalOrders(order,sellMap);
+
+    /**
+     * Process orders of a batch one after the other, in batch order.
+     * Order rejected while it is processed (GTD order expired since it was validated...) doesn't stop the batch,
+     * it gets a rejected outcome and the next orders go on.
+     * Must be called from the matching shard owning the stocks of all the orders.
+     * @param orders
+     * @param symbols symbol id of the stock of every order, in batch order
+     * @return outcome of every order in batch order, accepted with its order id or rejected with the reason
+     */
+    public List<OrderResponse> processBatch(List<TradeOrderEntity> orders, int[] symbols)
+    {
+        log.debug("Process stock order batch of {} : START", orders.size());
+        List<OrderResponse> responses = new ArrayList<>(orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            TradeOrderEntity order = orders.get(i);
+            OrderResponse response = new OrderResponse();
+            try {
+                process(order, symbols[i]);
+                response.setOrderId(order.getOrderId());
+                response.setResponse(SUCCESSFUL_EXECUTION);
+            } catch (InvalidOrderException e) {
+                response.setResponse(REJECTED + e.getMessage());
+            } catch (RuntimeException e) {
+                log.error("Order {} of batch failed", order.getOrderId(), e);
+                response.setResponse(REJECTED + "Order processing failed");
+            }
+            responses.add(response);
         }
+        log.debug("Process stock order batch : END");
+        return responses;
+    }
 
-        log.info("Process stock BUY order : END");
+    /**
+     * Check that order can enter the engine (price on the tick grid, quantity in range) without touching any book.
+     * Safe to call from any thread.
+     * @param order
+     * @throws InvalidOrderException when order is rejected
+     */
+    public void validate(TradeOrderEntity order) {
+        toNode(order, tickSizes.tickSize(order.getStockTicker()));
     }
 
-    private void processFirstOrder(TradeOrderEntity order, Map<String, PriorityBlockingQueue<TradeOrderEntity>> tradeMap) {
-        log.info("Process processFirstOrder : START");
-        //When no order is present for given stock buy/sell map is added with new order entry.
-        PriorityBlockingQueue<TradeOrderEntity> tradeOrderEntities = tradeMap.computeIfAbsent(order.getStockTicker(), s -> new PriorityBlockingQueue<>(INITIAL_CAPACITY, getComparator(order.getTradeType())));
-        tradeOrderEntities.put(order);
-        log.info("Process processFirstOrder : END");
+    private void processSellOrder(OrderNode order, TickerBook book) {
+        log.debug("Process stock SELL order : START");
+        //Match against available buy orders.
+        match(order, book.buy, book);
+        log.debug("Process stock SELL order : END");
     }
 
-    private void processIncrementalOrders(TradeOrderEntity order,Map<String, PriorityBlockingQueue<TradeOrderEntity>> tradeMap)
-    {
-        log.info("ProcessIncrementalOrders : START");
-        {
-            //Get all orders for given stock ticker
-            PriorityBlockingQueue<TradeOrderEntity> tradeOrderEntities = tradeMap.get(order.getStockTicker());
-            log.info("processIncrementalOrders tradeOrderEntities for " + order.getStockTicker() +  " are " + tradeOrderEntities.size());
-            boolean isFirstOrder = false;
-            if(null != tradeOrderEntities && !tradeOrderEntities.isEmpty()) {
-                  TradeOrderEntity possibleMatchOrder = tradeOrderEntities.peek();
-                        isFirstOrder = processOrder(order,tradeOrderEntities, possibleMatchOrder);
-                //Iteratively call processIncrementalOrders till quantity is zero
-                if (order.getQuantity().compareTo(BigInteger.ZERO) > 0 && !isFirstOrder) {
-                    processIncrementalOrders(order, tradeMap);
-                }
+    private void processBuyOrder(OrderNode order, TickerBook book) {
+        log.debug("Process stock BUY order : START");
+        //Match against available sell orders.
+        match(order, book.sell, book);
+        log.debug("Process stock BUY order : END");
+    }
 
-            }
+    private void match(OrderNode order, OrderBookSide counterOrders, TickerBook book) {
+        if (order.order.getTimeInForce() == TimeInForce.FOK && !canFill(order, counterOrders, book)) {
+            cancelRemaining(order);
+            return;
         }
+        switch (order.order.getOrderType()) {
+            case MARKET:
+            case STOP:
+                processMarketOrder(order, counterOrders, book);
+                break;
+            case MARKET_TO_LIMIT:
+                processMarketToLimitOrder(order, counterOrders, book);
+                break;
+            default:
+                processOrder(order, counterOrders, book);
+                break;
+        }
+    }
 
-        log.info("ProcessIncrementalOrders : END");
+    /**
+     * Fill or kill orders are only matched when the counter side holds their whole quantity within their price,
+     * checked on the quantity of the price levels without trying to match. Resting MARKET orders only count for a
+     * MARKET order once the stock has a last trade price.
+     */
+    private static boolean canFill(OrderNode order, OrderBookSide counterOrders, TickerBook book) {
+        if (counterOrders == null) {
+            return false;
+        }
+        switch (order.order.getOrderType()) {
+            case MARKET:
+            case STOP:
+                return counterOrders.canFill(order.quantity, TickSizeTable.MARKET_PRICE,
+                        book.lastTradePrice != TickSizeTable.MARKET_PRICE);
+            case MARKET_TO_LIMIT:
+                PriceLevel bestLevel = counterOrders.bestLevel();
+                return bestLevel != null && counterOrders.canFill(order.quantity, bestLevel.getPrice());
+            default:
+                return counterOrders.canFill(order.quantity, order.price);
+        }
     }
 
-    private boolean processMarketOrders(TradeOrderEntity order, PriorityBlockingQueue<TradeOrderEntity> tradeOrderEntities) {
-        Collection<TradeOrderEntity> collect = tradeOrderEntities.stream().filter(entity -> entity.getOrderType() == OrderType.MARKET).collect(Collectors.toList());
+    private void processFirstOrder(OrderNode order, TickerBook book) {
+        log.debug("Process processFirstOrder : START");
+        //When no order is present for given stock and side, the side is created with new order entry.
+        sideOf(book, order.order.getTradeType()).add(order);
+        log.debug("Process processFirstOrder : END");
+    }
 
-        if(!collect.isEmpty()) {
-            PriorityBlockingQueue<TradeOrderEntity> marketOrders = new PriorityBlockingQueue<>(INITIAL_CAPACITY, getComparator(order.getTradeType()));
-            marketOrders.addAll(collect);
-            TradeOrderEntity marketMatchOrder = marketOrders.peek();
-            return processOrder(order,tradeOrderEntities, marketMatchOrder);
-        }else
-        {
-            if(order.getTradeType() == TradeType.BUY) {
-                processFirstOrder(order, buyMap);
-            }else
-            {
-                processFirstOrder(order,sellMap);
-            }
-            return true;
+    /**
+     * Symbol id of a stock for the calls made by ticker (journal replay, tests), reads never register a stock.
+     */
+    private static int symbolOf(String stockTicker) throws ResourceNotFoundException {
+        int symbol = symbols.find(stockTicker);
+        if (symbol < 0) {
+            throw new ResourceNotFoundException("No Order book exist for " + stockTicker);
         }
+        return symbol;
+    }
 
+    private OrderBookSide sideOf(TickerBook book, TradeType tradeType) {
+        OrderBookSide side = book.side(tradeType);
+        if (side == null) {
+            side = new OrderBookSide(tradeType, orderIndex, marketData.listener(book));
+            metrics.bookSide(book.stockTicker, side);
+            book.setSide(side);
+        }
+        return side;
     }
 
     /**
      * Important method to process the quantities.
+     * Order sweeps the counter side from top of book in a single loop, one resting order per iteration.
      * Flow is like below :
-     * If order quantity > match order quantity
-     *   Subtract quantity from match order quantity and set possible match order qty to zero
-     *   Remove matched order from Q
-     *   Update Map with remaining quantity
-     * If order quantity is < match order quantity
-     *  Subtract qty from match order qty
-     *  Update match order with new qty
-     * If order qty and match order qty is equal
-     *  Make qty is zero
-     *  remove matched order from Q
+     * While order has quantity and top of counter side is a match
+     *   If order quantity >= match order quantity
+     *     Remove matched order from its price level and set its qty to zero
+     *     (iceberg order with hidden quantity gets a new visible slice at the tail of its level instead)
+     *     Subtract match order quantity from order quantity
+     *   If order quantity is < match order quantity
+     *     Subtract qty from match order qty and its price level
+     *     Make order qty zero
+     * Every fill is published as an {@link ExecutionReport}.
+     * Remaining quantity of the order is added to its own side of the book, or cancelled for IOC and FOK orders.
+     * Prices and quantities are primitives while orders are compared and quantities taken, allocation only happens
+     * when a fill is reported (execution report with its BigDecimal price and BigInteger quantity, journal record,
+     * ring buffer slot) and when depth listeners publish a level change.
      * @param order
-     * @param tradeOrderEntities
-     * @param possibleMatchOrder
+     * @param counterOrders counter side of the book, can be null when stock has no such orders yet
+     * @param book book of the stock where remaining quantity is added
      */
-    private boolean processOrder(TradeOrderEntity order, PriorityBlockingQueue<TradeOrderEntity> tradeOrderEntities, TradeOrderEntity possibleMatchOrder) {
-        boolean hasOrderNoOrderProcess = false;
-        log.info("PROCESS ORDER : START");
-        if((order.getTradeType() == TradeType.BUY && order.getPrice().compareTo(possibleMatchOrder.getPrice()) >= 0) ||
-                (order.getTradeType() == TradeType.SELL && order.getPrice().compareTo(possibleMatchOrder.getPrice()) <= 0)
-                || order.getOrderType() == OrderType.MARKET)
-        {
-            BigInteger originalQty = order.getQuantity();
-            BigInteger possibleMatchOrigQty = possibleMatchOrder.getQuantity();
-            if (order.getQuantity().compareTo(BigInteger.ZERO) > 0 && order.getQuantity().compareTo(possibleMatchOrder.getQuantity()) > 0) {
-                order.setQuantity(order.getQuantity().subtract(possibleMatchOrder.getQuantity()));
-                possibleMatchOrder.setQuantity(BigInteger.ZERO);
-                boolean removeStatus = tradeOrderEntities.remove(possibleMatchOrder);
-                //To check remove is successful . Possible race condition.
-                //If 2 orders peek same order then one will be successful . Another order will be retried.
-                if(removeStatus)
-                {
-                    log.info("Possible match executed");
-                    if(order.getTradeType() == TradeType.BUY && sellMap.get(order.getStockTicker()).isEmpty())
-                    {
-                        processFirstOrder(order,buyMap);
-                    }else if(order.getTradeType() == TradeType.SELL && buyMap.get(order.getStockTicker()).isEmpty())
-                    {
-                        processFirstOrder(order,sellMap);
-                    }
-                }else
-                {
-                    log.info("Trade Removal Unsuccessful ***");
-                    possibleMatchOrder.setQuantity(possibleMatchOrigQty);
-                    order.setQuantity(originalQty);
-                    log.info("Retry Order with QTY " + originalQty);
-                    process(order);
-                }
+    private void processOrder(OrderNode order, OrderBookSide counterOrders, TickerBook book) {
+        log.debug("PROCESS ORDER : START");
+        while (order.quantity > 0 && null != counterOrders && !counterOrders.isEmpty()) {
+            OrderNode possibleMatchOrder = counterOrders.peek();
+            if (!isMatch(order, possibleMatchOrder)) {
+                break;
+            }
+            fill(order, possibleMatchOrder, counterOrders, book);
+        }
+        rest(order, book);
+        log.debug("PROCESS ORDER : END");
+    }
 
-            } else if (order.getQuantity().compareTo(BigInteger.ZERO) > 0 && order.getQuantity().compareTo(possibleMatchOrder.getQuantity()) < 0) {
-                possibleMatchOrder.setQuantity(possibleMatchOrder.getQuantity().subtract(order.getQuantity()));
-                order.setQuantity(BigInteger.ZERO);
-            } else {
-                order.setQuantity(BigInteger.ZERO);
-                possibleMatchOrder.setQuantity(BigInteger.ZERO);
-                boolean removeStatus = tradeOrderEntities.remove(possibleMatchOrder);
-                //To check remove is successful . Possible race condition.
-                //If 2 orders peek same order then one will be successful . Another order will be retried.
-                if(!removeStatus)
-                {
-                    log.info("Trade Removal Unsuccessful");
-                    possibleMatchOrder.setQuantity(possibleMatchOrigQty);
-                    order.setQuantity(originalQty);
-                    log.info("Retry Order with QTY " + originalQty);
-                    process(order);
-                }else
-                {
-                    log.info("Possible match executed**");
-                }
+    /**
+     * MARKET order takes whatever the counter side offers, from top of book outward, without any price check.
+     * Resting MARKET orders come first but two unpriced orders only trade at the last trade price of the stock :
+     * before the first trade they are left aside and the order only takes priced orders.
+     * Every step is a fill against the cached best level of the counter side, cost only depends on the number of
+     * resting orders filled and never on the size of the book.
+     * Remaining quantity rests in the market level of its side (GTC, GTD, DAY) or is cancelled (IOC, FOK).
+     * @param order
+     * @param counterOrders counter side of the book, can be null when stock has no such orders yet
+     * @param book book of the stock where remaining quantity is added
+     */
+    private void processMarketOrder(OrderNode order, OrderBookSide counterOrders, TickerBook book) {
+        log.debug("PROCESS MARKET ORDER : START");
+        OrderNode passiveOrder;
+        while (order.quantity > 0 && null != counterOrders
+                && (passiveOrder = book.lastTradePrice == TickSizeTable.MARKET_PRICE
+                        ? counterOrders.peekPriced() : counterOrders.peek()) != null) {
+            fill(order, passiveOrder, counterOrders, book);
+        }
+        rest(order, book);
+        log.debug("PROCESS MARKET ORDER : END");
+    }
 
+    /**
+     * MARKET_TO_LIMIT order takes the price of the best priced level of the counter side and then goes through the
+     * LIMIT flow at that price : it trades at that price only and its remaining quantity rests there or is
+     * cancelled (IOC, FOK).
+     * Order is cancelled when counter side has no priced order, there is no price to turn it into a limit.
+     * @param order
+     * @param counterOrders counter side of the book, can be null when stock has no such orders yet
+     * @param book book of the stock where remaining quantity is added
+     */
+    private void processMarketToLimitOrder(OrderNode order, OrderBookSide counterOrders, TickerBook book) {
+        PriceLevel bestLevel = counterOrders == null ? null : counterOrders.bestLevel();
+        if (bestLevel == null) {
+            cancelRemaining(order);
+            return;
+        }
+        OrderNode limitOrder = new OrderNode(order.order, bestLevel.getPrice(), order.quantity);
+        limitOrder.symbol = order.symbol;
+        limitOrder.acceptedAt = order.acceptedAt;
+        limitOrder.expireAt = order.expireAt;
+        limitOrder.displayQuantity = order.displayQuantity;
+        processOrder(limitOrder, counterOrders, book);
+    }
+
+    /**
+     * Fill executes at the price of the resting order. Resting MARKET order takes the price of the incoming order,
+     * or the last trade price when the incoming order has no price either (MARKET, triggered STOP).
+     */
+    private void fill(OrderNode order, OrderNode passiveOrder, OrderBookSide counterOrders, TickerBook book) {
+        long fillQuantity = Math.min(order.quantity, passiveOrder.quantity);
+        long price = !passiveOrder.market ? passiveOrder.price : !order.market ? order.price : book.lastTradePrice;
+        book.lastTradePrice = price;
+        if (book.stops != null) {
+            book.stops.traded(price);
+        }
+        publishFill(order, passiveOrder, price, fillQuantity, book);
+        if (order.quantity >= passiveOrder.quantity) {
+            order.quantity -= passiveOrder.quantity;
+            if (passiveOrder.hidden > 0) {
+                counterOrders.replenish(passiveOrder);
+            } else {
+                counterOrders.remove(passiveOrder);
+                passiveOrder.quantity = 0;
             }
+        } else {
+            counterOrders.reduce(passiveOrder, order.quantity);
+            order.quantity = 0;
+        }
+    }
 
+    private void rest(OrderNode order, TickerBook book) {
+        if (order.quantity == 0) {
+            return;
+        }
+        TimeInForce timeInForce = order.order.getTimeInForce();
+        if (timeInForce == TimeInForce.IOC || timeInForce == TimeInForce.FOK) {
+            cancelRemaining(order);
+            return;
+        }
+        processFirstOrder(order, book);
+        scheduleExpiry(order);
+    }
 
-        }else
-        {
-            if(order.getTradeType() == TradeType.BUY )
-            {
-                processFirstOrder(order,buyMap);
-            }else if(order.getTradeType() == TradeType.SELL)
-            {
-                processFirstOrder(order,sellMap);
-            }
-            hasOrderNoOrderProcess = true;
+    /**
+     * @return true when amended order only differs from the resting order by a lower or equal open quantity.
+     */
+    private static boolean isQuantityDown(OrderNode order, OrderNode amended) {
+        return order.stops == null
+                && amended.quantity <= order.quantity + order.hidden
+                //Resting MARKET_TO_LIMIT order holds the price it took from the book, the amend carries none.
+                && (amended.price == order.price || order.order.getOrderType() == OrderType.MARKET_TO_LIMIT)
+                && amended.stopPrice == order.stopPrice
+                && amended.displayQuantity == order.displayQuantity
+                && amended.expireAt == order.expireAt
+                && amended.order.getOrderType() == order.order.getOrderType()
+                && amended.order.getTimeInForce() == order.order.getTimeInForce();
+    }
+
+    //Resting order leaves its book side, pending stop order leaves the stop index.
+    private static void removeOrder(OrderNode node) {
+        if (node.stops != null) {
+            node.stops.remove(node);
+        } else {
+            node.book.remove(node);
+        }
+    }
+
+    private void scheduleExpiry(OrderNode order) {
+        if (order.expireAt != 0) {
+            expiryWheels[MatchingEngine.shardFor(order.symbol, expiryWheels.length)].schedule(order);
         }
-        log.info("PROCESS ORDER : END");
-       return hasOrderNoOrderProcess;
     }
 
     /**
-     * Important function for order processing.
-     * Returns comparator for BUY and SELL orders to be stored in priorityBlockingQueue
-     * priorityBlockingQueue is stored orders with following order
-     *   BUY :
-     *      ORDER TYPE ( MARKET/LIMIT )
-     *      Quantity ( Highest to Lowest )
-     *      Time ( Order creation time )
-     *   SELL :
-     *      ORDER TYPE ( MARKET/LIMIT )
-     *      Quantity ( Lowest to Highest )
-     *      Time ( Order creation time )
-     * @param tradeType
-     * @return
+     * Cancel the orders of given shard which expired. Orders which left the book since they were scheduled are skipped.
+     * Expiry depends on the time it runs at, the cancel of every expired order is journaled.
+     * Must be called from the matching shard.
+     * @param shard
+     * @param now current time in millis
      */
-    private Comparator<TradeOrderEntity> getComparator(TradeType tradeType) {
-            return tradeType == TradeType.BUY ?
-                    comparing(TradeOrderEntity::getOrderType).reversed()
-                            .thenComparing(TradeOrderEntity::getPrice).reversed()
-                            .thenComparing(TradeOrderEntity::getTradeTime) :  comparing(TradeOrderEntity::getOrderType).reversed()
-                    .thenComparing(TradeOrderEntity::getPrice)
-                    .thenComparing(TradeOrderEntity::getTradeTime);
+    public void expireOrders(int shard, long now) {
+        expiryWheels[shard].advance(now, expireOrder);
+    }
+
+    private void expire(OrderNode node) {
+        if (node.level == null) {
+            return;
+        }
+        removeOrder(node);
+        log.debug("Order {} expired", node.order.getOrderId());
+        journal.appendCancel(node.order.getOrderId(), node.order.getStockTicker());
+        events.order(EngineEvent.Type.EXPIRE, node.order);
+    }
+
+    /**
+     * Remaining quantity never reaches the book. Journal replay reproduces the same cancel, only the event is published.
+     */
+    private void cancelRemaining(OrderNode order) {
+        //Guarded, quantity would be boxed on every cancel even with DEBUG off.
+        if (log.isDebugEnabled()) {
+            log.debug("Remaining quantity {} of order {} cancelled", order.quantity, order.order.getOrderId());
+        }
+        if (!replaying) {
+            events.order(EngineEvent.Type.CANCEL, order.order);
+        }
+    }
+
+    private void publishFill(OrderNode order, OrderNode passiveOrder, long price, long quantity, TickerBook book) {
+        if (replaying) {
+            return;
+        }
+        metrics.filled(order.acceptedAt);
+        long tradeId = executionReports.nextTradeId();
+        String stockTicker = order.order.getStockTicker();
+        ExecutionReport fill = new ExecutionReport(tradeId, stockTicker,
+                order.order.getOrderId(), passiveOrder.order.getOrderId(), order.order.getTradeType(),
+                TickSizeTable.toPrice(book.tickSize, price), BigInteger.valueOf(quantity), System.currentTimeMillis());
+        journal.appendFill(fill);
+        executionReports.publish(fill);
+    }
+
+    private static boolean isMatch(OrderNode order, OrderNode possibleMatchOrder) {
+        return possibleMatchOrder.market
+                || (order.order.getTradeType() == TradeType.BUY && order.price >= possibleMatchOrder.price)
+                || (order.order.getTradeType() == TradeType.SELL && order.price <= possibleMatchOrder.price);
+    }
 
+    private OrderNode toNode(TradeOrderEntity order, BigDecimal tickSize) {
+        OrderType orderType = order.getOrderType();
+        long price = orderType == OrderType.MARKET || orderType == OrderType.MARKET_TO_LIMIT || orderType == OrderType.STOP
+                ? TickSizeTable.MARKET_PRICE
+                : TickSizeTable.toTicks(order.getStockTicker(), tickSize, order.getPrice());
+        long stopPrice = 0L;
+        if (orderType == OrderType.STOP || orderType == OrderType.STOP_LIMIT) {
+            if (order.getStopPrice() == null) {
+                throw new InvalidOrderException("Stop price is mandatory for " + orderType + " order");
+            }
+            stopPrice = TickSizeTable.toTicks(order.getStockTicker(), tickSize, order.getStopPrice());
         }
+        OrderNode node = new OrderNode(order, price, TickSizeTable.toLots(order.getQuantity()), stopPrice);
+        node.expireAt = expireAt(order);
+        if (order.getDisplayQuantity() != null) {
+            if (order.getDisplayQuantity().signum() <= 0) {
+                throw new InvalidOrderException("Display quantity has to be positive");
+            }
+            node.displayQuantity = TickSizeTable.toLots(order.getDisplayQuantity());
+        }
+        return node;
+    }
+
+    /**
+     * DAY orders expire at the first end of trading day after they were accepted, so replaying the journal gives
+     * the same expiry.
+     */
+    private long expireAt(TradeOrderEntity order) {
+        TimeInForce timeInForce = order.getTimeInForce();
+        if (timeInForce == TimeInForce.GTD) {
+            if (order.getExpireTime() == null) {
+                throw new InvalidOrderException("Expire time is mandatory for GTD order");
+            }
+            if (!replaying && order.getExpireTime() <= System.currentTimeMillis()) {
+                throw new InvalidOrderException("Expire time " + order.getExpireTime() + " is in the past");
+            }
+            return order.getExpireTime();
+        }
+        if (timeInForce == TimeInForce.DAY) {
+            ZonedDateTime accepted = Instant.ofEpochMilli(order.getTradeTime() == null ? System.currentTimeMillis()
+                    : order.getTradeTime()).atZone(timeZone);
+            ZonedDateTime end = accepted.with(dayEnd);
+            if (!end.isAfter(accepted)) {
+                end = end.plusDays(1);
+            }
+            return end.toInstant().toEpochMilli();
+        }
+        return 0L;
+    }
+
+    private static TradeOrderEntity toEntity(OrderNode node, BigDecimal tickSize) {
+        TradeOrderEntity entity = new TradeOrderEntity();
+        entity.setOrderId(node.order.getOrderId());
+        entity.setStockTicker(node.order.getStockTicker());
+        entity.setTradeTime(node.order.getTradeTime());
+        entity.setTradeType(node.order.getTradeType());
+        entity.setOrderType(node.order.getOrderType());
+        entity.setTimeInForce(node.order.getTimeInForce());
+        entity.setExpireTime(node.order.getExpireTime());
+        entity.setStopPrice(node.order.getStopPrice());
+        entity.setPrice(node.market ? null : TickSizeTable.toPrice(tickSize, node.price));
+        entity.setQuantity(BigInteger.valueOf(node.quantity));
+        return entity;
+    }
 
     /**
      * Get all the available orders for given stock.
@@ -253,100 +763,280 @@ public class OrderProcessor {
      * @throws ResourceNotFoundException
      */
     public List<TradeOrderEntity> retrieveOrderBook(String stockName) throws ResourceNotFoundException {
-        log.info("retrieveOrderBook : START");
-        List<TradeOrderEntity> orderBook = new ArrayList<>();
+        return retrieveOrderBook(symbolOf(stockName), new OrderBookQuery()).getOrders();
+    }
 
-        PriorityBlockingQueue<TradeOrderEntity> buyList = buyMap.get(stockName);
-        PriorityBlockingQueue<TradeOrderEntity> sellList = sellMap.get(stockName);
-        if(null != buyList && !buyList.isEmpty())
-        {
-            orderBook.addAll(buyList);
+    /**
+     * Get one page of the resting orders of given stock, BUY side then SELL side, each in priority order.
+     * Only the orders returned are walked : the page starts at the cursor position found through the order id index
+     * (or the queue sequence of the cursor in its price level when that order is gone or was queued again) and stops at
+     * the limit or the last level asked for.
+     * Must be called from the matching shard owning the stock.
+     * @param symbol symbol id of the stock
+     * @param query side, levels, limit and cursor, all optional
+     * @return orders of the page along with the cursor of the next one
+     * @throws ResourceNotFoundException when there is no order to return on the first page
+     */
+    public OrderBookPage retrieveOrderBook(int symbol, OrderBookQuery query) throws ResourceNotFoundException {
+        log.debug("retrieveOrderBook : START");
+        if (query.getLevels() != null && query.getLevels() < 1) {
+            throw new InvalidOrderException("Levels has to be at least one");
+        }
+        if (query.getLimit() != null && query.getLimit() < 1) {
+            throw new InvalidOrderException("Limit has to be at least one");
         }
+        BookCursor cursor = query.getCursor() == null || query.getCursor().isEmpty() ? null : BookCursor.parse(query.getCursor());
+        if (cursor != null && query.getSide() != null && cursor.side != query.getSide()) {
+            throw new InvalidOrderException("Cursor " + query.getCursor() + " is not for side " + query.getSide());
+        }
+        int limit = query.getLimit() == null ? Integer.MAX_VALUE : query.getLimit();
+        TickerBook book = symbols.book(symbol);
+        List<TradeOrderEntity> orderBook = new ArrayList<>();
+        String nextCursor = null;
 
-        if(null != sellList && !sellList.isEmpty()) {
-            orderBook.addAll(sellList);
+        for (TradeType tradeType : TradeType.values()) {
+            if ((query.getSide() != null && tradeType != query.getSide())
+                    || (cursor != null && tradeType.compareTo(cursor.side) < 0)) {
+                continue;
+            }
+            OrderBookSide side = book.side(tradeType);
+            if (side == null || side.isEmpty()) {
+                continue;
+            }
+            BookCursor start = cursor != null && cursor.side == tradeType ? cursor : null;
+            Long lastLevel = start != null ? start.lastLevel
+                    : query.getLevels() == null ? null : side.lastLevelPrice(query.getLevels());
+            if (orderBook.size() == limit) {
+                nextCursor = new BookCursor(tradeType, TickSizeTable.MARKET_PRICE, 0L, 0L, lastLevel).toString();
+                break;
+            }
+            OrderNode last = page(side, start, lastLevel, limit, book.tickSize, orderBook);
+            if (last != null) {
+                nextCursor = new BookCursor(tradeType, last.price, last.order.getOrderId(), last.queueSequence, lastLevel).toString();
+                break;
+            }
         }
 
-        if(orderBook.isEmpty())
+        if (orderBook.isEmpty() && cursor == null)
         {
             log.error("No Order book exist");
-            throw new ResourceNotFoundException("No Order book exist for " + stockName);
+            throw new ResourceNotFoundException("No Order book exist for " + book.stockTicker);
         }
-        log.info("retrieveOrderBook : END");
-        return orderBook;
+        log.debug("retrieveOrderBook : END");
+        return new OrderBookPage(orderBook, nextCursor);
+    }
+
+    /**
+     * Collect orders of one side from the cursor position up to the last level.
+     * @return last order collected when limit is reached before the end of the side, null otherwise
+     */
+    private OrderNode page(OrderBookSide side, BookCursor start, Long lastLevel, int limit, BigDecimal tickSize,
+                           List<TradeOrderEntity> orderBook) {
+        OrderNode resume = null;
+        if (start != null) {
+            OrderNode node = orderIndex.get(start.orderId);
+            if (node != null && node.book == side && node.price == start.price && node.queueSequence == start.sequence) {
+                resume = node;
+            }
+        }
+        Iterator<PriceLevel> levels = side.levelsFrom(start == null ? null : start.price);
+        OrderNode last = null;
+        while (levels.hasNext()) {
+            PriceLevel level = levels.next();
+            if (lastLevel != null && side.isBeyond(level, lastLevel)) {
+                break;
+            }
+            OrderNode node = level.head();
+            if (resume != null && resume.level == level) {
+                node = resume.next;
+            } else if (start != null && level.getPrice() == start.price) {
+                //Orders of a level are in queue sequence order, whatever their order ids.
+                while (node != null && node.queueSequence <= start.sequence) {
+                    node = node.next;
+                }
+            }
+            for (; node != null; node = node.next) {
+                if (orderBook.size() == limit) {
+                    return last;
+                }
+                orderBook.add(toEntity(node, tickSize));
+                last = node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Version of the order book of given stock, it changes with every add, fill and cancel on either side.
+     * Safe to call from any thread.
+     * @param symbol symbol id of the stock
+     * @return version or -1 when stock never had an order
+     */
+    public long bookVersion(int symbol) {
+        TickerBook book = symbols.book(symbol);
+        OrderBookSide buySide = book.buy;
+        OrderBookSide sellSide = book.sell;
+        if (buySide == null && sellSide == null) {
+            return -1L;
+        }
+        return (buySide == null ? 0L : buySide.version()) + (sellSide == null ? 0L : sellSide.version());
+    }
+
+    /**
+     * Copy of the whole order book of given stock along with the version it reflects, serialization is left to the caller.
+     * Must be called from the matching shard owning the stock.
+     * @param symbol symbol id of the stock
+     * @return view without json, orders are empty when stock never had an order or has none left
+     */
+    public OrderBookView viewOrderBook(int symbol) {
+        TickerBook book = symbols.book(symbol);
+        List<TradeOrderEntity> orderBook = new ArrayList<>();
+        for (TradeType tradeType : TradeType.values()) {
+            OrderBookSide side = book.side(tradeType);
+            if (side != null) {
+                side.orders().forEach(node -> orderBook.add(toEntity(node, book.tickSize)));
+            }
+        }
+        return new OrderBookView(book.stockTicker, bookVersion(symbol), Collections.unmodifiableList(orderBook), null);
+    }
+
+    /**
+     * Aggregated best price levels of both sides (L2) for given stock, only the returned levels are walked.
+     * Must be called from the matching shard owning the stock.
+     * @param stockTicker
+     * @param levels maximum number of levels per side
+     * @return depth along with the sequence of the last depth update it reflects
+     * @throws ResourceNotFoundException when stock never had an order
+     */
+    public MarketDepth retrieveDepth(String stockTicker, int levels) throws ResourceNotFoundException {
+        return retrieveDepth(symbolOf(stockTicker), levels, null);
+    }
+
+    /**
+     * Aggregated best price levels of one side, levels of the other side are left empty.
+     * @param symbol symbol id of the stock
+     * @param levels maximum number of levels per side
+     * @param side BUY or SELL, null for both sides
+     * @return depth along with the sequence of the last depth update it reflects
+     * @throws ResourceNotFoundException when stock never had an order
+     */
+    public MarketDepth retrieveDepth(int symbol, int levels, TradeType side) throws ResourceNotFoundException {
+        if (levels < 1) {
+            throw new InvalidOrderException("Depth has to be at least one level");
+        }
+        TickerBook book = symbols.book(symbol);
+        String stockTicker = book.stockTicker;
+        OrderBookSide buySide = book.buy;
+        OrderBookSide sellSide = book.sell;
+        if (buySide == null && sellSide == null) {
+            throw new ResourceNotFoundException("No Order book exist for " + stockTicker);
+        }
+        return new MarketDepth(stockTicker, marketData.sequence(book),
+                depth(book, side == TradeType.SELL ? null : buySide, levels),
+                depth(book, side == TradeType.BUY ? null : sellSide, levels));
+    }
+
+    private static List<DepthLevel> depth(TickerBook book, OrderBookSide side, int levels) {
+        if (side == null) {
+            return Collections.emptyList();
+        }
+        List<DepthLevel> depth = new ArrayList<>();
+        for (PriceLevel level : side.topLevels(levels)) {
+            depth.add(MarketDataFeed.toLevel(book, level));
+        }
+        return depth;
     }
 
     /**
      * Delete order for given order id.
+     * Order is found through the order id index, cost doesn't depend on number of stocks or orders in the books.
      * @param orderId
      * @return
      * @throws ResourceNotFoundException
      */
     public OrderResponse deleteOrder(Long orderId) throws ResourceNotFoundException {
-        log.info("deleteOrder : START");
+        log.debug("deleteOrder : START");
         OrderResponse response = new OrderResponse();
 
-        boolean orderIdRemoved = false;
-        //Delete order from map if order id matches
-        for (Map.Entry<String, PriorityBlockingQueue<TradeOrderEntity>> entry : buyMap.entrySet()) {
-            orderIdRemoved = entry.getValue().removeIf(b -> b.getOrderId().compareTo(orderId) == 0);
-        }
-
-        for (Map.Entry<String, PriorityBlockingQueue<TradeOrderEntity>> entry : sellMap.entrySet()) {
-            orderIdRemoved = entry.getValue().removeIf(b -> b.getOrderId().compareTo(orderId)==0);
-        }
-        if(orderIdRemoved) {
-            response.setResponse("Successful execution");
+        OrderNode node = orderIndex.get(orderId);
+        if(node != null) {
+            removeOrder(node);
+            if (!replaying) {
+                journal.appendCancel(orderId, node.order.getStockTicker());
+                events.order(EngineEvent.Type.CANCEL, node.order);
+            }
+            response.setOrderId(orderId);
+            response.setResponse(SUCCESSFUL_EXECUTION);
         }else
         {
             log.error("OrderId doesn't exist for removal");
             throw new ResourceNotFoundException("OrderId doesn't exist for removal");
         }
-        log.info("deleteOrder : END");
+        log.debug("deleteOrder : END");
         return response;
     }
 
     /**
-     * Update Order with new order.
-     * @param tradeOrderEntity
+     * Find stock of a resting order so the request can be routed to the matching shard owning it.
+     * Safe to call from any thread.
+     * @param orderId
+     * @return symbol id of the stock
      * @throws ResourceNotFoundException
      */
-    public void processUpdate(TradeOrderEntity tradeOrderEntity) throws ResourceNotFoundException {
-
-        log.info("processUpdate : START");
-        TradeType tradeType = tradeOrderEntity.getTradeType();
-        switch (tradeType) {
-            case BUY:
-                PriorityBlockingQueue<TradeOrderEntity> tradeBuyOrderEntities = buyMap.get(tradeOrderEntity.getStockTicker());
-                processUpdate(tradeOrderEntity, tradeBuyOrderEntities);
-                break;
-
-            case SELL:
-                PriorityBlockingQueue<TradeOrderEntity> tradeSellOrderEntities = sellMap.get(tradeOrderEntity.getStockTicker());
-                processUpdate(tradeOrderEntity, tradeSellOrderEntities);
-                break;
-            default:
-                break;
+    public int symbolOfOrder(Long orderId) throws ResourceNotFoundException {
+        OrderNode node = orderIndex.get(orderId);
+        if (node == null) {
+            log.error("OrderId doesn't exist for removal");
+            throw new ResourceNotFoundException("OrderId doesn't exist for removal");
         }
+        return node.symbol;
+    }
 
+    /**
+     * Amend of a stock known by its ticker, used on journal replay.
+     * @param tradeOrderEntity
+     * @throws ResourceNotFoundException
+     */
+    public void processUpdate(TradeOrderEntity tradeOrderEntity) throws ResourceNotFoundException {
+        processUpdate(tradeOrderEntity, symbols.find(tradeOrderEntity.getStockTicker()));
     }
 
-    private void processUpdate(TradeOrderEntity tradeOrderEntity, PriorityBlockingQueue<TradeOrderEntity> tradeOrderEntities) throws ResourceNotFoundException {
-        log.info("processUpdate : START");
+    /**
+     * Update Order with new order.
+     * Existing order is found through the order id index and has to be on the same stock and side as the new order.
+     * Amend which only lowers the quantity of a resting order is applied in place, the order keeps its place in the queue.
+     * Any other amend (price, quantity up, order type, time in force, stop or display quantity) takes the order out
+     * and enters the new one as a new order : it loses time priority, is matched right away when its price crosses,
+     * and STOP and STOP_LIMIT orders wait for their stop price again.
+     * Must be called from the matching shard owning the stock.
+     * @param tradeOrderEntity
+     * @param symbol symbol id of the stock of the new order
+     * @throws ResourceNotFoundException
+     */
+    public void processUpdate(TradeOrderEntity tradeOrderEntity, int symbol) throws ResourceNotFoundException {
+        log.debug("processUpdate : START");
         //Update Order if order id matches
-        if (null != tradeOrderEntities && !tradeOrderEntities.isEmpty()) {
-            Optional<TradeOrderEntity> matchedOrder = tradeOrderEntities.stream().filter(b -> b.getOrderId().compareTo(tradeOrderEntity.getOrderId()) == 0).findFirst();
-            if (matchedOrder.isPresent()) {
-                tradeOrderEntities.remove(matchedOrder.get());
-                tradeOrderEntities.add(tradeOrderEntity);
-            }else{
-                log.error(ORDER_DOESN_T_EXISTS_FOR_UPDATION);
-                throw new ResourceNotFoundException(ORDER_DOESN_T_EXISTS_FOR_UPDATION);
+        OrderNode matchedOrder = orderIndex.get(tradeOrderEntity.getOrderId());
+        if (matchedOrder != null && matchedOrder.order.getTradeType() == tradeOrderEntity.getTradeType()
+                && matchedOrder.symbol == symbol) {
+            OrderNode updatedOrder = toNode(tradeOrderEntity, symbols.book(symbol).tickSize);
+            if (!replaying) {
+                journal.appendOrder(JournalRecord.Type.AMEND, tradeOrderEntity);
+                events.order(EngineEvent.Type.AMEND, tradeOrderEntity);
+            }
+            if (isQuantityDown(matchedOrder, updatedOrder)) {
+                matchedOrder.book.reduceTo(matchedOrder, updatedOrder.quantity);
+            } else {
+                removeOrder(matchedOrder);
+                if (!replaying) {
+                    updatedOrder.acceptedAt = System.nanoTime();
+                }
+                enter(updatedOrder, symbols.book(symbol));
             }
         }else{
             log.error(ORDER_DOESN_T_EXISTS_FOR_UPDATION);
             throw new ResourceNotFoundException(ORDER_DOESN_T_EXISTS_FOR_UPDATION);
         }
-
+        log.debug("processUpdate : END");
     }
 }
@@ -0,0 +1,94 @@
+package com.trade.stock.order.processor;
+
+/**
+ * All resting orders of one side at one price, kept in FIFO (time priority) order.
+ * Aggregate quantity of the level is cached so depth does not need to walk the orders.
+ * It only counts visible quantity, hidden quantity of iceberg orders is cached apart.
+ */
+final class PriceLevel {
+
+    private final long price;
+    private OrderNode head;
+    private OrderNode tail;
+    private int orderCount;
+    private long totalQuantity;
+    private long hiddenQuantity;
+
+    PriceLevel(long price) {
+        this.price = price;
+    }
+
+    long getPrice() {
+        return price;
+    }
+
+    OrderNode head() {
+        return head;
+    }
+
+    int orderCount() {
+        return orderCount;
+    }
+
+    long totalQuantity() {
+        return totalQuantity;
+    }
+
+    long hiddenQuantity() {
+        return hiddenQuantity;
+    }
+
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    void append(OrderNode node) {
+        node.level = this;
+        node.prev = tail;
+        node.next = null;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+        orderCount++;
+        totalQuantity += node.quantity;
+        hiddenQuantity += node.hidden;
+    }
+
+    void unlink(OrderNode node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.level = null;
+        orderCount--;
+        totalQuantity -= node.quantity;
+        hiddenQuantity -= node.hidden;
+    }
+
+    /**
+     * Reduce cached quantity of the level after one of its orders got partially filled.
+     * @param quantity
+     */
+    void reduce(long quantity) {
+        totalQuantity -= quantity;
+    }
+
+    /**
+     * Reduce cached hidden quantity of the level after the hidden quantity of one of its iceberg orders got amended down.
+     * @param quantity
+     */
+    void reduceHidden(long quantity) {
+        hiddenQuantity -= quantity;
+    }
+}
@@ -0,0 +1,93 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.dao.journal.OrderJournal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes order book snapshots in background, one shard at a time spread over the snapshot interval.
+ * A shard only pauses while its books are copied, encoding and writing happen on the snapshot thread.
+ * Journal is forced before a snapshot is written : the snapshot replaces the records up to its journal position,
+ * they have to be on disk before it is.
+ * Once every shard has a snapshot, journal history older than the oldest of them is released.
+ */
+@Component
+@Slf4j
+public class SnapshotScheduler {
+
+    private final MatchingEngine engine;
+    private final OrderProcessor processor;
+    private final SnapshotStore snapshotStore;
+    private final OrderJournal journal;
+    private final ScheduledExecutorService executor;
+    private final long[] positions;
+    private int nextShard;
+    private boolean firstRound = true;
+
+    public SnapshotScheduler(EngineProperties properties, MatchingEngine engine, OrderProcessor processor,
+                             SnapshotStore snapshotStore, OrderJournal journal) {
+        this.engine = engine;
+        this.processor = processor;
+        this.snapshotStore = snapshotStore;
+        this.journal = journal;
+        this.positions = new long[engine.getShardCount()];
+        if (!snapshotStore.isEnabled()) {
+            this.executor = null;
+            return;
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-book-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1L, properties.getSnapshot().getIntervalMs() / positions.length);
+        executor.scheduleWithFixedDelay(this::snapshotNextShard, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Snapshot next shard in turn.
+     */
+    void snapshotNextShard() {
+        int shard = nextShard;
+        try {
+            long start = System.currentTimeMillis();
+            BookSnapshot snapshot = engine.submitToShard(shard, () -> processor.capture(shard, positions.length)).get();
+            journal.force();
+            snapshotStore.write(snapshot);
+            positions[shard] = snapshot.journalPosition;
+            log.info("Snapshot of shard {} written, {} orders up to journal sequence {} in {} ms", shard,
+                    snapshot.orderCount(), snapshot.journalPosition, System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            log.error("Snapshot of shard {} failed", shard, e);
+            return;
+        }
+        nextShard = (shard + 1) % positions.length;
+        if (nextShard == 0) {
+            if (firstRound) {
+                snapshotStore.deleteOtherSets(positions.length);
+                firstRound = false;
+            }
+            long oldest = positions[0];
+            for (long position : positions) {
+                oldest = Math.min(oldest, position);
+            }
+            journal.truncateBefore(oldest + 1);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes {@link BookSnapshot}s, one file per shard named snapshot-[shard count]-[shard].bin.
+ * A file is written next to its final name, forced to disk and atomically moved over it, so a crash while writing
+ * leaves the previous snapshot in place. The directory is forced after the move so the new file survives a crash.
+ * Every file ends with a CRC32 of its content.
+ */
+@Component
+@Slf4j
+public class SnapshotStore {
+
+    private static final int MAGIC = 0x4F42534E;
+    private static final int VERSION = 1;
+    private static final Pattern FILE_NAME = Pattern.compile("snapshot-(\\d+)-(\\d+)\\.bin");
+
+    private final boolean enabled;
+    private final Path directory;
+
+    public SnapshotStore(EngineProperties properties) {
+        this.enabled = properties.getSnapshot().isEnabled();
+        this.directory = Paths.get(properties.getSnapshot().getDirectory());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void write(BookSnapshot snapshot) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve("snapshot-" + snapshot.shardCount + "-" + snapshot.shard + ".bin");
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        //Checksum sits above the buffer so it covers exactly the bytes written before the trailer.
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.shard);
+            out.writeInt(snapshot.shardCount);
+            out.writeLong(snapshot.journalPosition);
+            out.writeLong(snapshot.tradeId);
+            out.writeLong(snapshot.orderId);
+            out.writeInt(snapshot.tickers.size());
+            for (BookSnapshot.TickerImage ticker : snapshot.tickers) {
+                out.writeUTF(ticker.stockTicker);
+                byte[] tickSize = ticker.tickSize.unscaledValue().toByteArray();
+                out.writeInt(ticker.tickSize.scale());
+                out.writeByte(tickSize.length);
+                out.write(tickSize);
+                writeSide(out, ticker.buy);
+                writeSide(out, ticker.sell);
+                writeSide(out, ticker.buyStops);
+                writeSide(out, ticker.sellStops);
+                out.writeLong(ticker.lastTradePrice);
+            }
+            out.writeLong(crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+    }
+
+    /**
+     * Make the rename of a snapshot durable. Not every platform can open a directory (Windows), the move is then
+     * left to the file system.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Snapshot directory {} can't be forced", directory, e);
+        }
+    }
+
+    /**
+     * Load the most recent complete set of shard snapshots.
+     * Sets written with a different shard count are considered too, the one reaching furthest in the journal wins.
+     * @return one snapshot per shard of the set or empty list when there is no usable set
+     */
+    List<BookSnapshot> loadLatest() {
+        if (!enabled || !Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        Map<Integer, List<Path>> sets = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    sets.computeIfAbsent(Integer.valueOf(matcher.group(1)), count -> new ArrayList<>()).add(file);
+                }
+            });
+        } catch (IOException e) {
+            log.error("Unable to list snapshots in {}", directory, e);
+            return Collections.emptyList();
+        }
+        List<BookSnapshot> latest = Collections.emptyList();
+        long latestPosition = -1;
+        for (Map.Entry<Integer, List<Path>> set : sets.entrySet()) {
+            List<BookSnapshot> snapshots = read(set.getKey(), set.getValue());
+            if (snapshots.isEmpty()) {
+                continue;
+            }
+            long position = snapshots.stream().mapToLong(snapshot -> snapshot.journalPosition).min().getAsLong();
+            if (position > latestPosition) {
+                latest = snapshots;
+                latestPosition = position;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Remove snapshot sets written with another shard count, they are superseded once every shard of the current
+     * count has been written.
+     * @param shardCount
+     */
+    void deleteOtherSets(int shardCount) {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && Integer.parseInt(matcher.group(1)) != shardCount) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Unable to clean snapshots in {}", directory, e);
+        }
+    }
+
+    private List<BookSnapshot> read(int shardCount, List<Path> files) {
+        BookSnapshot[] snapshots = new BookSnapshot[shardCount];
+        for (Path file : files) {
+            try {
+                BookSnapshot snapshot = read(file);
+                if (snapshot.shardCount == shardCount && snapshot.shard < shardCount) {
+                    snapshots[snapshot.shard] = snapshot;
+                }
+            } catch (IOException e) {
+                log.error("Snapshot {} is unreadable", file, e);
+            }
+        }
+        for (BookSnapshot snapshot : snapshots) {
+            if (snapshot == null) {
+                log.warn("Snapshot set of {} shards is incomplete", shardCount);
+                return Collections.emptyList();
+            }
+        }
+        return Arrays.asList(snapshots);
+    }
+
+    private static BookSnapshot read(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int shard = in.readInt();
+            int shardCount = in.readInt();
+            long journalPosition = in.readLong();
+            long tradeId = in.readLong();
+            long orderId = in.readLong();
+            int tickerCount = in.readInt();
+            List<BookSnapshot.TickerImage> tickers = new ArrayList<>(tickerCount);
+            for (int i = 0; i < tickerCount; i++) {
+                String stockTicker = in.readUTF();
+                int scale = in.readInt();
+                byte[] tickSize = new byte[in.readUnsignedByte()];
+                in.readFully(tickSize);
+                BookSnapshot.SideImage buy = readSide(in);
+                BookSnapshot.SideImage sell = readSide(in);
+                BookSnapshot.SideImage buyStops = readSide(in);
+                BookSnapshot.SideImage sellStops = readSide(in);
+                long lastTradePrice = in.readLong();
+                tickers.add(new BookSnapshot.TickerImage(stockTicker, new BigDecimal(new BigInteger(tickSize), scale), buy, sell,
+                        buyStops, sellStops, lastTradePrice));
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            return new BookSnapshot(shard, shardCount, journalPosition, tradeId, orderId, tickers);
+        }
+    }
+
+    private static void writeSide(DataOutputStream out, BookSnapshot.SideImage side) throws IOException {
+        if (side == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(side.size);
+        for (int i = 0; i < side.size; i++) {
+            out.writeLong(side.orderIds[i]);
+            out.writeLong(side.tradeTimes[i]);
+            out.writeByte(side.orderTypes[i]);
+            out.writeByte(side.timeInForces[i]);
+            out.writeLong(side.expireTimes[i]);
+            out.writeLong(side.prices[i]);
+            out.writeLong(side.stopPrices[i]);
+            out.writeLong(side.quantities[i]);
+            out.writeLong(side.hiddenQuantities[i]);
+            out.writeLong(side.displayQuantities[i]);
+        }
+    }
+
+    private static BookSnapshot.SideImage readSide(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        BookSnapshot.SideImage side = new BookSnapshot.SideImage(size);
+        for (int i = 0; i < size; i++) {
+            side.orderIds[i] = in.readLong();
+            side.tradeTimes[i] = in.readLong();
+            side.orderTypes[i] = in.readByte();
+            side.timeInForces[i] = in.readByte();
+            side.expireTimes[i] = in.readLong();
+            side.prices[i] = in.readLong();
+            side.stopPrices[i] = in.readLong();
+            side.quantities[i] = in.readLong();
+            side.hiddenQuantities[i] = in.readLong();
+            side.displayQuantities[i] = in.readLong();
+        }
+        return side;
+    }
+}
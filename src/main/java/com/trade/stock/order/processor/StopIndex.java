@@ -0,0 +1,130 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.constants.TradeType;
+
+import java.util.*;
+
+/**
+ * Pending STOP and STOP_LIMIT orders of one stock, waiting for a trade to reach their stop price.
+ * Orders are grouped by stop price into {@link PriceLevel}s, kept in arrival order within a level.
+ *   BUY stops : triggered by a trade at or above their stop price
+ *   SELL stops : triggered by a trade at or below their stop price
+ * Highest and lowest trade prices since the last release are tracked, a release takes every crossed level
+ * of each side in one range of the sorted index, pending stops which are not crossed are never looked at.
+ * Pending orders are registered in the order id index shared by all books so they can be cancelled and amended.
+ * Not thread safe, the index is only touched by the matching shard owning its stock.
+ */
+final class StopIndex {
+
+    private final Map<Long, OrderNode> orderIndex;
+    private final NavigableMap<Long, PriceLevel> buyStops = new TreeMap<>();
+    private final NavigableMap<Long, PriceLevel> sellStops = new TreeMap<>();
+    private int size;
+    //Price range traded since the last release, empty when high < low.
+    private long tradeHigh = Long.MIN_VALUE;
+    private long tradeLow = Long.MAX_VALUE;
+
+    StopIndex(Map<Long, OrderNode> orderIndex) {
+        this.orderIndex = orderIndex;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Park order until a trade reaches its stop price.
+     * @param node order with {@link OrderNode#stopPrice} set
+     */
+    void add(OrderNode node) {
+        long stopPrice = node.stopPrice;
+        NavigableMap<Long, PriceLevel> stops = stopsOf(node.order.getTradeType());
+        PriceLevel level = stops.get(stopPrice);
+        if (level == null) {
+            level = new PriceLevel(stopPrice);
+            stops.put(stopPrice, level);
+        }
+        node.stops = this;
+        level.append(node);
+        orderIndex.put(node.order.getOrderId(), node);
+        size++;
+    }
+
+    /**
+     * Remove pending order, on cancel, amend or expiry.
+     * @param node
+     */
+    void remove(OrderNode node) {
+        PriceLevel level = node.level;
+        level.unlink(node);
+        node.stops = null;
+        orderIndex.remove(node.order.getOrderId(), node);
+        size--;
+        if (level.isEmpty()) {
+            stopsOf(node.order.getTradeType()).remove(level.getPrice());
+        }
+    }
+
+    /**
+     * Record the price of a trade of the stock.
+     * @param price in ticks
+     */
+    void traded(long price) {
+        tradeHigh = Math.max(tradeHigh, price);
+        tradeLow = Math.min(tradeLow, price);
+    }
+
+    /**
+     * @return true when the stock traded since the last release.
+     */
+    boolean hasTraded() {
+        return tradeHigh >= tradeLow;
+    }
+
+    /**
+     * Take out every order whose stop price was reached by the trades since the last release and reset the traded range.
+     * BUY stops come first, lowest stop first, then SELL stops, highest stop first, arrival order within a stop price.
+     * @param triggered receives the triggered orders
+     */
+    void release(List<OrderNode> triggered) {
+        drain(buyStops.headMap(tradeHigh, true), triggered);
+        drain(sellStops.tailMap(tradeLow, true).descendingMap(), triggered);
+        tradeHigh = Long.MIN_VALUE;
+        tradeLow = Long.MAX_VALUE;
+    }
+
+    /**
+     * @param tradeType
+     * @return pending orders of given side, lowest stop price first.
+     */
+    List<OrderNode> orders(TradeType tradeType) {
+        List<OrderNode> orders = new ArrayList<>();
+        for (PriceLevel level : stopsOf(tradeType).values()) {
+            for (OrderNode node = level.head(); node != null; node = node.next) {
+                orders.add(node);
+            }
+        }
+        return orders;
+    }
+
+    private void drain(NavigableMap<Long, PriceLevel> crossed, List<OrderNode> triggered) {
+        if (crossed.isEmpty()) {
+            return;
+        }
+        for (PriceLevel level : crossed.values()) {
+            OrderNode node;
+            while ((node = level.head()) != null) {
+                level.unlink(node);
+                node.stops = null;
+                orderIndex.remove(node.order.getOrderId(), node);
+                size--;
+                triggered.add(node);
+            }
+        }
+        crossed.clear();
+    }
+
+    private NavigableMap<Long, PriceLevel> stopsOf(TradeType tradeType) {
+        return tradeType == TradeType.BUY ? buyStops : sellStops;
+    }
+}
@@ -0,0 +1,66 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Order ids made of a sequence per matching shard and the shard index
+ *   id = sequence << SHARD_BITS | shard
+ * Every shard counts on its own stripe, counters are padded apart so shards never share a cache line.
+ * Ids never collide between shards, are dense per shard and handing one out does not allocate.
+ */
+@Component
+public class StripedOrderIdGenerator implements OrderIdGenerator {
+
+    static final int SHARD_BITS = 10;
+    //Distance between two counters in longs, keeps each counter on its own cache line.
+    private static final int STRIDE = 16;
+
+    private final int shardCount;
+    private final AtomicLongArray sequences;
+
+    public StripedOrderIdGenerator(EngineProperties properties) {
+        if (properties.getShards() < 1 || properties.getShards() > 1 << SHARD_BITS) {
+            throw new IllegalArgumentException("Order ids support between 1 and " + (1 << SHARD_BITS) + " matching shards");
+        }
+        this.shardCount = properties.getShards();
+        this.sequences = new AtomicLongArray(shardCount * STRIDE);
+    }
+
+    @Override
+    public long nextId(int symbol) {
+        int shard = MatchingEngine.shardFor(symbol, shardCount);
+        return sequences.incrementAndGet(shard * STRIDE) << SHARD_BITS | shard;
+    }
+
+    /**
+     * Every shard continues after the sequence of given id, whatever shard it came from, so ids stay unique
+     * when the number of shards changed between two runs.
+     * @param orderId
+     */
+    @Override
+    public void advance(long orderId) {
+        if (orderId <= 0) {
+            return;
+        }
+        long sequence = orderId >>> SHARD_BITS;
+        for (int shard = 0; shard < shardCount; shard++) {
+            int index = shard * STRIDE;
+            long current = sequences.get(index);
+            while (current < sequence && !sequences.compareAndSet(index, current, sequence)) {
+                current = sequences.get(index);
+            }
+        }
+    }
+
+    @Override
+    public long highWaterMark() {
+        long sequence = 0;
+        for (int shard = 0; shard < shardCount; shard++) {
+            sequence = Math.max(sequence, sequences.get(shard * STRIDE));
+        }
+        return sequence == 0 ? 0 : sequence << SHARD_BITS | (1 << SHARD_BITS) - 1;
+    }
+}
@@ -0,0 +1,107 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns stock tickers into dense int symbol ids and holds the {@link TickerBook} of every symbol in an array slot.
+ * A ticker is hashed once when its request enters the engine, matching then reaches the book by slot.
+ * Lookups are lock free, registering a new symbol takes a lock and grows the slot array by doubling.
+ * Ids are assigned in registration order and are not stable across restarts, they are never persisted.
+ * Tick size of a stock is resolved from the bound {@link TickSizeTable} when it is registered.
+ */
+final class SymbolRegistry {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    //Slot array is replaced when grown, a new slot is always written before its id is published in the map.
+    private volatile TickerBook[] books = new TickerBook[INITIAL_CAPACITY];
+    private int size;
+    private volatile TickSizeTable tickSizes = new TickSizeTable(new EngineProperties());
+
+    /**
+     * @param tickSizes tick sizes given to the books of stocks registered from now on
+     */
+    void bind(TickSizeTable tickSizes) {
+        this.tickSizes = tickSizes;
+    }
+
+    /**
+     * @param stockTicker
+     * @return symbol id of given stock, registered on first use
+     */
+    int register(String stockTicker) {
+        Integer id = ids.get(stockTicker);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(stockTicker);
+            if (id == null) {
+                id = size;
+                TickerBook[] slots = books;
+                if (id == slots.length) {
+                    slots = Arrays.copyOf(slots, slots.length * 2);
+                }
+                slots[id] = new TickerBook(id, stockTicker, tickSizes.tickSize(stockTicker));
+                books = slots;
+                size++;
+                ids.put(stockTicker, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @param stockTicker
+     * @return symbol id of given stock or -1 when it was never registered
+     */
+    int find(String stockTicker) {
+        Integer id = ids.get(stockTicker);
+        return id == null ? -1 : id;
+    }
+
+    TickerBook book(int symbol) {
+        return books[symbol];
+    }
+
+    /**
+     * @param stockTicker
+     * @return book of given stock or null when it was never registered
+     */
+    TickerBook book(String stockTicker) {
+        Integer id = ids.get(stockTicker);
+        return id == null ? null : books[id];
+    }
+
+    /**
+     * @return books of all registered symbols, in symbol id order.
+     */
+    List<TickerBook> books() {
+        TickerBook[] slots = books;
+        List<TickerBook> registered = new ArrayList<>();
+        for (TickerBook book : slots) {
+            if (book == null) {
+                break;
+            }
+            registered.add(book);
+        }
+        return registered;
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    synchronized void clear() {
+        ids.clear();
+        books = new TickerBook[INITIAL_CAPACITY];
+        size = 0;
+    }
+}
@@ -0,0 +1,80 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.exception.InvalidOrderException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts prices and quantities between their API form (BigDecimal / BigInteger) and the fixed point
+ * form used inside the matching engine.
+ *   Price : number of ticks, tick size is configured per stock
+ *   Quantity : number of lots (shares)
+ * Conversion happens once when an order enters the engine and once when the book is read out.
+ * Tick size of a stock is looked up here once, when the stock is registered, and kept on its {@link TickerBook} :
+ * conversions on the matching path take the tick size and never look up the ticker.
+ */
+final class TickSizeTable {
+
+    /**
+     * Price of resting MARKET orders, below any valid limit price.
+     */
+    static final long MARKET_PRICE = -1L;
+
+    private final BigDecimal defaultTickSize;
+    private final Map<String, BigDecimal> tickSizes;
+
+    TickSizeTable(EngineProperties properties) {
+        this.defaultTickSize = validTickSize(properties.getTickSize());
+        this.tickSizes = new HashMap<>();
+        properties.getTickSizes().forEach((stockTicker, tickSize) -> tickSizes.put(stockTicker, validTickSize(tickSize)));
+    }
+
+    BigDecimal tickSize(String stockTicker) {
+        return tickSizes.getOrDefault(stockTicker, defaultTickSize);
+    }
+
+    long toTicks(String stockTicker, BigDecimal price) {
+        return toTicks(stockTicker, tickSize(stockTicker), price);
+    }
+
+    static long toTicks(String stockTicker, BigDecimal tickSize, BigDecimal price) {
+        if (price == null) {
+            throw new InvalidOrderException("Price is mandatory for LIMIT order");
+        }
+        if (price.signum() <= 0) {
+            throw new InvalidOrderException("Price has to be positive");
+        }
+        BigDecimal[] ticks = price.divideAndRemainder(tickSize);
+        if (ticks[1].signum() != 0) {
+            throw new InvalidOrderException("Price " + price + " is not a multiple of tick size " + tickSize + " for " + stockTicker);
+        }
+        try {
+            return ticks[0].longValueExact();
+        } catch (ArithmeticException e) {
+            throw new InvalidOrderException("Price " + price + " is out of range", e);
+        }
+    }
+
+    static BigDecimal toPrice(BigDecimal tickSize, long ticks) {
+        return tickSize.multiply(BigDecimal.valueOf(ticks));
+    }
+
+    static long toLots(BigInteger quantity) {
+        try {
+            return quantity.longValueExact();
+        } catch (ArithmeticException e) {
+            throw new InvalidOrderException("Quantity " + quantity + " is out of range", e);
+        }
+    }
+
+    private static BigDecimal validTickSize(BigDecimal tickSize) {
+        if (tickSize == null || tickSize.signum() <= 0) {
+            throw new IllegalArgumentException("Tick size has to be positive");
+        }
+        return tickSize;
+    }
+}
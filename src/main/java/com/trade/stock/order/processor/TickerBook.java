@@ -0,0 +1,51 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.constants.TradeType;
+
+import java.math.BigDecimal;
+
+/**
+ * Both sides of the order book of one stock, held in the slot of its symbol id in the {@link SymbolRegistry}.
+ * Sides are created by the matching shard owning the stock on its first order of that side and never replaced,
+ * they are volatile so other threads (versions, metrics) see them once created.
+ */
+final class TickerBook {
+
+    final int symbol;
+    final String stockTicker;
+    //Spread hash of the ticker taken once on registration, matching shard of the stock is derived from it.
+    final int hash;
+    //Tick size of the stock taken once on registration, prices of the book are converted with it.
+    final BigDecimal tickSize;
+    volatile OrderBookSide buy;
+    volatile OrderBookSide sell;
+    //Market data state, created with the first side of the book by the owning shard.
+    volatile MarketDataFeed.TickerDepth depth;
+    //Created on the first stop order of the stock, only touched by the owning shard.
+    StopIndex stops;
+    //Price (ticks) of the last trade of the stock, MARKET price before the first one. Only touched by the owning shard.
+    long lastTradePrice = TickSizeTable.MARKET_PRICE;
+
+    TickerBook(int symbol, String stockTicker, BigDecimal tickSize) {
+        this.symbol = symbol;
+        this.stockTicker = stockTicker;
+        this.hash = MatchingEngine.hash(stockTicker);
+        this.tickSize = tickSize;
+    }
+
+    OrderBookSide side(TradeType tradeType) {
+        return tradeType == TradeType.BUY ? buy : sell;
+    }
+
+    OrderBookSide counterSide(TradeType tradeType) {
+        return tradeType == TradeType.BUY ? sell : buy;
+    }
+
+    void setSide(OrderBookSide side) {
+        if (side.getTradeType() == TradeType.BUY) {
+            buy = side;
+        } else {
+            sell = side;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.trade.stock.order.service;
+
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.DepthUpdate;
+import com.trade.stock.order.model.ExecutionReport;
+import com.trade.stock.order.model.MarketDepth;
+import com.trade.stock.order.processor.EventRingBuffer;
+import com.trade.stock.order.processor.ExecutionReportStream;
+import com.trade.stock.order.processor.MarketDataFeed;
+import com.trade.stock.order.processor.MatchingEngine;
+import com.trade.stock.order.processor.OrderProcessor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * @author Prajakt Kulkarni
+ * Pushes depth updates and fills of a stock to streaming clients (Server-Sent Events).
+ * Service is a single subscriber of the market data feed and of the execution reports, every event is fanned out to
+ * the clients of its stock from there. Writing to the clients happens on a small sender pool, see {@link StreamClient}.
+ */
+@Service
+@Slf4j
+public class MarketDataStreamService {
+
+    private final MarketDataFeed marketData;
+    private final ExecutionReportStream executionReports;
+    private final MatchingEngine engine;
+    private final OrderProcessor processor;
+    private final EngineProperties.Stream settings;
+    private final Map<String, Set<StreamClient>> clients = new ConcurrentHashMap<>();
+    private final ExecutorService sender;
+    private EventRingBuffer<DepthUpdate>.Subscription depthSubscription;
+    private EventRingBuffer<ExecutionReport>.Subscription fillSubscription;
+
+    public MarketDataStreamService(MarketDataFeed marketData, ExecutionReportStream executionReports, MatchingEngine engine,
+                                   OrderProcessor processor, EngineProperties properties) {
+        this.marketData = marketData;
+        this.executionReports = executionReports;
+        this.engine = engine;
+        this.processor = processor;
+        this.settings = properties.getStream();
+        AtomicInteger threads = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(settings.getSenderThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "market-data-sender-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        depthSubscription = marketData.subscribe("stream", update -> forEachClient(update.getStockTicker(), client -> client.offer(update)));
+        fillSubscription = executionReports.subscribe("stream", fill -> forEachClient(fill.getStockTicker(), client -> client.offer(fill)));
+    }
+
+    /**
+     * Open a stream of given stock. It starts with the depth image of the stock (event depth) followed by
+     * depth updates (event update) and fills (event fill) as they happen.
+     * @param stockTicker
+     * @return emitter of the stream
+     * @throws ResourceNotFoundException when stock never had an order, streaming doesn't register a stock
+     */
+    public SseEmitter stream(String stockTicker) throws ResourceNotFoundException {
+        int symbol = engine.findSymbol(stockTicker);
+        if (symbol < 0) {
+            throw new ResourceNotFoundException("No Order book exist for " + stockTicker);
+        }
+        SseEmitter emitter = new SseEmitter(settings.getTimeoutMs());
+        StreamClient client = new StreamClient(stockTicker, emitter, sender, settings.getFillBacklog(), this::remove);
+        emitter.onCompletion(() -> remove(client));
+        emitter.onTimeout(() -> remove(client));
+        emitter.onError(e -> remove(client));
+        //Client is registered before the image is taken, updates in between are buffered and filtered on sequence.
+        clients.compute(stockTicker, (ticker, streams) -> {
+            Set<StreamClient> open = streams == null ? new CopyOnWriteArraySet<>() : streams;
+            open.add(client);
+            return open;
+        });
+        engine.submit(symbol, () -> {
+            try {
+                return processor.retrieveDepth(symbol, Integer.MAX_VALUE, null);
+            } catch (ResourceNotFoundException e) {
+                return new MarketDepth(stockTicker, 0L, Collections.emptyList(), Collections.emptyList());
+            }
+        }).whenComplete((depth, error) -> {
+            if (error != null) {
+                log.error("Depth image of {} could not be taken", stockTicker, error);
+                remove(client);
+                emitter.completeWithError(error);
+            } else {
+                client.start(depth);
+            }
+        });
+        log.info("Market data stream of {} opened", stockTicker);
+        return emitter;
+    }
+
+    /**
+     * @param stockTicker
+     * @return number of open streams of given stock.
+     */
+    public int clientCount(String stockTicker) {
+        Set<StreamClient> streams = clients.get(stockTicker);
+        return streams == null ? 0 : streams.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (depthSubscription != null) {
+            depthSubscription.close();
+            fillSubscription.close();
+        }
+        clients.values().forEach(streams -> streams.forEach(client -> {
+            client.close();
+            client.getEmitter().complete();
+        }));
+        clients.clear();
+        sender.shutdownNow();
+    }
+
+    private void forEachClient(String stockTicker, Consumer<StreamClient> action) {
+        Set<StreamClient> streams = clients.get(stockTicker);
+        if (streams != null) {
+            streams.forEach(action);
+        }
+    }
+
+    /**
+     * Client leaves the stream, the clients of its stock are dropped along with the last one so the map only holds
+     * stocks currently streamed. Called by the emitter callbacks and by the client itself, closing twice is harmless.
+     */
+    private void remove(StreamClient client) {
+        client.close();
+        clients.computeIfPresent(client.getStockTicker(), (ticker, streams) -> {
+            streams.remove(client);
+            return streams.isEmpty() ? null : streams;
+        });
+    }
+}
@@ -1,11 +1,17 @@
 package com.trade.stock.order.service;
 
-import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.constants.TradeType;
 import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.MarketDepth;
+import com.trade.stock.order.model.OrderBookPage;
+import com.trade.stock.order.model.OrderBookQuery;
+import com.trade.stock.order.model.OrderBookView;
 import com.trade.stock.order.model.OrderResponse;
+import com.trade.stock.order.model.TopOfBook;
 import com.trade.stock.order.model.TradeRequest;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Prajakt Kulkarni
@@ -13,8 +19,12 @@ import java.util.List;
  */
 public interface OrderBookService {
 
-    OrderResponse stockOrder(TradeRequest tradeRequest) ;
-    List<TradeOrderEntity> retrieveOrderBook(String stockName) throws ResourceNotFoundException;
+    CompletableFuture<OrderResponse> stockOrder(TradeRequest tradeRequest) ;
+    CompletableFuture<List<OrderResponse>> stockOrders(List<TradeRequest> tradeRequests) ;
+    OrderBookPage retrieveOrderBook(String stockName, OrderBookQuery query) throws ResourceNotFoundException;
+    OrderBookView retrieveOrderBookView(String stockName) throws ResourceNotFoundException;
+    MarketDepth retrieveDepth(String stockTicker, int levels, TradeType side) throws ResourceNotFoundException;
+    TopOfBook retrieveTopOfBook(String stockTicker) throws ResourceNotFoundException;
     OrderResponse stockOrder(Long orderId, TradeRequest tradeRequest) throws ResourceNotFoundException ;
     OrderResponse deleteOrder(Long orderId) throws ResourceNotFoundException ;
 }
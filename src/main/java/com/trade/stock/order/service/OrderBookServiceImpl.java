@@ -1,94 +1,246 @@
 package com.trade.stock.order.service;
 
+import com.trade.stock.order.config.EngineProperties;
 import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TradeType;
 import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.exception.InvalidOrderException;
 import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.MarketDepth;
+import com.trade.stock.order.model.OrderBookPage;
+import com.trade.stock.order.model.OrderBookQuery;
+import com.trade.stock.order.model.OrderBookView;
 import com.trade.stock.order.model.OrderResponse;
+import com.trade.stock.order.model.TopOfBook;
 import com.trade.stock.order.model.TradeRequest;
+import com.trade.stock.order.processor.EngineMetrics;
+import com.trade.stock.order.processor.MarketDataFeed;
+import com.trade.stock.order.processor.MatchingEngine;
+import com.trade.stock.order.processor.OrderIdGenerator;
 import com.trade.stock.order.processor.OrderProcessor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * @author Prajakt Kulkarni
  * Stock order processor service
+ * Every request is handed over to the matching engine shard owning the stock, processor is never called from request threads.
+ * New orders get their id on that shard, right before they are processed.
+ * Stock ticker of a new order is interned into its symbol id on the request thread, the shard reaches the book by slot.
  */
 @Service
 @Slf4j
 public class OrderBookServiceImpl implements OrderBookService {
 
     final OrderProcessor processor;
-
-    public OrderBookServiceImpl(OrderProcessor processor) {
+    final MatchingEngine engine;
+    final OrderIdGenerator orderIds;
+    final MarketDataFeed marketData;
+    final OrderBookViewCache views;
+    final EngineMetrics metrics;
+    final Validator validator;
+    final EngineProperties properties;
+
+    public OrderBookServiceImpl(OrderProcessor processor, MatchingEngine engine, OrderIdGenerator orderIds, MarketDataFeed marketData,
+                                OrderBookViewCache views, EngineMetrics metrics, Validator validator, EngineProperties properties) {
         this.processor = processor;
+        this.engine = engine;
+        this.orderIds = orderIds;
+        this.marketData = marketData;
+        this.views = views;
+        this.metrics = metrics;
+        this.validator = validator;
+        this.properties = properties;
     }
 
 
+    /**
+     * Order is handed over to the matching shard owning its stock, caller is not blocked while it is matched.
+     * @param tradeRequest
+     * @return future completed once the shard processed the order
+     */
     @Override
-    public OrderResponse stockOrder(TradeRequest tradeRequest) {
-        log.info("Stock order create : START");
-        OrderResponse response = new OrderResponse();
+    public CompletableFuture<OrderResponse> stockOrder(TradeRequest tradeRequest) {
+        log.debug("Stock order create : START");
+        long acceptedAt = System.nanoTime();
         TradeOrderEntity tradeOrderEntity = createTradeOrder(tradeRequest);
-        processor.process(tradeOrderEntity);
-        response.setOrderId(tradeOrderEntity.getOrderId());
-        response.setResponse("Successful execution");
-        log.info("Stock order create : END");
-        return response;
+        //Validated before its stock is interned, as batch orders are, an invalid order registers no stock.
+        try {
+            processor.validate(tradeOrderEntity);
+        } catch (InvalidOrderException e) {
+            CompletableFuture<OrderResponse> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+        int symbol = engine.symbolOf(tradeOrderEntity.getStockTicker());
+        return engine.submit(symbol, () -> {
+            tradeOrderEntity.setOrderId(orderIds.nextId(symbol));
+            processor.process(tradeOrderEntity, symbol);
+            metrics.acked(acceptedAt);
+            return successResponse(tradeOrderEntity.getOrderId());
+        });
+    }
+
+    /**
+     * Whole batch is validated before any order is processed, one invalid order rejects the batch.
+     * Orders are then pipelined to the matching shards, one task per shard, and matched in batch order.
+     * Order which still fails on its shard is rejected on its own, response of every order is its processing outcome.
+     * @param tradeRequests
+     * @return future of one response per order in batch order, completed once every shard processed its orders
+     */
+    @Override
+    public CompletableFuture<List<OrderResponse>> stockOrders(List<TradeRequest> tradeRequests) {
+        log.debug("Stock order batch create : START");
+        long acceptedAt = System.nanoTime();
+        if (tradeRequests.isEmpty() || tradeRequests.size() > properties.getMaxBatchSize()) {
+            throw new InvalidOrderException("Batch has to hold between 1 and " + properties.getMaxBatchSize() + " orders");
+        }
+        List<TradeOrderEntity> orders = new ArrayList<>(tradeRequests.size());
+        int[] symbols = new int[tradeRequests.size()];
+        for (int i = 0; i < tradeRequests.size(); i++) {
+            TradeRequest tradeRequest = tradeRequests.get(i);
+            Set<ConstraintViolation<TradeRequest>> violations = tradeRequest == null ? Collections.emptySet() : validator.validate(tradeRequest);
+            if (tradeRequest == null || !violations.isEmpty()) {
+                throw new InvalidOrderException("Order " + i + " : " + (tradeRequest == null ? "Order is missing"
+                        : violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining(", "))));
+            }
+            TradeOrderEntity tradeOrderEntity = createTradeOrder(tradeRequest);
+            try {
+                processor.validate(tradeOrderEntity);
+            } catch (InvalidOrderException e) {
+                throw new InvalidOrderException("Order " + i + " : " + e.getMessage(), e);
+            }
+            orders.add(tradeOrderEntity);
+        }
+        //Symbols are interned once the whole batch is valid, a rejected batch registers no stock.
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = engine.symbolOf(orders.get(i).getStockTicker());
+        }
+        return engine.submitBatch(orders, symbols, (group, groupSymbols) -> {
+            for (int i = 0; i < groupSymbols.length; i++) {
+                group.get(i).setOrderId(orderIds.nextId(groupSymbols[i]));
+            }
+            List<OrderResponse> responses = processor.processBatch(group, groupSymbols);
+            group.forEach(order -> metrics.acked(acceptedAt));
+            return responses;
+        });
+    }
+
+    @Override
+    public OrderBookPage retrieveOrderBook(String stockName, OrderBookQuery query) throws ResourceNotFoundException {
+        log.debug("Stock order retrieve : START");
+        int symbol = knownSymbol(stockName);
+        return engine.execute(symbol, () -> processor.retrieveOrderBook(symbol, query));
+    }
+
+    /**
+     * Whole order book is read from the cached view, request only goes through the matching engine when the book
+     * changed since the view was published.
+     */
+    @Override
+    public OrderBookView retrieveOrderBookView(String stockName) throws ResourceNotFoundException {
+        OrderBookView view = views.get(stockName);
+        if (view.getOrders().isEmpty()) {
+            throw new ResourceNotFoundException("No Order book exist for " + stockName);
+        }
+        return view;
+    }
+
+    @Override
+    public MarketDepth retrieveDepth(String stockTicker, int levels, TradeType side) throws ResourceNotFoundException {
+        log.debug("Stock depth retrieve : START");
+        int symbol = knownSymbol(stockTicker);
+        return engine.execute(symbol, () -> processor.retrieveDepth(symbol, levels, side));
     }
 
+    /**
+     * Top of book is read straight from the market data feed, request does not go through the matching engine.
+     */
     @Override
-    public List<TradeOrderEntity> retrieveOrderBook(String stockName) throws ResourceNotFoundException {
-        log.info("Stock order retrieve : START");
-        return processor.retrieveOrderBook(stockName);
+    public TopOfBook retrieveTopOfBook(String stockTicker) throws ResourceNotFoundException {
+        TopOfBook topOfBook = marketData.topOfBook(stockTicker);
+        if (topOfBook == null) {
+            throw new ResourceNotFoundException("No Order book exist for " + stockTicker);
+        }
+        return topOfBook;
     }
 
     @Override
     public OrderResponse stockOrder(Long orderId, TradeRequest tradeRequest) throws ResourceNotFoundException {
-        log.info("Stock order updation : START");
+        log.debug("Stock order updation : START");
         OrderResponse response = new OrderResponse();
         TradeOrderEntity tradeOrderEntity = createTradeOrder(orderId, tradeRequest);
-        processor.processUpdate(tradeOrderEntity);
+        int symbol = engine.findSymbol(tradeOrderEntity.getStockTicker());
+        if (symbol < 0) {
+            throw new ResourceNotFoundException(OrderProcessor.ORDER_DOESN_T_EXISTS_FOR_UPDATION);
+        }
+        engine.execute(symbol, () -> {
+            processor.processUpdate(tradeOrderEntity, symbol);
+            return null;
+        });
         response.setOrderId(tradeOrderEntity.getOrderId());
-        response.setResponse("Successful execution");
-        log.info("Stock order updation : END");
+        response.setResponse(OrderProcessor.SUCCESSFUL_EXECUTION);
+        log.debug("Stock order updation : END");
         return response;
     }
 
     @Override
     public OrderResponse deleteOrder(Long orderId) throws ResourceNotFoundException {
-        log.info("Stock order deletion : START");
-        return processor.deleteOrder(orderId);
+        log.debug("Stock order deletion : START");
+        return engine.execute(processor.symbolOfOrder(orderId), () -> processor.deleteOrder(orderId));
+    }
+
+    /**
+     * Reads don't register a stock, one which never had an order has no book.
+     */
+    private int knownSymbol(String stockTicker) throws ResourceNotFoundException {
+        int symbol = engine.findSymbol(stockTicker);
+        if (symbol < 0) {
+            throw new ResourceNotFoundException("No Order book exist for " + stockTicker);
+        }
+        return symbol;
     }
 
 
+    private static OrderResponse successResponse(Long orderId) {
+        OrderResponse response = new OrderResponse();
+        response.setOrderId(orderId);
+        response.setResponse(OrderProcessor.SUCCESSFUL_EXECUTION);
+        return response;
+    }
+
     private TradeOrderEntity createTradeOrder(TradeRequest tradeRequest) {
         return createTradeOrder(null, tradeRequest);
     }
 
     private TradeOrderEntity createTradeOrder(Long orderId, TradeRequest tradeRequest){
         TradeOrderEntity order = new TradeOrderEntity();
-        Random random = new  Random();
-        if(orderId != null)
-        {
-            order.setOrderId(orderId);
-        }else {
-            order.setOrderId(random.nextLong());
-        }
+        order.setOrderId(orderId);
         order.setQuantity(tradeRequest.getQuantity());
         order.setTradeTime(System.currentTimeMillis());
         order.setTradeType(tradeRequest.getTradeType());
         order.setStockTicker(tradeRequest.getStockTicker());
         order.setOrderType(tradeRequest.getOrderType());
-        if(tradeRequest.getOrderType() == OrderType.MARKET)
+        order.setTimeInForce(tradeRequest.getTimeInForce());
+        order.setExpireTime(tradeRequest.getExpireTime());
+        order.setStopPrice(tradeRequest.getStopPrice());
+        order.setDisplayQuantity(tradeRequest.getDisplayQuantity());
+        if(tradeRequest.getOrderType() == OrderType.MARKET || tradeRequest.getOrderType() == OrderType.MARKET_TO_LIMIT
+                || tradeRequest.getOrderType() == OrderType.STOP)
         {
-            //This is to ignore price for market orders.
-            order.setPrice(new BigDecimal("-1"));
+            //This is to ignore price for market orders, they have none. MARKET_TO_LIMIT order gets its price from the book.
+            order.setPrice(null);
         }else
         {
             order.setPrice(tradeRequest.getPrice());
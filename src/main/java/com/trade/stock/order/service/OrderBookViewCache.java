@@ -0,0 +1,131 @@
+package com.trade.stock.order.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.OrderBookView;
+import com.trade.stock.order.processor.MatchingEngine;
+import com.trade.stock.order.processor.OrderProcessor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latest published view of the whole order book of every stock, along with its json.
+ * Readers compare the version of the cached view with the version of the book, both reads are lock free,
+ * and get the cached view as long as the book did not change.
+ * A stale view is rebuilt by a single reader at a time and at most once per refresh interval : the copy is made on the
+ * matching shard owning the stock, serialization happens on the reader thread which asked for it. Other readers never
+ * wait for it when there is a view, they get the last one built, only the first readers of a stock wait for its first view.
+ * Matching pays for at most one copy per refresh interval whatever the read traffic and the rate of book changes are.
+ */
+@Component
+@Slf4j
+public class OrderBookViewCache {
+
+    private final OrderProcessor processor;
+    private final MatchingEngine engine;
+    private final ObjectMapper objectMapper;
+    private final long refreshNanos;
+    private final Map<String, Entry> views = new ConcurrentHashMap<>();
+
+    public OrderBookViewCache(OrderProcessor processor, MatchingEngine engine, ObjectMapper objectMapper,
+                              EngineProperties properties) {
+        this.processor = processor;
+        this.engine = engine;
+        this.objectMapper = objectMapper;
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(properties.getViewRefreshMs());
+    }
+
+    /**
+     * @param stockTicker
+     * @return current view of the order book of given stock, or the last one built while the book keeps changing
+     * @throws ResourceNotFoundException when stock never had an order
+     */
+    public OrderBookView get(String stockTicker) throws ResourceNotFoundException {
+        Entry entry = views.get(stockTicker);
+        if (entry == null) {
+            int symbol = engine.findSymbol(stockTicker);
+            if (symbol < 0) {
+                throw new ResourceNotFoundException("No Order book exist for " + stockTicker);
+            }
+            entry = views.computeIfAbsent(stockTicker, ticker -> new Entry(ticker, symbol));
+        }
+        long version = processor.bookVersion(entry.symbol);
+        if (version < 0) {
+            throw new ResourceNotFoundException("No Order book exist for " + stockTicker);
+        }
+        return entry.get(version);
+    }
+
+    private final class Entry {
+
+        private final String stockTicker;
+        private final int symbol;
+        private volatile OrderBookView view;
+        //System.nanoTime() when the last rebuild was started.
+        private volatile long refreshedAt;
+        //Rebuild in progress, null when there is none. Only the reader which set it rebuilds the view.
+        private final AtomicReference<CompletableFuture<OrderBookView>> refreshing = new AtomicReference<>();
+
+        private Entry(String stockTicker, int symbol) {
+            this.stockTicker = stockTicker;
+            this.symbol = symbol;
+        }
+
+        private OrderBookView get(long version) throws ResourceNotFoundException {
+            while (true) {
+                OrderBookView current = view;
+                if (current != null && current.getVersion() >= version) {
+                    return current;
+                }
+                CompletableFuture<OrderBookView> pending = refreshing.get();
+                if (pending == null && (current == null || System.nanoTime() - refreshedAt >= refreshNanos)) {
+                    CompletableFuture<OrderBookView> started = new CompletableFuture<>();
+                    if (refreshing.compareAndSet(null, started)) {
+                        return refresh(started);
+                    }
+                    continue;
+                }
+                if (current != null) {
+                    return current;
+                }
+                try {
+                    return pending.join();
+                } catch (CompletionException e) {
+                    //Rebuild of another reader failed, try again.
+                    log.debug("Order book view of {} could not be built", stockTicker, e.getCause());
+                }
+            }
+        }
+
+        private OrderBookView refresh(CompletableFuture<OrderBookView> started) throws ResourceNotFoundException {
+            refreshedAt = System.nanoTime();
+            try {
+                OrderBookView raw = engine.execute(symbol, () -> processor.viewOrderBook(symbol));
+                OrderBookView built = new OrderBookView(stockTicker, raw.getVersion(), raw.getOrders(),
+                        objectMapper.writeValueAsBytes(raw.getOrders()));
+                view = built;
+                started.complete(built);
+                log.debug("Order book view of {} published at version {}", stockTicker, raw.getVersion());
+                return built;
+            } catch (JsonProcessingException e) {
+                IllegalStateException failure = new IllegalStateException("Order book of " + stockTicker + " can't be serialized", e);
+                started.completeExceptionally(failure);
+                throw failure;
+            } catch (ResourceNotFoundException | RuntimeException e) {
+                started.completeExceptionally(e);
+                throw e;
+            } finally {
+                refreshing.set(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.trade.stock.order.service;
+
+import com.trade.stock.order.constants.TradeType;
+import com.trade.stock.order.model.DepthUpdate;
+import com.trade.stock.order.model.ExecutionReport;
+import com.trade.stock.order.model.MarketDepth;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * One client streaming the market data of a stock.
+ * Events are only buffered by the feed threads, they are written to the client on a sender thread, so a slow client
+ * never holds back the feeds or the matching engine. While a client is behind, depth updates of the same level are
+ * coalesced into the latest one, which is exact since updates carry level totals. Fills are kept up to a backlog,
+ * a client falling further behind is disconnected.
+ * First event is the depth image of the stock, updates already reflected in it are not sent.
+ * Client which disconnects itself (send failure, fill backlog overrun) is handed to its close handler, which does not
+ * depend on the emitter callbacks of the servlet container.
+ */
+@Slf4j
+final class StreamClient {
+
+    static final String DEPTH = "depth";
+    static final String UPDATE = "update";
+    static final String FILL = "fill";
+
+    private final String stockTicker;
+    private final SseEmitter emitter;
+    private final Executor sender;
+    private final int fillBacklog;
+    private final Consumer<StreamClient> closeHandler;
+    private final Map<Level, DepthUpdate> pendingUpdates = new LinkedHashMap<>();
+    private final ArrayDeque<ExecutionReport> pendingFills = new ArrayDeque<>();
+    private MarketDepth image;
+    private boolean imageSent;
+    private boolean scheduled;
+    private boolean closed;
+
+    StreamClient(String stockTicker, SseEmitter emitter, Executor sender, int fillBacklog) {
+        this(stockTicker, emitter, sender, fillBacklog, client -> { });
+    }
+
+    StreamClient(String stockTicker, SseEmitter emitter, Executor sender, int fillBacklog, Consumer<StreamClient> closeHandler) {
+        this.stockTicker = stockTicker;
+        this.emitter = emitter;
+        this.sender = sender;
+        this.fillBacklog = fillBacklog;
+        this.closeHandler = closeHandler;
+    }
+
+    String getStockTicker() {
+        return stockTicker;
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * Depth image the stream starts from, updates up to its sequence are dropped.
+     * @param depth
+     */
+    void start(MarketDepth depth) {
+        synchronized (this) {
+            image = depth;
+            pendingUpdates.values().removeIf(update -> update.getSequence() <= depth.getSequence());
+        }
+        schedule();
+    }
+
+    void offer(DepthUpdate update) {
+        synchronized (this) {
+            if (closed || (image != null && update.getSequence() <= image.getSequence())) {
+                return;
+            }
+            //Remove first so the level moves to the end, updates stay in sequence order.
+            Level level = new Level(update.getSide(), update.getPrice());
+            pendingUpdates.remove(level);
+            pendingUpdates.put(level, update);
+        }
+        schedule();
+    }
+
+    void offer(ExecutionReport fill) {
+        boolean overrun;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            overrun = pendingFills.size() >= fillBacklog;
+            if (overrun) {
+                closed = true;
+            } else {
+                pendingFills.add(fill);
+            }
+        }
+        if (overrun) {
+            log.warn("Stream client of {} is more than {} fills behind, disconnecting", stockTicker, fillBacklog);
+            closeHandler.accept(this);
+            emitter.complete();
+            return;
+        }
+        schedule();
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        synchronized (this) {
+            closed = true;
+            pendingUpdates.clear();
+            pendingFills.clear();
+        }
+    }
+
+    private void schedule() {
+        synchronized (this) {
+            if (closed || scheduled || image == null) {
+                return;
+            }
+            scheduled = true;
+        }
+        sender.execute(this::drain);
+    }
+
+    /**
+     * Write everything buffered so far, runs on a sender thread. Events buffered meanwhile are written by the next round.
+     */
+    void drain() {
+        while (true) {
+            MarketDepth depth = null;
+            List<DepthUpdate> updates;
+            List<ExecutionReport> fills;
+            synchronized (this) {
+                if (closed || (imageSent && pendingUpdates.isEmpty() && pendingFills.isEmpty())) {
+                    scheduled = false;
+                    return;
+                }
+                if (!imageSent) {
+                    depth = image;
+                    imageSent = true;
+                }
+                updates = new ArrayList<>(pendingUpdates.values());
+                fills = new ArrayList<>(pendingFills);
+                pendingUpdates.clear();
+                pendingFills.clear();
+            }
+            try {
+                if (depth != null) {
+                    emitter.send(SseEmitter.event().name(DEPTH).id(Long.toString(depth.getSequence())).data(depth));
+                }
+                for (DepthUpdate update : updates) {
+                    emitter.send(SseEmitter.event().name(UPDATE).id(Long.toString(update.getSequence())).data(update));
+                }
+                for (ExecutionReport fill : fills) {
+                    emitter.send(SseEmitter.event().name(FILL).data(fill));
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.info("Stream client of {} disconnected : {}", stockTicker, e.getMessage());
+                close();
+                closeHandler.accept(this);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    @Value
+    private static class Level {
+        TradeType side;
+        BigDecimal price;
+    }
+}
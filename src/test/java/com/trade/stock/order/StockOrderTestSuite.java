@@ -1,13 +1,26 @@
 package com.trade.stock.order;
 
 import com.trade.stock.order.controller.StockOrderControllerTest;
+import com.trade.stock.order.dao.entity.TradeOrderEntityTest;
+import com.trade.stock.order.dao.journal.MappedOrderJournalTest;
 import com.trade.stock.order.integration.StockOrderIntegrationTest;
+import com.trade.stock.order.processor.EventRingBufferTest;
+import com.trade.stock.order.processor.MatchingShardTest;
+import com.trade.stock.order.processor.ExpiryWheelTest;
+import com.trade.stock.order.processor.OrderBookSideTest;
 import com.trade.stock.order.processor.OrderProcessorTest;
+import com.trade.stock.order.processor.StopIndexTest;
+import com.trade.stock.order.processor.StripedOrderIdGeneratorTest;
+import com.trade.stock.order.processor.SymbolRegistryTest;
 import com.trade.stock.order.service.OrderBookServiceImplTest;
+import com.trade.stock.order.service.OrderBookViewCacheTest;
+import com.trade.stock.order.service.StreamClientTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({StockOrderIntegrationTest.class,StockOrderControllerTest.class, OrderBookServiceImplTest.class, OrderProcessorTest.class})
+@Suite.SuiteClasses({StockOrderIntegrationTest.class,StockOrderControllerTest.class, OrderBookServiceImplTest.class, OrderProcessorTest.class, OrderBookSideTest.class, EventRingBufferTest.class, MappedOrderJournalTest.class,
+        StripedOrderIdGeneratorTest.class, StreamClientTest.class, OrderBookViewCacheTest.class, SymbolRegistryTest.class,
+        ExpiryWheelTest.class, StopIndexTest.class, TradeOrderEntityTest.class, MatchingShardTest.class})
 public class StockOrderTestSuite {
 }
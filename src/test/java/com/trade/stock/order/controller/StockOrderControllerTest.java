@@ -3,19 +3,30 @@ package com.trade.stock.order.controller;
 import com.trade.stock.order.constants.TradeType;
 import com.trade.stock.order.dao.entity.TradeOrderEntity;
 import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.MarketDepth;
+import com.trade.stock.order.model.OrderBookPage;
+import com.trade.stock.order.model.OrderBookQuery;
+import com.trade.stock.order.model.OrderBookView;
 import com.trade.stock.order.model.OrderResponse;
+import com.trade.stock.order.model.TopOfBook;
 import com.trade.stock.order.model.TradeRequest;
+import com.trade.stock.order.service.MarketDataStreamService;
 import com.trade.stock.order.service.OrderBookServiceImpl;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.when;
@@ -26,6 +37,9 @@ public class StockOrderControllerTest {
     @Mock
     private OrderBookServiceImpl orderBookService;
 
+    @Mock
+    private MarketDataStreamService streamService;
+
     @InjectMocks
     StockOrderController stockOrderController;
 
@@ -34,8 +48,16 @@ public class StockOrderControllerTest {
     public void stockOrderCreateValidResponse()
     {
         TradeRequest request = createTradeRequest();
-        when(orderBookService.stockOrder(request)).thenReturn(successResponse());
-        assertEquals(successResponse(),stockOrderController.stockOrderCreate(createTradeRequest()).getBody());
+        when(orderBookService.stockOrder(request)).thenReturn(CompletableFuture.completedFuture(successResponse()));
+        assertEquals(successResponse(),stockOrderController.stockOrderCreate(createTradeRequest()).join().getBody());
+    }
+
+    @Test
+    public void stockOrderCreateBatchValidResponse()
+    {
+        List<TradeRequest> requests = Collections.singletonList(createTradeRequest());
+        when(orderBookService.stockOrders(requests)).thenReturn(CompletableFuture.completedFuture(Collections.singletonList(successResponse())));
+        assertEquals(Collections.singletonList(successResponse()),stockOrderController.stockOrderCreateBatch(requests).join().getBody());
     }
 
     @Test
@@ -55,8 +77,48 @@ public class StockOrderControllerTest {
     @Test
     public void stockOrderRetrieveOrderBookValidResponse() throws  ResourceNotFoundException {
         TradeRequest request = createTradeRequest();
-        when(orderBookService.retrieveOrderBook("HDFC")).thenReturn(createListTradeOrders());
-        assertEquals(createListTradeOrders(),stockOrderController.retrieveOrderBook("HDFC").getBody());
+        byte[] json = "[]".getBytes(StandardCharsets.UTF_8);
+        when(orderBookService.retrieveOrderBookView("HDFC")).thenReturn(new OrderBookView("HDFC", 3L, createListTradeOrders(), json));
+        ResponseEntity<?> response = stockOrderController.retrieveOrderBook("HDFC", new OrderBookQuery());
+        assertSame(json, response.getBody());
+        assertEquals("\"3\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    public void stockOrderRetrieveOrderBookPageValidResponse() throws  ResourceNotFoundException {
+        OrderBookQuery query = new OrderBookQuery();
+        query.setSide(TradeType.BUY);
+        when(orderBookService.retrieveOrderBook("HDFC", query)).thenReturn(new OrderBookPage(createListTradeOrders(), null));
+        assertEquals(createListTradeOrders(),stockOrderController.retrieveOrderBook("HDFC", query).getBody());
+    }
+
+    @Test
+    public void stockOrderRetrieveOrderBookNextCursor() throws  ResourceNotFoundException {
+        OrderBookQuery query = new OrderBookQuery();
+        query.setLimit(1);
+        when(orderBookService.retrieveOrderBook("HDFC", query)).thenReturn(new OrderBookPage(createListTradeOrders(), "BUY:50:1:1:"));
+        assertEquals("BUY:50:1:1:",stockOrderController.retrieveOrderBook("HDFC", query).getHeaders().getFirst("X-Next-Cursor"));
+    }
+
+    @Test
+    public void stockOrderRetrieveDepthValidResponse() throws  ResourceNotFoundException {
+        MarketDepth depth = new MarketDepth("HDFC", 1L, new ArrayList<>(), new ArrayList<>());
+        when(orderBookService.retrieveDepth("HDFC", 10, null)).thenReturn(depth);
+        assertEquals(depth,stockOrderController.retrieveDepth("HDFC", 10, null).getBody());
+    }
+
+    @Test
+    public void stockOrderRetrieveTopOfBookValidResponse() throws  ResourceNotFoundException {
+        TopOfBook topOfBook = new TopOfBook("HDFC", 1L, null, null);
+        when(orderBookService.retrieveTopOfBook("HDFC")).thenReturn(topOfBook);
+        assertEquals(topOfBook,stockOrderController.retrieveTopOfBook("HDFC").getBody());
+    }
+
+    @Test
+    public void streamMarketDataReturnsEmitter() throws ResourceNotFoundException {
+        SseEmitter emitter = new SseEmitter();
+        when(streamService.stream("HDFC")).thenReturn(emitter);
+        assertSame(emitter,stockOrderController.streamMarketData("HDFC"));
     }
 
     @Test
@@ -76,8 +138,8 @@ public class StockOrderControllerTest {
     public void retrieveOrderBookExceptionResponse() {
         TradeRequest request = createTradeRequest();
         try {
-            when(orderBookService.retrieveOrderBook("HDFC")).thenThrow(ResourceNotFoundException.class);
-            assertEquals(failureResposne(), stockOrderController.retrieveOrderBook("HDFC").getBody());
+            when(orderBookService.retrieveOrderBookView("HDFC")).thenThrow(ResourceNotFoundException.class);
+            assertEquals(failureResposne(), stockOrderController.retrieveOrderBook("HDFC", new OrderBookQuery()).getBody());
             fail("ResourceNotFoundException exception");
         }catch(Exception e)
         {
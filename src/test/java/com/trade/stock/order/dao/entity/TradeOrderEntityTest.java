@@ -0,0 +1,63 @@
+package com.trade.stock.order.dao.entity;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradeOrderEntityTest {
+
+    @Test
+    public void equals_SameOrderId_IgnoresOtherFields()
+    {
+        TradeOrderEntity order = order(1L, BigInteger.TEN);
+        TradeOrderEntity amended = order(1L, BigInteger.ONE);
+
+        assertEquals(order, amended);
+        assertEquals(order.hashCode(), amended.hashCode());
+        assertNotEquals(order, order(2L, BigInteger.TEN));
+    }
+
+    @Test
+    public void equals_NullOrderId_OnlyEqualToItself()
+    {
+        TradeOrderEntity first = order(null, BigInteger.TEN);
+        TradeOrderEntity second = order(null, BigInteger.TEN);
+
+        assertEquals(first, first);
+        assertNotEquals(first, second);
+        assertNotEquals(first, order(1L, BigInteger.TEN));
+        assertNotEquals(order(1L, BigInteger.TEN), first);
+        assertEquals(first.hashCode(), second.hashCode());
+
+        Set<TradeOrderEntity> orders = new HashSet<>();
+        orders.add(first);
+        orders.add(second);
+        assertEquals(2, orders.size());
+    }
+
+    @Test
+    public void hashCode_OnlyDependsOnOrderId()
+    {
+        TradeOrderEntity order = order(7L, BigInteger.TEN);
+        Set<TradeOrderEntity> orders = new HashSet<>();
+        orders.add(order);
+        order.setQuantity(BigInteger.ONE);
+        order.setPrice(BigDecimal.ONE);
+
+        assertTrue(orders.contains(order));
+        assertEquals(Long.valueOf(7L).hashCode(), order.hashCode());
+    }
+
+    private static TradeOrderEntity order(Long orderId, BigInteger quantity) {
+        TradeOrderEntity entity = new TradeOrderEntity();
+        entity.setOrderId(orderId);
+        entity.setStockTicker("HDFC");
+        entity.setQuantity(quantity);
+        return entity;
+    }
+}
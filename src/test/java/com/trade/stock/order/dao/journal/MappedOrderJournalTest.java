@@ -0,0 +1,262 @@
+package com.trade.stock.order.dao.journal;
+
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TimeInForce;
+import com.trade.stock.order.constants.TradeType;
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.model.ExecutionReport;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedOrderJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EngineProperties.Journal settings;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        settings = new EngineProperties.Journal();
+        settings.setDirectory(folder.newFolder().getPath());
+        settings.setSegmentSize(4096);
+        settings.setFsync(FsyncPolicy.ALWAYS);
+    }
+
+    @Test
+    public void replay_ReturnsRecordsInOrder_AcrossSegments()
+    {
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            for (long i = 1; i <= 200; i++) {
+                journal.appendOrder(JournalRecord.Type.NEW, order(i));
+            }
+            journal.appendCancel(7L, "HDFC");
+            journal.appendFill(new ExecutionReport(1L, "HDFC", 2L, 1L, TradeType.SELL, new BigDecimal("10.05"), BigInteger.TEN, 99L));
+        }
+
+        List<JournalRecord> records = replay();
+
+        assertTrue(segments().size() > 1);
+        assertEquals(202, records.size());
+        assertSameOrder(order(1L), records.get(0).getOrder());
+        assertSameOrder(order(200L), records.get(199).getOrder());
+        assertEquals(JournalRecord.Type.CANCEL, records.get(200).getType());
+        assertEquals(7L, records.get(200).getOrderId());
+        assertEquals(new BigDecimal("10.05"), records.get(201).getFill().getPrice());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i + 1, records.get(i).getSequence());
+        }
+    }
+
+    @Test
+    public void reopen_ContinuesAfterLastRecord()
+    {
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            journal.appendOrder(JournalRecord.Type.NEW, order(1L));
+        }
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            assertEquals(2L, journal.appendOrder(JournalRecord.Type.AMEND, order(1L)));
+        }
+
+        List<JournalRecord> records = replay();
+        assertEquals(2, records.size());
+        assertEquals(JournalRecord.Type.AMEND, records.get(1).getType());
+    }
+
+    @Test
+    public void tornTail_IsDropped() throws IOException
+    {
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            journal.appendOrder(JournalRecord.Type.NEW, order(1L));
+            journal.appendOrder(JournalRecord.Type.NEW, order(2L));
+        }
+        Path segment = segments().get(0);
+        int firstRecordEnd;
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            firstRecordEnd = 8 + file.readInt();
+            //Flip a byte in the body of the second record.
+            file.seek(firstRecordEnd + 20);
+            int value = file.read();
+            file.seek(firstRecordEnd + 20);
+            file.write(value ^ 0xFF);
+        }
+
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            assertEquals(2L, journal.appendOrder(JournalRecord.Type.NEW, order(3L)));
+        }
+
+        List<JournalRecord> records = replay();
+        assertEquals(2, records.size());
+        assertSameOrder(order(1L), records.get(0).getOrder());
+        assertSameOrder(order(3L), records.get(1).getOrder());
+    }
+
+    @Test
+    public void incompleteRecord_SkippedAndLaterRecordsKept() throws IOException
+    {
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            journal.appendOrder(JournalRecord.Type.NEW, order(1L));
+            journal.appendOrder(JournalRecord.Type.NEW, order(2L));
+            journal.appendOrder(JournalRecord.Type.NEW, order(3L));
+        }
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            //Writer of the second record died before publishing its length, the third one was completed after it.
+            file.seek(8 + file.readInt());
+            file.writeInt(0);
+        }
+
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            assertEquals(4L, journal.appendOrder(JournalRecord.Type.NEW, order(4L)));
+        }
+
+        List<JournalRecord> records = replay();
+        assertEquals(3, records.size());
+        assertEquals(1L, records.get(0).getSequence());
+        assertEquals(3L, records.get(1).getSequence());
+        assertSameOrder(order(3L), records.get(1).getOrder());
+        assertEquals(4L, records.get(2).getSequence());
+    }
+
+    @Test
+    public void advanceTo_NextRecordsAboveGivenSequence()
+    {
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            journal.appendOrder(JournalRecord.Type.NEW, order(1L));
+            journal.advanceTo(1L);
+            journal.advanceTo(10L);
+            assertEquals(11L, journal.appendOrder(JournalRecord.Type.NEW, order(2L)));
+        }
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            assertEquals(12L, journal.appendOrder(JournalRecord.Type.NEW, order(3L)));
+        }
+
+        List<JournalRecord> records = replay();
+        assertEquals(3, records.size());
+        assertEquals(1L, records.get(0).getSequence());
+        assertEquals(11L, records.get(1).getSequence());
+        assertEquals(12L, records.get(2).getSequence());
+    }
+
+    @Test
+    public void truncateBefore_DeletesOldSegments()
+    {
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            for (long i = 1; i <= 200; i++) {
+                journal.appendOrder(JournalRecord.Type.NEW, order(i));
+            }
+            int segments = segments().size();
+            journal.truncateBefore(150L);
+            assertTrue(segments().size() < segments);
+            assertEquals(200L, journal.position());
+        }
+
+        List<JournalRecord> records = new ArrayList<>();
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            journal.replay(150L, records::add);
+        }
+        assertEquals(150L, records.get(0).getSequence());
+        assertEquals(200L, records.get(records.size() - 1).getSequence());
+    }
+
+    @Test
+    public void concurrentAppends_ClaimDistinctSequencesInOrder() throws InterruptedException
+    {
+        settings.setFsync(FsyncPolicy.OS);
+        int threads = 4;
+        int perThread = 500;
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long first = t * perThread + 1L;
+                writers.add(new Thread(() -> {
+                    for (long i = first; i < first + perThread; i++) {
+                        journal.appendOrder(JournalRecord.Type.NEW, order(i));
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            assertEquals(threads * perThread, journal.position());
+        }
+
+        List<JournalRecord> records = replay();
+        assertTrue(segments().size() > 1);
+        assertEquals(threads * perThread, records.size());
+        assertEquals(threads * perThread, records.stream().map(record -> record.getOrder().getOrderId()).distinct().count());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i + 1, records.get(i).getSequence());
+        }
+    }
+
+    @Test
+    public void mapReadOnly_LeavesFileSize() throws IOException
+    {
+        Path file = folder.newFile("journal-00000000000000000001.log").toPath();
+        Files.write(file, new byte[100]);
+
+        assertEquals(100, JournalSegment.mapReadOnly(file).capacity());
+        assertEquals(100L, Files.size(file));
+    }
+
+    private List<JournalRecord> replay() {
+        List<JournalRecord> records = new ArrayList<>();
+        try (MappedOrderJournal journal = new MappedOrderJournal(settings)) {
+            journal.replay(1L, records::add);
+        }
+        return records;
+    }
+
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(Paths.get(settings.getDirectory()))) {
+            return files.filter(file -> file.toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //Orders are equal on id only, journal has to restore every field.
+    private static void assertSameOrder(TradeOrderEntity expected, TradeOrderEntity actual) {
+        assertAll(() -> assertEquals(expected.getOrderId(), actual.getOrderId()),
+                () -> assertEquals(expected.getStockTicker(), actual.getStockTicker()),
+                () -> assertEquals(expected.getTradeTime(), actual.getTradeTime()),
+                () -> assertEquals(expected.getPrice(), actual.getPrice()),
+                () -> assertEquals(expected.getQuantity(), actual.getQuantity()),
+                () -> assertEquals(expected.getTradeType(), actual.getTradeType()),
+                () -> assertEquals(expected.getOrderType(), actual.getOrderType()),
+                () -> assertEquals(expected.getTimeInForce(), actual.getTimeInForce()));
+    }
+
+    private static TradeOrderEntity order(Long orderId) {
+        TradeOrderEntity entity = new TradeOrderEntity();
+        entity.setOrderId(orderId);
+        entity.setStockTicker("HDFC");
+        entity.setTradeType(TradeType.BUY);
+        entity.setOrderType(OrderType.LIMIT);
+        entity.setTimeInForce(orderId % 2 == 0 ? TimeInForce.IOC : TimeInForce.GTC);
+        entity.setQuantity(BigInteger.valueOf(orderId * 10));
+        entity.setPrice(new BigDecimal("100.25"));
+        entity.setTradeTime(orderId);
+        return entity;
+    }
+}
@@ -3,10 +3,19 @@ package com.trade.stock.order.integration;
 import com.trade.stock.order.OrderApplication;
 import com.trade.stock.order.constants.TradeType;
 import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.exception.InvalidOrderException;
 import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.DepthLevel;
+import com.trade.stock.order.model.MarketDepth;
+import com.trade.stock.order.model.OrderBookPage;
+import com.trade.stock.order.model.OrderBookQuery;
+import com.trade.stock.order.model.OrderBookView;
 import com.trade.stock.order.model.OrderResponse;
+import com.trade.stock.order.model.TopOfBook;
 import com.trade.stock.order.model.TradeRequest;
+import com.trade.stock.order.processor.MatchingEngine;
 import com.trade.stock.order.service.OrderBookService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,13 +25,20 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -30,13 +46,20 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @RunWith(SpringRunner.class)
 @SpringBootTest(
         webEnvironment = SpringBootTest.WebEnvironment.MOCK,
-        classes = OrderApplication.class)
+        classes = OrderApplication.class,
+        properties = {"order.engine.journal.enabled=false", "order.engine.snapshot.enabled=false"})
 @AutoConfigureMockMvc
 public class StockOrderIntegrationTest {
 
     @Autowired
     private MockMvc mvc;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MatchingEngine engine;
+
     @MockBean
     OrderBookService orderBookServiceMock;
 
@@ -44,9 +67,9 @@ public class StockOrderIntegrationTest {
     public void givenTradeRequest_whenStockOrderCreate_thenStatus200()
             throws Exception {
 
-        when(orderBookServiceMock.stockOrder(any())).thenReturn(successResponse());
+        when(orderBookServiceMock.stockOrder(any())).thenReturn(CompletableFuture.completedFuture(successResponse()));
 
-        this.mvc.perform(post("/stockOrder/v1/order")
+        MvcResult result = this.mvc.perform(post("/stockOrder/v1/order")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content("{\n" +
                         "    \"stockTicker\" : \"HDFC\",\n" +
@@ -56,6 +79,10 @@ public class StockOrderIntegrationTest {
                         "    \"orderType\" : \"MARKET\"\n" +
                         "}")
                 .accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mvc.perform(asyncDispatch(result))
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.response").value("Successful execution"))
@@ -63,6 +90,88 @@ public class StockOrderIntegrationTest {
 
     }
 
+    @Test
+    public void givenTradeRequestArray_whenStockOrderBatchCreate_thenStatus200()
+            throws Exception {
+
+        when(orderBookServiceMock.stockOrders(any())).thenReturn(CompletableFuture.completedFuture(Arrays.asList(successResponse(), successResponse())));
+
+        MvcResult result = this.mvc.perform(post("/stockOrder/v1/order/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"stockTicker\" : \"HDFC\", \"price\" : \"100\", \"quantity\" : \"100\", \"tradeType\" : \"BUY\", \"orderType\" : \"LIMIT\"},\n" +
+                        " {\"stockTicker\" : \"INFY\", \"price\" : \"100\", \"quantity\" : \"100\", \"tradeType\" : \"SELL\", \"orderType\" : \"LIMIT\"}]")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[1].response").value("Successful execution"));
+
+        verify(orderBookServiceMock).stockOrders(argThat(requests -> requests.size() == 2 && "INFY".equals(requests.get(1).getStockTicker())));
+    }
+
+    @Test
+    public void givenNdjsonTradeRequests_whenStockOrderBatchCreate_thenStatus200()
+            throws Exception {
+
+        when(orderBookServiceMock.stockOrders(any())).thenReturn(CompletableFuture.completedFuture(Arrays.asList(successResponse(), successResponse())));
+
+        MvcResult result = this.mvc.perform(post("/stockOrder/v1/order/batch")
+                .contentType("application/x-ndjson")
+                .content("{\"stockTicker\" : \"HDFC\", \"price\" : \"100\", \"quantity\" : \"100\", \"tradeType\" : \"BUY\", \"orderType\" : \"LIMIT\"}\n" +
+                        "{\"stockTicker\" : \"INFY\", \"quantity\" : \"100\", \"tradeType\" : \"SELL\", \"orderType\" : \"MARKET\"}\n")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].response").value("Successful execution"));
+
+        verify(orderBookServiceMock).stockOrders(argThat(requests -> requests.size() == 2 && "INFY".equals(requests.get(1).getStockTicker())));
+    }
+
+    @Test
+    public void givenInvalidOrderInBatch_whenStockOrderBatchCreate_thenStatus400()
+            throws Exception {
+
+        when(orderBookServiceMock.stockOrders(any())).thenThrow(new InvalidOrderException("Order 0 : Quantity is mandatory"));
+
+        this.mvc.perform(post("/stockOrder/v1/order/batch")
+                .contentType("application/x-ndjson")
+                .content("{\"stockTicker\" : \"HDFC\", \"price\" : \"100\", \"tradeType\" : \"BUY\", \"orderType\" : \"LIMIT\"}\n")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.response").value("Order 0 : Quantity is mandatory"));
+    }
+
+    @Test
+    public void givenTradeRequest_whenEngineRejectsOrder_thenStatus400()
+            throws Exception {
+
+        CompletableFuture<OrderResponse> rejected = new CompletableFuture<>();
+        rejected.completeExceptionally(new InvalidOrderException("Price 100.001 is not a multiple of tick size 0.01 for HDFC"));
+        when(orderBookServiceMock.stockOrder(any())).thenReturn(rejected);
+
+        MvcResult result = this.mvc.perform(post("/stockOrder/v1/order")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\n" +
+                        "    \"stockTicker\" : \"HDFC\",\n" +
+                        "    \"price\" : \"100.001\",\n" +
+                        "    \"quantity\" : \"100\",\n" +
+                        "    \"tradeType\" : \"BUY\",\n" +
+                        "    \"orderType\" : \"LIMIT\"\n" +
+                        "}")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.response").value("Price 100.001 is not a multiple of tick size 0.01 for HDFC"));
+    }
+
     @Test
     public void givenTradeRequest_withNegativePrice_whenStockOrderCreate_thenStatus400()
             throws Exception {
@@ -108,23 +217,92 @@ public class StockOrderIntegrationTest {
             throws Exception {
 
         /* setup mock */
-        when(orderBookServiceMock.retrieveOrderBook("HDFC")).thenReturn(createListTradeOrders());
+        when(orderBookServiceMock.retrieveOrderBookView("HDFC")).thenReturn(new OrderBookView("HDFC", 3L, createListTradeOrders(),
+                objectMapper.writeValueAsBytes(createListTradeOrders())));
 
         this.mvc.perform(get("/stockOrder/v1/order/HDFC")
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("ETag", "\"3\""))
                 .andExpect(jsonPath("$[0].stockTicker").value("HDFC"))
                 .andExpect(jsonPath("$[0].price").value(50))
                 .andExpect(jsonPath("$[0].quantity").value(50))
                 .andExpect(jsonPath("$[0].tradeType").value("BUY"));
     }
 
+    @Test
+    public void givenLimit_whenRetrieveOrderBook_thenNextCursorHeader()
+            throws Exception {
+
+        OrderBookQuery query = new OrderBookQuery();
+        query.setSide(TradeType.BUY);
+        query.setLimit(1);
+        when(orderBookServiceMock.retrieveOrderBook("HDFC", query)).thenReturn(new OrderBookPage(createListTradeOrders(), "BUY:50:1:1:"));
+
+        this.mvc.perform(get("/stockOrder/v1/order/HDFC?side=BUY&limit=1")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "BUY:50:1:1:"))
+                .andExpect(jsonPath("$[0].stockTicker").value("HDFC"));
+    }
+
+    @Test
+    public void givenStockTicker_whenRetrieveDepth_thenStatus200()
+            throws Exception {
+
+        when(orderBookServiceMock.retrieveDepth("HDFC", 5, null)).thenReturn(new MarketDepth("HDFC", 42L,
+                Collections.singletonList(new DepthLevel(new BigDecimal("10.00"), new BigInteger("15"), 2)), Collections.emptyList()));
+
+        this.mvc.perform(get("/stockOrder/v1/order/HDFC/depth?levels=5")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sequence").value(42))
+                .andExpect(jsonPath("$.bids[0].price").value(10.00))
+                .andExpect(jsonPath("$.bids[0].quantity").value(15))
+                .andExpect(jsonPath("$.bids[0].orderCount").value(2))
+                .andExpect(jsonPath("$.asks").isEmpty());
+    }
+
+    @Test
+    public void givenStockTicker_whenRetrieveTopOfBook_thenStatus200()
+            throws Exception {
+
+        when(orderBookServiceMock.retrieveTopOfBook("HDFC")).thenReturn(new TopOfBook("HDFC", 7L, null,
+                new DepthLevel(new BigDecimal("10.50"), BigInteger.TEN, 1)));
+
+        this.mvc.perform(get("/stockOrder/v1/order/HDFC/top")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sequence").value(7))
+                .andExpect(jsonPath("$.ask.price").value(10.50));
+    }
+
+    @Test
+    public void givenStockTicker_whenStreamMarketData_thenDepthImageStreamed()
+            throws Exception {
+
+        //Streaming doesn't register a stock, it has to be known to the engine.
+        engine.symbolOf("STREAMED");
+        MvcResult result = this.mvc.perform(get("/stockOrder/v1/order/STREAMED/stream")
+                .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Image is written by a sender thread, event name and data are separate writes.
+        String image = "event:depth\nid:0\ndata:{\"stockTicker\":\"STREAMED\",\"sequence\":0,\"bids\":[],\"asks\":[]}";
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!result.getResponse().getContentAsString().contains(image) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(result.getResponse().getContentAsString().contains(image));
+    }
+
     @Test
     public void should_Return404_When_OrderBookNotFound() throws Exception {
 
         /* setup mock */
-        when(orderBookServiceMock.retrieveOrderBook("HDFC")).thenThrow(ResourceNotFoundException.class);
+        when(orderBookServiceMock.retrieveOrderBookView("HDFC")).thenThrow(ResourceNotFoundException.class);
 
         mvc.perform(get("/stockOrder/v1/order/HDFC")
                 .accept(MediaType.APPLICATION_JSON))
@@ -0,0 +1,96 @@
+package com.trade.stock.order.processor;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventRingBufferTest {
+
+    @Test
+    public void subscribers_ReceiveEventsInOrder() throws InterruptedException
+    {
+        EventRingBuffer<Integer> ring = new EventRingBuffer<>("test", 1024);
+        List<Integer> first = new CopyOnWriteArrayList<>();
+        List<Integer> second = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        try (EventRingBuffer<Integer>.Subscription a = ring.subscribe("a", e -> countDown(first, e, done));
+             EventRingBuffer<Integer>.Subscription b = ring.subscribe("b", e -> countDown(second, e, done))) {
+            for (int i = 0; i < 100; i++) {
+                ring.publish(i);
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(100, first.size());
+            assertEquals(first, second);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, first.get(i));
+            }
+            assertEquals(0, a.overruns());
+        }
+    }
+
+    @Test
+    public void slowSubscriber_IsOverrun_ProducerNeverBlocks() throws InterruptedException
+    {
+        EventRingBuffer<Integer> ring = new EventRingBuffer<>("test", 8);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch last = new CountDownLatch(1);
+        try (EventRingBuffer<Integer>.Subscription slow = ring.subscribe("slow", e -> {
+            await(release);
+            if (e == 99) {
+                last.countDown();
+            }
+        })) {
+            for (int i = 0; i < 100; i++) {
+                ring.publish(i);
+            }
+            release.countDown();
+
+            assertTrue(last.await(5, TimeUnit.SECONDS));
+            assertEquals(100, ring.published());
+            assertTrue(slow.overruns() > 0);
+        }
+    }
+
+    @Test
+    public void failingHandler_KeepsSubscription() throws InterruptedException
+    {
+        EventRingBuffer<Integer> ring = new EventRingBuffer<>("test", 16);
+        CountDownLatch received = new CountDownLatch(1);
+        try (EventRingBuffer<Integer>.Subscription ignored = ring.subscribe("failing", e -> {
+            if (e == 0) {
+                throw new IllegalStateException("failed");
+            }
+            received.countDown();
+        })) {
+            ring.publish(0);
+            ring.publish(1);
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacity_HasToBePowerOfTwo()
+    {
+        new EventRingBuffer<Integer>("test", 100);
+    }
+
+    private static void countDown(List<Integer> events, Integer event, CountDownLatch done) {
+        events.add(event);
+        if (events.size() == 100) {
+            done.countDown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TradeType;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpiryWheelTest {
+
+    @Test
+    public void advance_ExpiresOrdersDueOnly()
+    {
+        ExpiryWheel wheel = new ExpiryWheel(10L, 8, 1000L);
+        wheel.schedule(node(1L, 1015L));
+        wheel.schedule(node(2L, 1050L));
+        List<Long> expired = new ArrayList<>();
+
+        wheel.advance(1019L, node -> expired.add(node.order.getOrderId()));
+        assertEquals(0, expired.size());
+        wheel.advance(1020L, node -> expired.add(node.order.getOrderId()));
+
+        assertEquals(Arrays.asList(1L), expired);
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void advance_OrderMoreThanOneTurnAhead_KeptUntilItsTurn()
+    {
+        ExpiryWheel wheel = new ExpiryWheel(10L, 8, 1000L);
+        wheel.schedule(node(1L, 1200L));
+        List<Long> expired = new ArrayList<>();
+
+        wheel.advance(1100L, node -> expired.add(node.order.getOrderId()));
+        assertEquals(0, expired.size());
+        wheel.advance(1200L, node -> expired.add(node.order.getOrderId()));
+
+        assertEquals(Arrays.asList(1L), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void schedule_PastExpiry_ExpiresOnNextTick()
+    {
+        ExpiryWheel wheel = new ExpiryWheel(10L, 8, 1000L);
+        wheel.advance(1100L, node -> fail("Nothing scheduled"));
+        wheel.schedule(node(1L, 500L));
+        List<Long> expired = new ArrayList<>();
+
+        wheel.advance(1110L, node -> expired.add(node.order.getOrderId()));
+
+        assertEquals(Arrays.asList(1L), expired);
+    }
+
+    private static OrderNode node(Long orderId, long expireAt) {
+        OrderNode node = new OrderNode(TestDataCreatorForOrderProcessor.createTradeOrderEntity(orderId, "HDFC", TradeType.BUY,
+                BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT, orderId), 1000L, 10L);
+        node.expireAt = expireAt;
+        return node;
+    }
+}
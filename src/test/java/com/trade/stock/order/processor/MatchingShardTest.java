@@ -0,0 +1,46 @@
+package com.trade.stock.order.processor;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MatchingShardTest {
+
+    @Test
+    public void stop_FailsQueuedAndLaterTasks() throws Exception
+    {
+        MatchingShard shard = new MatchingShard(0, 16);
+        shard.start();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> current = shard.submit(() -> {
+            running.countDown();
+            //Spins rather than waits, stop interrupts the shard thread.
+            while (release.getCount() > 0) {
+                Thread.yield();
+            }
+            return "done";
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = shard.submit(() -> "never");
+
+        shard.stop();
+        release.countDown();
+
+        assertEquals("done", current.get(5, TimeUnit.SECONDS));
+        assertRejected(queued);
+        assertRejected(shard.submit(() -> "late"));
+    }
+
+    private static void assertRejected(CompletableFuture<String> future) throws Exception
+    {
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof RejectedExecutionException);
+    }
+}
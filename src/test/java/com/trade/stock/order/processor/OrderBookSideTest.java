@@ -0,0 +1,175 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TradeType;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderBookSideTest {
+
+    @Test
+    public void buySide_BestPriceFirst_ThenTime()
+    {
+        OrderBookSide side = new OrderBookSide(TradeType.BUY, new HashMap<>());
+        side.add(node(1L, TradeType.BUY, 100L, OrderType.LIMIT));
+        side.add(node(2L, TradeType.BUY, 101L, OrderType.LIMIT));
+        side.add(node(3L, TradeType.BUY, 101L, OrderType.LIMIT));
+
+        List<OrderNode> orders = side.orders();
+        assertEquals(3, side.size());
+        assertEquals(2L, side.peek().order.getOrderId());
+        assertEquals(2L, orders.get(0).order.getOrderId());
+        assertEquals(3L, orders.get(1).order.getOrderId());
+        assertEquals(1L, orders.get(2).order.getOrderId());
+    }
+
+    @Test
+    public void sellSide_MarketOrdersAheadOfPricedLevels()
+    {
+        OrderBookSide side = new OrderBookSide(TradeType.SELL, new HashMap<>());
+        side.add(node(1L, TradeType.SELL, 100L, OrderType.LIMIT));
+        side.add(node(2L, TradeType.SELL, TickSizeTable.MARKET_PRICE, OrderType.MARKET));
+
+        assertEquals(2L, side.peek().order.getOrderId());
+    }
+
+    @Test
+    public void remove_BestLevel_MovesTopOfBook()
+    {
+        OrderBookSide side = new OrderBookSide(TradeType.SELL, new HashMap<>());
+        OrderNode best = node(1L, TradeType.SELL, 99L, OrderType.LIMIT);
+        side.add(best);
+        side.add(node(2L, TradeType.SELL, 100L, OrderType.LIMIT));
+
+        side.remove(best);
+
+        assertEquals(2L, side.peek().order.getOrderId());
+        assertEquals(1, side.size());
+    }
+
+    @Test
+    public void reduce_KeepsLevelQuantity()
+    {
+        OrderBookSide side = new OrderBookSide(TradeType.BUY, new HashMap<>());
+        OrderNode order = node(1L, TradeType.BUY, 1000L, OrderType.LIMIT);
+        side.add(order);
+        side.add(node(2L, TradeType.BUY, 1000L, OrderType.LIMIT));
+
+        side.reduce(order, 4L);
+
+        assertEquals(6L, order.quantity);
+        assertEquals(16L, order.level.totalQuantity());
+    }
+
+    @Test
+    public void orderIndex_FollowsAddAndRemove()
+    {
+        Map<Long, OrderNode> orderIndex = new HashMap<>();
+        OrderBookSide side = new OrderBookSide(TradeType.BUY, orderIndex);
+        side.add(node(1L, TradeType.BUY, 1000L, OrderType.LIMIT));
+        side.add(node(2L, TradeType.BUY, 1000L, OrderType.LIMIT));
+
+        side.remove(orderIndex.get(2L));
+
+        assertEquals(1, orderIndex.size());
+        assertSame(side, orderIndex.get(1L).book);
+        assertEquals(1, side.size());
+    }
+
+    @Test
+    public void depthListener_NotifiedOfPricedLevelChanges()
+    {
+        List<String> changes = new ArrayList<>();
+        OrderBookSide side = new OrderBookSide(TradeType.SELL, new HashMap<>(),
+                (book, action, level) -> changes.add(action + " " + level.getPrice() + " " + level.totalQuantity()));
+        OrderNode first = node(1L, TradeType.SELL, 100L, OrderType.LIMIT);
+        side.add(first);
+        side.add(node(2L, TradeType.SELL, 100L, OrderType.LIMIT));
+        side.add(node(3L, TradeType.SELL, TickSizeTable.MARKET_PRICE, OrderType.MARKET));
+        side.reduce(first, 4L);
+        side.remove(first);
+        side.remove(side.peek());
+        side.remove(side.peek());
+
+        assertEquals(Arrays.asList("ADD 100 10", "CHANGE 100 20", "CHANGE 100 16", "CHANGE 100 10", "DELETE 100 0"), changes);
+        assertNull(side.bestLevel());
+    }
+
+    @Test
+    public void canFill_CountsLevelsWithinLimitOnly()
+    {
+        OrderBookSide side = new OrderBookSide(TradeType.SELL, new HashMap<>());
+        side.add(node(1L, TradeType.SELL, 100L, OrderType.LIMIT));
+        side.add(node(2L, TradeType.SELL, 101L, OrderType.LIMIT));
+        side.add(node(3L, TradeType.SELL, 102L, OrderType.LIMIT));
+
+        assertTrue(side.canFill(20L, 101L));
+        assertFalse(side.canFill(21L, 101L));
+        assertTrue(side.canFill(30L, TickSizeTable.MARKET_PRICE));
+        assertFalse(side.canFill(31L, TickSizeTable.MARKET_PRICE));
+    }
+
+    @Test
+    public void replenish_IcebergSliceMovesToTailOfLevel()
+    {
+        OrderBookSide side = new OrderBookSide(TradeType.BUY, new HashMap<>());
+        OrderNode iceberg = node(1L, TradeType.BUY, 1000L, OrderType.LIMIT);
+        iceberg.quantity = 25L;
+        iceberg.displayQuantity = 10L;
+        side.add(iceberg);
+        side.add(node(2L, TradeType.BUY, 1000L, OrderType.LIMIT));
+        assertEquals(20L, iceberg.level.totalQuantity());
+        assertEquals(15L, iceberg.level.hiddenQuantity());
+
+        side.reduce(iceberg, 10L);
+        side.replenish(iceberg);
+
+        assertEquals(2L, side.peek().order.getOrderId());
+        assertEquals(10L, iceberg.quantity);
+        assertEquals(5L, iceberg.hidden);
+        assertEquals(20L, iceberg.level.totalQuantity());
+        assertEquals(5L, iceberg.level.hiddenQuantity());
+        assertTrue(side.canFill(25L, 1000L));
+        assertFalse(side.canFill(26L, 1000L));
+    }
+
+    @Test
+    public void reduceTo_CutsHiddenQuantityFirstAndKeepsPlace()
+    {
+        OrderBookSide side = new OrderBookSide(TradeType.BUY, new HashMap<>());
+        OrderNode iceberg = node(1L, TradeType.BUY, 1000L, OrderType.LIMIT);
+        iceberg.quantity = 25L;
+        iceberg.displayQuantity = 10L;
+        side.add(iceberg);
+        side.add(node(2L, TradeType.BUY, 1000L, OrderType.LIMIT));
+        long version = side.version();
+
+        side.reduceTo(iceberg, 12L);
+        assertEquals(10L, iceberg.quantity);
+        assertEquals(2L, iceberg.hidden);
+        assertEquals(20L, iceberg.level.totalQuantity());
+        assertEquals(2L, iceberg.level.hiddenQuantity());
+
+        side.reduceTo(iceberg, 4L);
+        assertEquals(4L, iceberg.quantity);
+        assertEquals(0L, iceberg.hidden);
+        assertEquals(14L, iceberg.level.totalQuantity());
+        assertEquals(0L, iceberg.level.hiddenQuantity());
+        assertEquals(1L, side.peek().order.getOrderId());
+        assertTrue(side.version() > version);
+    }
+
+    private static OrderNode node(Long orderId, TradeType tradeType, long price, OrderType orderType) {
+        return new OrderNode(TestDataCreatorForOrderProcessor.createTradeOrderEntity(orderId, "HDFC", tradeType, BigInteger.TEN,
+                BigDecimal.valueOf(price).movePointLeft(2), orderType, orderId), price, 10L);
+    }
+}
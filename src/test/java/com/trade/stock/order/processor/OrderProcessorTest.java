@@ -1,30 +1,72 @@
 package com.trade.stock.order.processor;
 
+import com.trade.stock.order.config.EngineProperties;
 import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TimeInForce;
 import com.trade.stock.order.constants.TradeType;
 
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.dao.journal.FsyncPolicy;
+import com.trade.stock.order.dao.journal.MappedOrderJournal;
+import com.trade.stock.order.dao.journal.NoOpOrderJournal;
+import com.trade.stock.order.exception.InvalidOrderException;
 import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.DepthLevel;
+import com.trade.stock.order.model.DepthUpdate;
+import com.trade.stock.order.model.ExecutionReport;
+import com.trade.stock.order.model.MarketDepth;
+import com.trade.stock.order.model.OrderBookPage;
+import com.trade.stock.order.model.OrderBookQuery;
+import com.trade.stock.order.model.OrderResponse;
+import com.trade.stock.order.model.TopOfBook;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @RunWith(MockitoJUnitRunner.class)
 public class OrderProcessorTest {
 
-    OrderProcessor processor = new OrderProcessor();
+    ExecutionReportStream executionReports = new ExecutionReportStream(new EngineProperties());
+    MarketDataFeed marketData = new MarketDataFeed(new EngineProperties());
+    OrderIdGenerator orderIds = new StripedOrderIdGenerator(new EngineProperties());
+    EngineEventLog events = new EngineEventLog(new EngineProperties());
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    EngineMetrics metrics = new EngineMetrics(registry);
+    OrderProcessor processor = new OrderProcessor(new EngineProperties(), executionReports, marketData, orderIds, events, metrics, new NoOpOrderJournal(),
+            TestDataCreatorForOrderProcessor.noSnapshots());
+    MatchingEngine engine = new MatchingEngine(new EngineProperties());
+
+    @Rule
+    public TemporaryFolder journalFolder = new TemporaryFolder();
 
     @Before
     public void cleanData()
@@ -35,6 +77,8 @@ public class OrderProcessorTest {
     @After
     public void cleanDataAfterRun()
     {
+        engine.shutdown();
+        executionReports.shutdown();
         TestDataCreatorForOrderProcessor.emptyOrders();
     }
 
@@ -50,8 +94,8 @@ public class OrderProcessorTest {
     {
         TestDataCreatorForOrderProcessor.prepareOneBuyOrder();
         assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(12345L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,System.currentTimeMillis())));
-        assertEquals(1, OrderProcessor.buyMap.size());
-        assertEquals(2, OrderProcessor.buyMap.get("HDFC").size());
+        assertEquals(1, OrderProcessor.symbols.size());
+        assertEquals(2, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
     }
 
     @Test
@@ -61,8 +105,8 @@ public class OrderProcessorTest {
         processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(12345L,"HDFC",TradeType.SELL,new BigInteger("20"), BigDecimal.TEN, OrderType.LIMIT,System.currentTimeMillis()));
 
         assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(12345L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,System.currentTimeMillis())));
-        assertEquals(0, OrderProcessor.buyMap.get("HDFC").size());
-        assertEquals(0, OrderProcessor.sellMap.get("HDFC").size());
+        assertEquals(0, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(0, TestDataCreatorForOrderProcessor.sellSide("HDFC").size());
     }
 
     @Test
@@ -76,9 +120,9 @@ public class OrderProcessorTest {
 
         assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(76898L,"HDFC",TradeType.SELL,
                 BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,System.currentTimeMillis())));
-        assertEquals(1, OrderProcessor.buyMap.get("HDFC").size());
-        assertEquals(0, OrderProcessor.sellMap.get("HDFC") != null ? OrderProcessor.sellMap.get("HDFC").size() : 0 );
-        assertEquals(34567L, OrderProcessor.buyMap.get("HDFC").peek().getOrderId());
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(0, TestDataCreatorForOrderProcessor.sellSide("HDFC") != null ? TestDataCreatorForOrderProcessor.sellSide("HDFC").size() : 0 );
+        assertEquals(34567L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().order.getOrderId());
     }
 
     @Test
@@ -86,14 +130,20 @@ public class OrderProcessorTest {
     {
         processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(12345L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.MARKET,System.currentTimeMillis()));
 
-        assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(12345L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN, OrderType.MARKET,System.currentTimeMillis())));
-        assertEquals(0, OrderProcessor.buyMap.get("HDFC") != null ? OrderProcessor.buyMap.get("HDFC").size() : 0 );
-        assertEquals(0, OrderProcessor.sellMap.get("HDFC") != null ? OrderProcessor.sellMap.get("HDFC").size() : 0 );
+        assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(12346L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN, OrderType.MARKET,System.currentTimeMillis())));
+        //No trade yet, there is no price the two orders could trade at : both rest.
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(1, TestDataCreatorForOrderProcessor.sellSide("HDFC").size());
+        assertEquals(0, executionReports.published());
     }
 
+
     @Test
-    public void test_PriceTime_Validation_With2SameBuy_OneSell_Market()
+    public void test_PriceTime_Validation_With2SameBuy_OneSell_Market() throws InterruptedException
     {
+        lastTradeAt(BigDecimal.TEN);
+        BlockingQueue<ExecutionReport> fills = new LinkedBlockingQueue<>();
+        executionReports.subscribe("test", fills::add);
         processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(12345L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN,
                 OrderType.MARKET,System.currentTimeMillis()));
         processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(34567L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN,
@@ -101,11 +151,17 @@ public class OrderProcessorTest {
 
         assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(76898L,"HDFC",TradeType.SELL,BigInteger.TEN,
                 BigDecimal.TEN, OrderType.MARKET,System.currentTimeMillis())));
-        assertEquals(1, OrderProcessor.buyMap.get("HDFC").size());
-        assertEquals(0, OrderProcessor.sellMap.get("HDFC") != null ? OrderProcessor.sellMap.get("HDFC").size() : 0 );
-        assertEquals(34567L, OrderProcessor.buyMap.get("HDFC").peek().getOrderId());
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(0, TestDataCreatorForOrderProcessor.sellSide("HDFC") != null ? TestDataCreatorForOrderProcessor.sellSide("HDFC").size() : 0 );
+        assertEquals(34567L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().order.getOrderId());
+        ExecutionReport fill = fills.poll(5, TimeUnit.SECONDS);
+        assertNotNull(fill);
+        assertEquals(12345L, fill.getPassiveOrderId());
+        assertEquals(0, BigDecimal.TEN.compareTo(fill.getPrice()));
+        assertEquals(BigInteger.TEN, fill.getQuantity());
     }
 
+
     @Test
     public void test_PriceTime_Validation_With2SameBuy_OneSell_Limit()
     {
@@ -116,24 +172,27 @@ public class OrderProcessorTest {
 
         assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(76898L,"HDFC",TradeType.SELL,BigInteger.TEN,
                 BigDecimal.TEN, OrderType.LIMIT,System.currentTimeMillis())));
-        assertEquals(1, OrderProcessor.buyMap.get("HDFC").size());
-        assertEquals(0, OrderProcessor.sellMap.get("HDFC") != null ? OrderProcessor.sellMap.get("HDFC").size() : 0 );
-        assertEquals(34567L, OrderProcessor.buyMap.get("HDFC").peek().getOrderId());
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(0, TestDataCreatorForOrderProcessor.sellSide("HDFC") != null ? TestDataCreatorForOrderProcessor.sellSide("HDFC").size() : 0 );
+        assertEquals(34567L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().order.getOrderId());
     }
 
 
     @Test
     public void test_PriceTime_Validation_With2SameSELL_OneBuy_Market()
     {
-        TestDataCreatorForOrderProcessor.emptyOrders();
+        lastTradeAt(BigDecimal.TEN);
         processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(12345L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN, OrderType.MARKET,System.currentTimeMillis()));
         processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(34567L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN, OrderType.MARKET,System.currentTimeMillis()));
 
         assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(76898L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.MARKET,System.currentTimeMillis())));
-        assertEquals(0, OrderProcessor.buyMap.get("HDFC") != null ? OrderProcessor.buyMap.get("HDFC").size() : 0);
-        assertEquals(1, OrderProcessor.sellMap.get("HDFC") != null ? OrderProcessor.sellMap.get("HDFC").size() : 0 );
+        assertEquals(0, TestDataCreatorForOrderProcessor.buySide("HDFC") != null ? TestDataCreatorForOrderProcessor.buySide("HDFC").size() : 0 );
+        assertEquals(1, TestDataCreatorForOrderProcessor.sellSide("HDFC").size());
+        assertEquals(34567L, TestDataCreatorForOrderProcessor.sellSide("HDFC").peek().order.getOrderId());
+        assertEquals(2, executionReports.published());
     }
 
+
     @Test
     public void test_OneBuy_OneMarketSell_OneLimit_Buy()
     {
@@ -144,9 +203,9 @@ public class OrderProcessorTest {
 
         assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(76898L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN,
                 OrderType.LIMIT,System.currentTimeMillis())));
-        assertEquals(0, OrderProcessor.buyMap.get("HDFC") != null ? OrderProcessor.buyMap.get("HDFC").size() : 0);
-        assertEquals(1, OrderProcessor.sellMap.get("HDFC") != null ? OrderProcessor.sellMap.get("HDFC").size() : 0 );
-        assertEquals(BigInteger.TEN, OrderProcessor.sellMap.get("HDFC").peek().getQuantity());
+        assertEquals(0, TestDataCreatorForOrderProcessor.buySide("HDFC") != null ? TestDataCreatorForOrderProcessor.buySide("HDFC").size() : 0);
+        assertEquals(1, TestDataCreatorForOrderProcessor.sellSide("HDFC") != null ? TestDataCreatorForOrderProcessor.sellSide("HDFC").size() : 0 );
+        assertEquals(10L, TestDataCreatorForOrderProcessor.sellSide("HDFC").peek().quantity);
     }
 
     @Test
@@ -158,8 +217,8 @@ public class OrderProcessorTest {
 
         assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(76898L,"HDFC",TradeType.SELL,
                 BigInteger.valueOf(100), BigDecimal.valueOf(200), OrderType.LIMIT,System.currentTimeMillis())));
-        assertEquals(1, OrderProcessor.buyMap.get("HDFC") != null ? OrderProcessor.buyMap.get("HDFC").size() : 0);
-        assertEquals(1, OrderProcessor.sellMap.get("HDFC") != null ? OrderProcessor.sellMap.get("HDFC").size() : 0 );
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("HDFC") != null ? TestDataCreatorForOrderProcessor.buySide("HDFC").size() : 0);
+        assertEquals(1, TestDataCreatorForOrderProcessor.sellSide("HDFC") != null ? TestDataCreatorForOrderProcessor.sellSide("HDFC").size() : 0 );
 
     }
 
@@ -185,6 +244,18 @@ public class OrderProcessorTest {
         assertEquals("Successful execution", processor.deleteOrder(1234L).getResponse());
     }
 
+    @Test
+    public void test_Delete_OrderOfSecondStock() throws ResourceNotFoundException {
+
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,System.currentTimeMillis()));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"INFY",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,System.currentTimeMillis()));
+
+        assertEquals("Successful execution", processor.deleteOrder(1L).getResponse());
+        assertEquals(TestDataCreatorForOrderProcessor.symbol("INFY"), processor.symbolOfOrder(2L));
+        assertEquals(0, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("INFY").size());
+    }
+
     @Test(expected= ResourceNotFoundException.class)
     public void deleteOrderExpectException() throws ResourceNotFoundException{
         processor.deleteOrder(124L);
@@ -228,8 +299,838 @@ public class OrderProcessorTest {
 
         assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(56789L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(100),
                 OrderType.LIMIT,System.currentTimeMillis())));
-        assertEquals(1, OrderProcessor.sellMap.get("HDFC") != null ? OrderProcessor.sellMap.get("HDFC").size() : 0 );
+        assertEquals(1, TestDataCreatorForOrderProcessor.sellSide("HDFC") != null ? TestDataCreatorForOrderProcessor.sellSide("HDFC").size() : 0 );
+
+    }
+
+    @Test
+    public void test_OneBuy_Sweeps_ManyLevels()
+    {
+        for (int i = 1; i <= 20000; i++) {
+            processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity((long) i,"HDFC",TradeType.SELL,BigInteger.ONE, BigDecimal.valueOf(i),
+                    OrderType.LIMIT,System.currentTimeMillis()));
+        }
+
+        assertAll(() -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(0L,"HDFC",TradeType.BUY,BigInteger.valueOf(20005), BigDecimal.valueOf(20000),
+                OrderType.LIMIT,System.currentTimeMillis())));
+        assertEquals(0, TestDataCreatorForOrderProcessor.sellSide("HDFC").size());
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(5L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().quantity);
+    }
+
+    @Test(expected= InvalidOrderException.class)
+    public void test_Price_NotMultipleOfTickSize()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(12345L,"HDFC",TradeType.BUY,BigInteger.TEN, new BigDecimal("10.005"),
+                OrderType.LIMIT,System.currentTimeMillis()));
+    }
+
+    @Test
+    public void test_TickSize_PerStock() throws ResourceNotFoundException
+    {
+        EngineProperties properties = new EngineProperties();
+        properties.getTickSizes().put("HDFC", new BigDecimal("0.05"));
+        OrderProcessor tickProcessor = new OrderProcessor(properties, executionReports, marketData, orderIds, events, metrics, new NoOpOrderJournal(),
+            TestDataCreatorForOrderProcessor.noSnapshots());
+
+        tickProcessor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(12345L,"HDFC",TradeType.BUY,BigInteger.TEN, new BigDecimal("10.05"),
+                OrderType.LIMIT,System.currentTimeMillis()));
+
+        assertEquals(201L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().price);
+        assertEquals(0, new BigDecimal("10.05").compareTo(tickProcessor.retrieveOrderBook("HDFC").get(0).getPrice()));
+    }
+
+    @Test
+    public void test_Fill_PublishesExecutionReport() throws InterruptedException
+    {
+        BlockingQueue<ExecutionReport> fills = new LinkedBlockingQueue<>();
+        executionReports.subscribe("test", fills::add);
+
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(12345L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN,
+                OrderType.LIMIT,System.currentTimeMillis()));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(34567L,"HDFC",TradeType.SELL,new BigInteger("4"), new BigDecimal("9.50"),
+                OrderType.LIMIT,System.currentTimeMillis()));
+
+        ExecutionReport fill = fills.poll(5, TimeUnit.SECONDS);
+        assertNotNull(fill);
+        assertEquals("HDFC", fill.getStockTicker());
+        assertEquals(34567L, fill.getAggressorOrderId());
+        assertEquals(12345L, fill.getPassiveOrderId());
+        assertEquals(TradeType.SELL, fill.getAggressorSide());
+        assertEquals(0, BigDecimal.TEN.compareTo(fill.getPrice()));
+        assertEquals(new BigInteger("4"), fill.getQuantity());
+        assertEquals(1, executionReports.published());
+    }
+
+    @Test
+    public void test_LevelChanges_PublishDepthUpdates() throws InterruptedException
+    {
+        BlockingQueue<DepthUpdate> updates = new LinkedBlockingQueue<>();
+        marketData.subscribe("test", updates::add);
+
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN,
+                OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,new BigInteger("5"), BigDecimal.TEN,
+                OrderType.LIMIT,2L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.SELL,new BigInteger("15"), BigDecimal.TEN,
+                OrderType.LIMIT,3L));
+
+        DepthUpdate[] expected = {
+                new DepthUpdate(1L, "HDFC", TradeType.BUY, DepthUpdate.Action.ADD, new BigDecimal("10.00"), BigInteger.TEN, 1),
+                new DepthUpdate(2L, "HDFC", TradeType.BUY, DepthUpdate.Action.CHANGE, new BigDecimal("10.00"), new BigInteger("15"), 2),
+                new DepthUpdate(3L, "HDFC", TradeType.BUY, DepthUpdate.Action.CHANGE, new BigDecimal("10.00"), new BigInteger("5"), 1),
+                new DepthUpdate(4L, "HDFC", TradeType.BUY, DepthUpdate.Action.DELETE, new BigDecimal("10.00"), BigInteger.ZERO, 0)};
+        for (DepthUpdate update : expected) {
+            assertEquals(update, updates.poll(5, TimeUnit.SECONDS));
+        }
+        assertEquals(4, marketData.published());
+        assertNull(marketData.topOfBook("HDFC").getBid());
+        assertEquals(4L, marketData.topOfBook("HDFC").getSequence());
+    }
+
+    @Test
+    public void test_RetrieveDepth_AggregatesBestLevels() throws ResourceNotFoundException
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN,
+                OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,new BigInteger("5"), BigDecimal.TEN,
+                OrderType.LIMIT,2L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.BUY,BigInteger.ONE, new BigDecimal("9.99"),
+                OrderType.LIMIT,3L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(4L,"HDFC",TradeType.SELL,new BigInteger("7"), new BigDecimal("10.50"),
+                OrderType.LIMIT,4L));
+
+        MarketDepth depth = processor.retrieveDepth("HDFC", 1);
+        TopOfBook topOfBook = marketData.topOfBook("HDFC");
+
+        assertEquals(Collections.singletonList(new DepthLevel(new BigDecimal("10.00"), new BigInteger("15"), 2)), depth.getBids());
+        assertEquals(Collections.singletonList(new DepthLevel(new BigDecimal("10.50"), new BigInteger("7"), 1)), depth.getAsks());
+        assertEquals(4L, depth.getSequence());
+        assertEquals(2, processor.retrieveDepth("HDFC", 10).getBids().size());
+        assertEquals(depth.getBids().get(0), topOfBook.getBid());
+        assertEquals(depth.getAsks().get(0), topOfBook.getAsk());
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void test_RetrieveDepth_UnknownStock() throws ResourceNotFoundException
+    {
+        processor.retrieveDepth("UNKNOWN", 10);
+    }
+
+    @Test
+    public void test_RetrieveDepth_OneSide() throws ResourceNotFoundException
+    {
+        prepareLevels();
+
+        MarketDepth depth = processor.retrieveDepth(TestDataCreatorForOrderProcessor.symbol("HDFC"), 10, TradeType.SELL);
+
+        assertTrue(depth.getBids().isEmpty());
+        assertEquals(1, depth.getAsks().size());
+    }
+
+    @Test
+    public void test_RetrieveOrderBook_SideAndLevels() throws ResourceNotFoundException
+    {
+        prepareLevels();
+        OrderBookQuery query = new OrderBookQuery();
+        query.setSide(TradeType.BUY);
+        query.setLevels(2);
+
+        OrderBookPage page = processor.retrieveOrderBook(TestDataCreatorForOrderProcessor.symbol("HDFC"), query);
+
+        assertEquals(Arrays.asList(1L, 2L, 3L), orderIds(page));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void test_RetrieveOrderBook_PagesWithCursor() throws ResourceNotFoundException
+    {
+        prepareLevels();
+        OrderBookQuery query = new OrderBookQuery();
+        query.setLimit(2);
+
+        OrderBookPage first = processor.retrieveOrderBook(TestDataCreatorForOrderProcessor.symbol("HDFC"), query);
+        query.setCursor(first.getNextCursor());
+        OrderBookPage second = processor.retrieveOrderBook(TestDataCreatorForOrderProcessor.symbol("HDFC"), query);
+        query.setCursor(second.getNextCursor());
+        OrderBookPage last = processor.retrieveOrderBook(TestDataCreatorForOrderProcessor.symbol("HDFC"), query);
+
+        assertEquals(Arrays.asList(1L, 2L), orderIds(first));
+        assertEquals(Arrays.asList(3L, 4L), orderIds(second));
+        assertEquals(Collections.singletonList(5L), orderIds(last));
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    public void test_RetrieveOrderBook_CursorOrderRemoved() throws ResourceNotFoundException
+    {
+        prepareLevels();
+        OrderBookQuery query = new OrderBookQuery();
+        query.setSide(TradeType.BUY);
+        query.setLevels(2);
+        query.setLimit(2);
+
+        OrderBookPage first = processor.retrieveOrderBook(TestDataCreatorForOrderProcessor.symbol("HDFC"), query);
+        processor.deleteOrder(2L);
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(6L,"HDFC",TradeType.BUY,BigInteger.ONE, new BigDecimal("9.98"),
+                OrderType.LIMIT,6L));
+        query.setCursor(first.getNextCursor());
+        OrderBookPage second = processor.retrieveOrderBook(TestDataCreatorForOrderProcessor.symbol("HDFC"), query);
+
+        assertEquals(Collections.singletonList(3L), orderIds(second));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    public void test_RetrieveOrderBook_CursorResumesOnQueuePosition() throws ResourceNotFoundException
+    {
+        processor.process(TestDataCreatorForOrderProcessor.withDisplayQuantity(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",
+                TradeType.SELL,new BigInteger("20"), BigDecimal.TEN, OrderType.LIMIT,1L), 10L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN,
+                OrderType.LIMIT,2L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN,
+                OrderType.LIMIT,3L));
+        //Iceberg slice filled : order 1 is queued again behind orders 2 and 3.
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(4L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN,
+                OrderType.LIMIT,4L));
+        OrderBookQuery query = new OrderBookQuery();
+        query.setLimit(2);
+
+        OrderBookPage first = processor.retrieveOrderBook(TestDataCreatorForOrderProcessor.symbol("HDFC"), query);
+        processor.deleteOrder(3L);
+        query.setCursor(first.getNextCursor());
+        OrderBookPage second = processor.retrieveOrderBook(TestDataCreatorForOrderProcessor.symbol("HDFC"), query);
+
+        assertEquals(Arrays.asList(2L, 3L), orderIds(first));
+        assertEquals(Collections.singletonList(1L), orderIds(second));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test(expected = InvalidOrderException.class)
+    public void test_RetrieveOrderBook_InvalidCursor() throws ResourceNotFoundException
+    {
+        prepareLevels();
+        OrderBookQuery query = new OrderBookQuery();
+        query.setCursor("BUY:abc");
+
+        processor.retrieveOrderBook(TestDataCreatorForOrderProcessor.symbol("HDFC"), query);
+    }
+
+    @Test
+    public void test_EventLog_PublishesAcceptedChanges() throws ResourceNotFoundException
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN,
+                OrderType.LIMIT,1L));
+        processor.processUpdate(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.ONE, BigDecimal.TEN,
+                OrderType.LIMIT,2L));
+        processor.deleteOrder(1L);
+
+        assertEquals(3L, events.published());
+    }
+
+    @Test
+    public void test_EventLog_DisabledOrSampledOut()
+    {
+        EngineProperties properties = new EngineProperties();
+        properties.getEventLog().setEnabled(false);
+        EngineEventLog disabled = new EngineEventLog(properties);
+        disabled.order(EngineEvent.Type.NEW, TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,
+                BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,1L));
+
+        EngineProperties sampled = new EngineProperties();
+        sampled.getEventLog().setSampleRate(8);
+        EngineEventLog sampledLog = new EngineEventLog(sampled);
+        long sampledOrders = 0;
+        for (long orderId = 1; orderId <= 8000; orderId++) {
+            if (sampledLog.isSampled(orderId)) {
+                sampledOrders++;
+            }
+        }
+
+        assertEquals(0L, disabled.published());
+        assertTrue(sampledOrders > 800 && sampledOrders < 1200, "sampled " + sampledOrders);
+    }
+
+    @Test
+    public void test_Metrics_FillsAndBookGauges()
+    {
+        prepareLevels();
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(6L,"HDFC",TradeType.SELL,new BigInteger("2"), BigDecimal.TEN,
+                OrderType.LIMIT,6L));
+
+        assertEquals(2.0, registry.get("order.fills").counter().count());
+        assertEquals(2L, registry.get("order.fill.latency").timer().count());
+        assertEquals(2.0, registry.get("order.book.orders").tags("stock", "HDFC", "side", "BUY").gauge().value());
+        assertEquals(2.0, registry.get("order.book.levels").tags("stock", "HDFC", "side", "BUY").gauge().value());
+        assertEquals(1.0, registry.get("order.book.levels").tags("stock", "HDFC", "side", "SELL").gauge().value());
+    }
+
+    @Test
+    public void test_Metrics_ShardBacklog()
+    {
+        engine.bindTo(registry);
+
+        assertEquals(new EngineProperties().getShards(), registry.find("order.engine.backlog").gauges().size());
+        assertEquals(0.0, registry.get("order.engine.blocked.submits").tag("shard", "0").functionCounter().count());
+    }
+
+    /**
+     * BUY : 10.00 (orders 1 and 2), 9.99 (order 3), 9.98 (order 4)
+     * SELL : 10.50 (order 5)
+     */
+    private void prepareLevels() {
+        String[] prices = {"10", "10", "9.99", "9.98"};
+        for (int i = 0; i < prices.length; i++) {
+            processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(i + 1L,"HDFC",TradeType.BUY,BigInteger.ONE,
+                    new BigDecimal(prices[i]), OrderType.LIMIT,i + 1L));
+        }
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(5L,"HDFC",TradeType.SELL,BigInteger.ONE,
+                new BigDecimal("10.50"), OrderType.LIMIT,5L));
+    }
+
+    private static int[] hdfc(int orders) {
+        int[] symbols = new int[orders];
+        Arrays.fill(symbols, TestDataCreatorForOrderProcessor.symbol("HDFC"));
+        return symbols;
+    }
+
+    /**
+     * Cross two LIMIT orders so that the stock has a last trade price, books are left empty.
+     */
+    private void lastTradeAt(BigDecimal price) {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.ONE, price, OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,BigInteger.ONE, price, OrderType.LIMIT,2L));
+    }
+
+    private static List<Long> orderIds(OrderBookPage page) {
+        return page.getOrders().stream().map(order -> order.getOrderId()).collect(Collectors.toList());
+    }
+
+    @Test
+    public void test_Recover_RebuildsOrderBookFromJournal() throws ResourceNotFoundException, IOException
+    {
+        EngineProperties properties = new EngineProperties();
+        properties.getJournal().setDirectory(journalFolder.newFolder().getPath());
+        properties.getJournal().setFsync(FsyncPolicy.OS);
+        try (MappedOrderJournal journal = new MappedOrderJournal(properties.getJournal())) {
+            OrderProcessor journaledProcessor = new OrderProcessor(properties, executionReports, marketData, orderIds, events, metrics, journal, TestDataCreatorForOrderProcessor.noSnapshots());
+            journaledProcessor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN,
+                    OrderType.LIMIT,System.currentTimeMillis()));
+            journaledProcessor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,BigInteger.TEN, new BigDecimal("9"),
+                    OrderType.LIMIT,System.currentTimeMillis()));
+            journaledProcessor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.SELL,new BigInteger("4"), new BigDecimal("9"),
+                    OrderType.LIMIT,System.currentTimeMillis()));
+            journaledProcessor.processUpdate(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,new BigInteger("7"), new BigDecimal("9"),
+                    OrderType.LIMIT,System.currentTimeMillis()));
+            journaledProcessor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(4L,"INFY",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN,
+                    OrderType.LIMIT,System.currentTimeMillis()));
+            journaledProcessor.deleteOrder(4L);
+        }
+        TestDataCreatorForOrderProcessor.emptyOrders();
+
+        OrderIdGenerator recoveredIds = new StripedOrderIdGenerator(properties);
+        try (MappedOrderJournal journal = new MappedOrderJournal(properties.getJournal())) {
+            new OrderProcessor(properties, executionReports, marketData, recoveredIds, events, metrics, journal, TestDataCreatorForOrderProcessor.noSnapshots()).recover();
+        }
+
+        assertEquals(2, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(1L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().order.getOrderId());
+        assertEquals(6L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().quantity);
+        assertEquals(7L, OrderProcessor.orderIndex.get(2L).quantity);
+        assertEquals(0, TestDataCreatorForOrderProcessor.sellSide("INFY").size());
+        assertTrue(recoveredIds.nextId(TestDataCreatorForOrderProcessor.symbol("HDFC")) > 4L);
+    }
+
+    @Test
+    public void test_Recover_FromSnapshotAndJournalTail() throws ResourceNotFoundException, IOException
+    {
+        EngineProperties properties = new EngineProperties();
+        properties.getJournal().setDirectory(journalFolder.newFolder().getPath());
+        properties.getJournal().setFsync(FsyncPolicy.OS);
+        properties.getSnapshot().setDirectory(journalFolder.newFolder().getPath());
+        SnapshotStore snapshotStore = new SnapshotStore(properties);
+        int shardCount = 2;
+        long issuedId;
+        try (MappedOrderJournal journal = new MappedOrderJournal(properties.getJournal())) {
+            OrderProcessor journaledProcessor = new OrderProcessor(properties, executionReports, marketData, orderIds, events, metrics, journal, snapshotStore);
+            journaledProcessor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN,
+                    OrderType.LIMIT,System.currentTimeMillis()));
+            journaledProcessor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"INFY",TradeType.SELL,BigInteger.TEN, new BigDecimal("20.05"),
+                    OrderType.LIMIT,System.currentTimeMillis()));
+            journaledProcessor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.SELL,new BigInteger("3"), BigDecimal.TEN,
+                    OrderType.LIMIT,System.currentTimeMillis()));
+            issuedId = orderIds.nextId(TestDataCreatorForOrderProcessor.symbol("TCS"));
+            for (int shard = 0; shard < shardCount; shard++) {
+                snapshotStore.write(journaledProcessor.capture(shard, shardCount));
+            }
+            journaledProcessor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(4L,"HDFC",TradeType.SELL,new BigInteger("2"), BigDecimal.TEN,
+                    OrderType.LIMIT,System.currentTimeMillis()));
+            journaledProcessor.deleteOrder(2L);
+        }
+        TestDataCreatorForOrderProcessor.emptyOrders();
+
+        ExecutionReportStream recoveredReports = new ExecutionReportStream(properties);
+        OrderIdGenerator recoveredIds = new StripedOrderIdGenerator(properties);
+        try (MappedOrderJournal journal = new MappedOrderJournal(properties.getJournal())) {
+            new OrderProcessor(properties, recoveredReports, marketData, recoveredIds, events, metrics, journal, snapshotStore).recover();
+        }
+
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(5L, OrderProcessor.orderIndex.get(1L).quantity);
+        assertEquals(0, TestDataCreatorForOrderProcessor.sellSide("INFY").size());
+        assertEquals(1, OrderProcessor.orderIndex.size());
+        assertEquals(2L, recoveredReports.lastTradeId());
+        assertTrue(recoveredIds.nextId(TestDataCreatorForOrderProcessor.symbol("TCS")) > issuedId);
+    }
+
+    @Test
+    public void test_MarketOrder_SweepsLevels_IocRemainingCancelled()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(101),
+                OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(100),
+                OrderType.LIMIT,2L));
+
+        processor.process(TestDataCreatorForOrderProcessor.withTimeInForce(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",
+                TradeType.BUY,new BigInteger("25"), null, OrderType.MARKET,3L), TimeInForce.IOC));
+
+        assertEquals(0, TestDataCreatorForOrderProcessor.sellSide("HDFC").size());
+        assertNull(TestDataCreatorForOrderProcessor.buySide("HDFC"));
+        assertEquals(2L, executionReports.published());
+        assertNull(OrderProcessor.orderIndex.get(3L));
+    }
+
+    @Test
+    public void test_MarketOrder_GtcRemainingRestsAsMarket() throws ResourceNotFoundException
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(100),
+                OrderType.LIMIT,1L));
+
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,new BigInteger("25"), null,
+                OrderType.MARKET,2L));
+
+        assertEquals(15L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().quantity);
+        assertTrue(TestDataCreatorForOrderProcessor.buySide("HDFC").peek().market);
+        assertNull(processor.retrieveOrderBook("HDFC").get(0).getPrice());
+    }
+
+    @Test
+    public void test_MarketOrders_NoLastTradePrice_DoNotCross()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, null,
+                OrderType.MARKET,1L));
+
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,new BigInteger("4"), null,
+                OrderType.MARKET,2L));
+
+        assertEquals(10L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().quantity);
+        assertEquals(4L, TestDataCreatorForOrderProcessor.sellSide("HDFC").peek().quantity);
+        assertEquals(0, executionReports.published());
+        assertEquals(TickSizeTable.MARKET_PRICE, OrderProcessor.symbols.book("HDFC").lastTradePrice);
+    }
+
+    @Test
+    public void test_MarketOrder_TakesPricedOrdersFirst_ThenRestingMarketAtLastTradePrice() throws InterruptedException
+    {
+        BlockingQueue<ExecutionReport> fills = new LinkedBlockingQueue<>();
+        executionReports.subscribe("test", fills::add);
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, null,
+                OrderType.MARKET,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.valueOf(100),
+                OrderType.LIMIT,2L));
+
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.SELL,new BigInteger("15"), null,
+                OrderType.MARKET,3L));
+
+        ExecutionReport priced = fills.poll(5, TimeUnit.SECONDS);
+        ExecutionReport unpriced = fills.poll(5, TimeUnit.SECONDS);
+        assertNotNull(unpriced);
+        assertEquals(2L, priced.getPassiveOrderId());
+        assertEquals(BigInteger.TEN, priced.getQuantity());
+        assertEquals(1L, unpriced.getPassiveOrderId());
+        assertEquals(0, BigDecimal.valueOf(100).compareTo(unpriced.getPrice()));
+        assertEquals(new BigInteger("5"), unpriced.getQuantity());
+        assertEquals(5L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().quantity);
+        assertEquals(0, TestDataCreatorForOrderProcessor.sellSide("HDFC") != null ? TestDataCreatorForOrderProcessor.sellSide("HDFC").size() : 0 );
+    }
+
+
+    @Test
+    public void test_MarketToLimitOrder_TradesAtBestPrice_RemainingRestsAtThatPrice()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.valueOf(100),
+                OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.valueOf(99),
+                OrderType.LIMIT,2L));
+
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.SELL,new BigInteger("15"), null,
+                OrderType.MARKET_TO_LIMIT,3L));
+
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(2L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().order.getOrderId());
+        OrderNode remaining = TestDataCreatorForOrderProcessor.sellSide("HDFC").peek();
+        assertEquals(3L, remaining.order.getOrderId());
+        assertEquals(5L, remaining.quantity);
+        assertEquals(10000L, remaining.price);
+    }
+
+    @Test
+    public void test_MarketToLimitOrder_NoPricedCounterOrder_Cancelled()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, null,
+                OrderType.MARKET_TO_LIMIT,1L));
+
+        assertNull(TestDataCreatorForOrderProcessor.sellSide("HDFC"));
+        assertTrue(OrderProcessor.orderIndex.isEmpty());
+    }
+
+    @Test
+    public void test_LimitOrder_Ioc_RemainingCancelled()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(100),
+                OrderType.LIMIT,1L));
+
+        processor.process(TestDataCreatorForOrderProcessor.withTimeInForce(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",
+                TradeType.BUY,new BigInteger("25"), BigDecimal.valueOf(100), OrderType.LIMIT,2L), TimeInForce.IOC));
+
+        assertEquals(0, TestDataCreatorForOrderProcessor.sellSide("HDFC").size());
+        assertNull(TestDataCreatorForOrderProcessor.buySide("HDFC"));
+    }
+
+    @Test
+    public void test_FokOrder_NotEnoughWithinLimit_CancelledWithoutFill()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(100),
+                OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(102),
+                OrderType.LIMIT,2L));
+
+        processor.process(TestDataCreatorForOrderProcessor.withTimeInForce(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",
+                TradeType.BUY,new BigInteger("15"), BigDecimal.valueOf(101), OrderType.LIMIT,3L), TimeInForce.FOK));
+
+        assertEquals(2, TestDataCreatorForOrderProcessor.sellSide("HDFC").size());
+        assertNull(TestDataCreatorForOrderProcessor.buySide("HDFC"));
+        assertEquals(0L, executionReports.published());
+    }
+
+    @Test
+    public void test_FokOrder_EnoughAcrossLevels_Filled()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(100),
+                OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(102),
+                OrderType.LIMIT,2L));
+
+        processor.process(TestDataCreatorForOrderProcessor.withTimeInForce(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",
+                TradeType.BUY,new BigInteger("15"), null, OrderType.MARKET,3L), TimeInForce.FOK));
+
+        assertEquals(1, TestDataCreatorForOrderProcessor.sellSide("HDFC").size());
+        assertEquals(5L, TestDataCreatorForOrderProcessor.sellSide("HDFC").peek().quantity);
+        assertNull(TestDataCreatorForOrderProcessor.buySide("HDFC"));
+    }
+
+    @Test
+    public void test_GtdOrder_ExpiredOnItsShard()
+    {
+        long expireTime = System.currentTimeMillis() + 60000L;
+        TradeOrderEntity order = TestDataCreatorForOrderProcessor.withTimeInForce(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,
+                "HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,1L), TimeInForce.GTD);
+        order.setExpireTime(expireTime);
+        processor.process(order);
+        int shard = MatchingEngine.shardFor(TestDataCreatorForOrderProcessor.symbol("HDFC"), new EngineProperties().getShards());
+
+        processor.expireOrders(shard, expireTime - 1000L);
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        //Expiry is rounded up to the next tick of the wheel.
+        processor.expireOrders(shard, expireTime + new EngineProperties().getExpiry().getTickMs());
+
+        assertEquals(0, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertTrue(OrderProcessor.orderIndex.isEmpty());
+    }
+
+    @Test
+    public void test_GtdOrder_FilledBeforeExpiry_Skipped()
+    {
+        long expireTime = System.currentTimeMillis() + 60000L;
+        TradeOrderEntity order = TestDataCreatorForOrderProcessor.withTimeInForce(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,
+                "HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,1L), TimeInForce.GTD);
+        order.setExpireTime(expireTime);
+        processor.process(order);
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN,
+                OrderType.LIMIT,2L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN,
+                OrderType.LIMIT,3L));
+
+        processor.expireOrders(MatchingEngine.shardFor(TestDataCreatorForOrderProcessor.symbol("HDFC"), new EngineProperties().getShards()),
+                expireTime + new EngineProperties().getExpiry().getTickMs());
+
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(3L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().order.getOrderId());
+    }
+
+    @Test
+    public void test_DayOrder_ExpiresAtEndOfTradingDay()
+    {
+        long tradeTime = LocalDateTime.of(2021, 3, 1, 10, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+        processor.process(TestDataCreatorForOrderProcessor.withTimeInForce(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,
+                "HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,tradeTime), TimeInForce.DAY));
+
+        assertEquals(tradeTime + 14 * 3600 * 1000L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().expireAt);
+    }
+
+    @Test(expected = InvalidOrderException.class)
+    public void test_GtdOrder_WithoutExpireTime_Rejected()
+    {
+        processor.validate(TestDataCreatorForOrderProcessor.withTimeInForce(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,
+                "HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,1L), TimeInForce.GTD));
+    }
+
+    @Test
+    public void test_StopOrder_WaitsForStopPrice_ThenSweepsAsMarket()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(100),
+                OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(101),
+                OrderType.LIMIT,2L));
+        processor.process(TestDataCreatorForOrderProcessor.createStopOrderEntity(3L,"HDFC",TradeType.BUY,BigInteger.TEN, null,
+                BigDecimal.valueOf(100), OrderType.STOP,3L));
+        assertEquals(2, TestDataCreatorForOrderProcessor.sellSide("HDFC").size());
+        assertNotNull(OrderProcessor.orderIndex.get(3L));
+
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(4L,"HDFC",TradeType.BUY,new BigInteger("5"), BigDecimal.valueOf(100),
+                OrderType.LIMIT,4L));
+
+        assertEquals(1, TestDataCreatorForOrderProcessor.sellSide("HDFC").size());
+        assertEquals(5L, TestDataCreatorForOrderProcessor.sellSide("HDFC").peek().quantity);
+        assertNull(OrderProcessor.orderIndex.get(3L));
+    }
+
+    @Test
+    public void test_StopLimitOrder_AlreadyCrossed_TriggeredOnArrival()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.valueOf(100),
+                OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,new BigInteger("5"), BigDecimal.valueOf(100),
+                OrderType.LIMIT,2L));
+
+        processor.process(TestDataCreatorForOrderProcessor.createStopOrderEntity(3L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(100),
+                BigDecimal.valueOf(101), OrderType.STOP_LIMIT,3L));
+
+        assertEquals(0, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(5L, TestDataCreatorForOrderProcessor.sellSide("HDFC").peek().quantity);
+        assertEquals(3L, TestDataCreatorForOrderProcessor.sellSide("HDFC").peek().order.getOrderId());
+    }
+
+    @Test
+    public void test_StopOrder_Cancelled_NeverTriggered() throws ResourceNotFoundException
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createStopOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, null,
+                BigDecimal.valueOf(99), OrderType.STOP,1L));
+        processor.deleteOrder(1L);
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.valueOf(98),
+                OrderType.LIMIT,2L));
+
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.SELL,new BigInteger("5"), BigDecimal.valueOf(98),
+                OrderType.LIMIT,3L));
+
+        assertEquals(5L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().quantity);
+        assertNull(OrderProcessor.orderIndex.get(1L));
+    }
+
+    @Test(expected = InvalidOrderException.class)
+    public void test_StopOrder_WithoutStopPrice_Rejected()
+    {
+        processor.validate(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, null,
+                OrderType.STOP,1L));
+    }
+
+    @Test
+    public void test_Recover_PendingStopOrderFromSnapshot() throws IOException
+    {
+        EngineProperties properties = new EngineProperties();
+        properties.getSnapshot().setDirectory(journalFolder.newFolder().getPath());
+        SnapshotStore snapshotStore = new SnapshotStore(properties);
+        processor.process(TestDataCreatorForOrderProcessor.createStopOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.valueOf(102),
+                BigDecimal.valueOf(101), OrderType.STOP_LIMIT,1L));
+        snapshotStore.write(processor.capture(0, 1));
+        TestDataCreatorForOrderProcessor.emptyOrders();
+
+        new OrderProcessor(properties, executionReports, marketData, orderIds, events, metrics, new NoOpOrderJournal(), snapshotStore).recover();
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,new BigInteger("15"), BigDecimal.valueOf(101),
+                OrderType.LIMIT,2L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.BUY,BigInteger.ONE, BigDecimal.valueOf(101),
+                OrderType.LIMIT,3L));
+
+        assertEquals(4L, TestDataCreatorForOrderProcessor.sellSide("HDFC").peek().quantity);
+        assertNull(OrderProcessor.orderIndex.get(1L));
+    }
+
+    @Test
+    public void test_IcebergOrder_OnlyDisplayQuantityShown() throws ResourceNotFoundException
+    {
+        processor.process(TestDataCreatorForOrderProcessor.withDisplayQuantity(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",
+                TradeType.SELL,new BigInteger("100"), BigDecimal.TEN, OrderType.LIMIT,1L), 10L));
+
+        List<TradeOrderEntity> orderBook = processor.retrieveOrderBook("HDFC");
+        MarketDepth depth = processor.retrieveDepth("HDFC", 1);
+
+        assertEquals(1, orderBook.size());
+        assertEquals(BigInteger.TEN, orderBook.get(0).getQuantity());
+        assertNull(orderBook.get(0).getDisplayQuantity());
+        assertEquals(BigInteger.TEN, depth.getAsks().get(0).getQuantity());
+    }
+
+    @Test
+    public void test_IcebergOrder_ReplenishedAndLosesTimePriority()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.withDisplayQuantity(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",
+                TradeType.SELL,new BigInteger("30"), BigDecimal.TEN, OrderType.LIMIT,1L), 10L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN,
+                OrderType.LIMIT,2L));
+
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.BUY,new BigInteger("15"), BigDecimal.TEN,
+                OrderType.LIMIT,3L));
+
+        OrderBookSide sells = TestDataCreatorForOrderProcessor.sellSide("HDFC");
+        assertEquals(2, sells.size());
+        assertEquals(2L, sells.orders().get(0).order.getOrderId());
+        assertEquals(5L, sells.orders().get(0).quantity);
+        assertEquals(1L, sells.orders().get(1).order.getOrderId());
+        assertEquals(10L, sells.orders().get(1).quantity);
+        assertEquals(10L, sells.orders().get(1).hidden);
+    }
+
+    @Test
+    public void test_IcebergOrder_SweptThroughHiddenQuantity()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.withDisplayQuantity(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",
+                TradeType.BUY,new BigInteger("25"), BigDecimal.TEN, OrderType.LIMIT,1L), 10L));
+
+        processor.process(TestDataCreatorForOrderProcessor.withTimeInForce(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",
+                TradeType.SELL,new BigInteger("25"), null, OrderType.MARKET,2L), TimeInForce.FOK));
+
+        assertEquals(0, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertNull(TestDataCreatorForOrderProcessor.sellSide("HDFC"));
+        assertEquals(3L, executionReports.published());
+    }
+
+    @Test
+    public void test_processUpdate_QuantityDownKeepsQueuePosition()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,2L));
+        OrderNode first = TestDataCreatorForOrderProcessor.buySide("HDFC").peek();
+
+        assertAll(() -> processor.processUpdate(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,
+                new BigInteger("4"), BigDecimal.TEN, OrderType.LIMIT,3L)));
+
+        OrderBookSide buys = TestDataCreatorForOrderProcessor.buySide("HDFC");
+        assertTrue(first == buys.peek());
+        assertEquals(4L, buys.peek().quantity);
+        assertEquals(14L, buys.bestLevel().totalQuantity());
+        assertEquals(Arrays.asList(1L, 2L), buys.orders().stream().map(node -> node.order.getOrderId()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void test_processUpdate_MarketToLimitQuantityDownKeepsQueuePosition()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(100),
+                OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,new BigInteger("25"), null,
+                OrderType.MARKET_TO_LIMIT,2L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.valueOf(100),
+                OrderType.LIMIT,3L));
+        OrderNode first = TestDataCreatorForOrderProcessor.buySide("HDFC").peek();
+
+        assertAll(() -> processor.processUpdate(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,
+                new BigInteger("5"), null, OrderType.MARKET_TO_LIMIT,4L)));
+
+        OrderBookSide buys = TestDataCreatorForOrderProcessor.buySide("HDFC");
+        assertTrue(first == buys.peek());
+        assertEquals(5L, buys.peek().quantity);
+        assertEquals(15L, buys.bestLevel().totalQuantity());
+        assertEquals(Arrays.asList(2L, 3L), buys.orders().stream().map(node -> node.order.getOrderId()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void test_processUpdate_QuantityUpLosesQueuePosition()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,2L));
+
+        assertAll(() -> processor.processUpdate(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.BUY,
+                new BigInteger("15"), BigDecimal.TEN, OrderType.LIMIT,3L)));
+
+        OrderBookSide buys = TestDataCreatorForOrderProcessor.buySide("HDFC");
+        assertEquals(Arrays.asList(2L, 1L), buys.orders().stream().map(node -> node.order.getOrderId()).collect(Collectors.toList()));
+        assertEquals(25L, buys.bestLevel().totalQuantity());
+    }
+
+    @Test
+    public void test_processUpdate_PriceChangeMatchesCrossingOrder()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, new BigDecimal("11"), OrderType.LIMIT,1L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,new BigInteger("4"), BigDecimal.TEN, OrderType.LIMIT,2L));
+
+        assertAll(() -> processor.processUpdate(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,
+                new BigInteger("4"), new BigDecimal("11"), OrderType.LIMIT,3L)));
+
+        assertEquals(0, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(6L, TestDataCreatorForOrderProcessor.sellSide("HDFC").peek().quantity);
+        assertEquals(1L, executionReports.published());
+    }
+
+    @Test
+    public void test_processUpdate_IcebergQuantityDownCutsHiddenQuantity()
+    {
+        processor.process(TestDataCreatorForOrderProcessor.withDisplayQuantity(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",
+                TradeType.SELL,new BigInteger("25"), BigDecimal.TEN, OrderType.LIMIT,1L), 10L));
+        processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,2L));
+
+        assertAll(() -> processor.processUpdate(TestDataCreatorForOrderProcessor.withDisplayQuantity(TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",
+                TradeType.SELL,new BigInteger("12"), BigDecimal.TEN, OrderType.LIMIT,3L), 10L)));
+
+        OrderNode iceberg = TestDataCreatorForOrderProcessor.sellSide("HDFC").peek();
+        assertEquals(1L, iceberg.order.getOrderId());
+        assertEquals(10L, iceberg.quantity);
+        assertEquals(2L, iceberg.hidden);
+    }
+
+    @Test
+    public void test_ProcessBatch_MatchesInBatchOrder()
+    {
+        processor.processBatch(Arrays.asList(
+                TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,1L),
+                TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",TradeType.BUY,new BigInteger("4"), BigDecimal.TEN, OrderType.LIMIT,2L),
+                TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,3L)),
+                hdfc(3));
+
+        assertEquals(0, TestDataCreatorForOrderProcessor.sellSide("HDFC").size());
+        assertEquals(1, TestDataCreatorForOrderProcessor.buySide("HDFC").size());
+        assertEquals(4L, TestDataCreatorForOrderProcessor.buySide("HDFC").peek().quantity);
+    }
+
+    @Test
+    public void test_ProcessBatch_RejectsFailingOrderOnly()
+    {
+        TradeOrderEntity expired = TestDataCreatorForOrderProcessor.withTimeInForce(TestDataCreatorForOrderProcessor.createTradeOrderEntity(2L,"HDFC",
+                TradeType.BUY,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,2L), TimeInForce.GTD);
+        expired.setExpireTime(System.currentTimeMillis() - 1000L);
+
+        List<OrderResponse> responses = processor.processBatch(Arrays.asList(
+                TestDataCreatorForOrderProcessor.createTradeOrderEntity(1L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.TEN, OrderType.LIMIT,1L),
+                expired,
+                TestDataCreatorForOrderProcessor.createTradeOrderEntity(3L,"HDFC",TradeType.BUY,new BigInteger("4"), BigDecimal.TEN, OrderType.LIMIT,3L)),
+                hdfc(3));
 
+        assertEquals(3, responses.size());
+        assertEquals(1L, responses.get(0).getOrderId());
+        assertEquals(OrderProcessor.SUCCESSFUL_EXECUTION, responses.get(0).getResponse());
+        assertNull(responses.get(1).getOrderId());
+        assertTrue(responses.get(1).getResponse().startsWith(OrderProcessor.REJECTED));
+        assertEquals(3L, responses.get(2).getOrderId());
+        assertEquals(6L, TestDataCreatorForOrderProcessor.sellSide("HDFC").peek().quantity);
+        assertNull(TestDataCreatorForOrderProcessor.buySide("HDFC"));
     }
 
     @Test
@@ -243,13 +1144,13 @@ public class OrderProcessorTest {
         CountDownLatch latch = new CountDownLatch(numberOfThreads);
         for (int i = 0; i < 2; i++) {
             service.submit(() -> {
-                processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(4567L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(100),
-                        OrderType.LIMIT,System.currentTimeMillis()));
+                engine.run(TestDataCreatorForOrderProcessor.symbol("HDFC"), () -> processor.process(TestDataCreatorForOrderProcessor.createTradeOrderEntity(4567L,"HDFC",TradeType.SELL,BigInteger.TEN, BigDecimal.valueOf(100),
+                        OrderType.LIMIT,System.currentTimeMillis())));
                 latch.countDown();
             });
         }
         latch.await();
-        assertEquals(1, OrderProcessor.sellMap.get("HDFC") != null ? OrderProcessor.sellMap.get("HDFC").size() : 0 );
+        assertEquals(1, TestDataCreatorForOrderProcessor.sellSide("HDFC") != null ? TestDataCreatorForOrderProcessor.sellSide("HDFC").size() : 0 );
     }
 
 }
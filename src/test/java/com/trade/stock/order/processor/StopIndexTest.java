@@ -0,0 +1,63 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TradeType;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StopIndexTest {
+
+    @Test
+    public void release_TakesCrossedStopsOnly()
+    {
+        StopIndex stops = new StopIndex(new HashMap<>());
+        stops.add(node(1L, TradeType.BUY, 105L));
+        stops.add(node(2L, TradeType.BUY, 101L));
+        stops.add(node(3L, TradeType.BUY, 103L));
+        stops.add(node(4L, TradeType.SELL, 99L));
+        stops.add(node(5L, TradeType.SELL, 95L));
+        stops.traded(99L);
+        stops.traded(103L);
+        List<OrderNode> triggered = new ArrayList<>();
+
+        stops.release(triggered);
+
+        assertEquals(Arrays.asList(2L, 3L, 4L),
+                triggered.stream().map(node -> node.order.getOrderId()).collect(Collectors.toList()));
+        assertEquals(2, stops.size());
+        assertFalse(stops.hasTraded());
+    }
+
+    @Test
+    public void remove_UnregistersPendingOrder()
+    {
+        Map<Long, OrderNode> orderIndex = new HashMap<>();
+        StopIndex stops = new StopIndex(orderIndex);
+        OrderNode node = node(1L, TradeType.SELL, 99L);
+        stops.add(node);
+
+        stops.remove(node);
+        stops.traded(90L);
+        List<OrderNode> triggered = new ArrayList<>();
+        stops.release(triggered);
+
+        assertTrue(orderIndex.isEmpty());
+        assertTrue(triggered.isEmpty());
+        assertNull(node.stops);
+    }
+
+    private static OrderNode node(Long orderId, TradeType tradeType, long stopPrice) {
+        return new OrderNode(TestDataCreatorForOrderProcessor.createTradeOrderEntity(orderId, "HDFC", tradeType, BigInteger.TEN,
+                null, OrderType.STOP, orderId), TickSizeTable.MARKET_PRICE, 10L, stopPrice);
+    }
+}
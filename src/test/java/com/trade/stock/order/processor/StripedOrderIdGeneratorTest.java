@@ -0,0 +1,55 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+import org.junit.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StripedOrderIdGeneratorTest {
+
+    @Test
+    public void nextId_IncreasingPerShard_UniqueAcrossShards()
+    {
+        EngineProperties properties = new EngineProperties();
+        StripedOrderIdGenerator orderIds = new StripedOrderIdGenerator(properties);
+        int hdfc = TestDataCreatorForOrderProcessor.symbol("HDFC");
+        int other = TestDataCreatorForOrderProcessor.symbol("INFY");
+        assertNotEquals(MatchingEngine.shardFor(hdfc, properties.getShards()), MatchingEngine.shardFor(other, properties.getShards()));
+
+        long first = orderIds.nextId(hdfc);
+        long second = orderIds.nextId(hdfc);
+        long otherShard = orderIds.nextId(other);
+
+        assertTrue(first > 0);
+        assertTrue(second > first);
+        assertNotEquals(first, otherShard);
+        assertEquals(MatchingEngine.shardFor(hdfc, properties.getShards()), second & ((1 << StripedOrderIdGenerator.SHARD_BITS) - 1));
+    }
+
+    @Test
+    public void advance_IdsContinueAboveRecoveredId()
+    {
+        StripedOrderIdGenerator orderIds = new StripedOrderIdGenerator(new EngineProperties());
+        orderIds.advance(5000L);
+        orderIds.advance(-42L);
+
+        assertTrue(orderIds.nextId(TestDataCreatorForOrderProcessor.symbol("HDFC")) > 5000L);
+        assertTrue(orderIds.nextId(TestDataCreatorForOrderProcessor.symbol("INFY")) > 5000L);
+    }
+
+    @Test
+    public void highWaterMark_CoversEveryIdHandedOut()
+    {
+        EngineProperties properties = new EngineProperties();
+        StripedOrderIdGenerator orderIds = new StripedOrderIdGenerator(properties);
+        assertEquals(0L, orderIds.highWaterMark());
+        long last = Math.max(orderIds.nextId(TestDataCreatorForOrderProcessor.symbol("HDFC")), orderIds.nextId(TestDataCreatorForOrderProcessor.symbol("INFY")));
+
+        StripedOrderIdGenerator recovered = new StripedOrderIdGenerator(properties);
+        recovered.advance(orderIds.highWaterMark());
+
+        assertTrue(orderIds.highWaterMark() >= last);
+        assertTrue(recovered.nextId(TestDataCreatorForOrderProcessor.symbol("HDFC")) > last);
+        assertTrue(recovered.nextId(TestDataCreatorForOrderProcessor.symbol("INFY")) > last);
+    }
+}
@@ -0,0 +1,71 @@
+package com.trade.stock.order.processor;
+
+import com.trade.stock.order.config.EngineProperties;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SymbolRegistryTest {
+
+    @Test
+    public void register_SameTicker_SameDenseId()
+    {
+        SymbolRegistry symbols = new SymbolRegistry();
+
+        assertEquals(0, symbols.register("HDFC"));
+        assertEquals(1, symbols.register("INFY"));
+        assertEquals(0, symbols.register("HDFC"));
+        assertEquals("INFY", symbols.book(1).stockTicker);
+        assertSame(symbols.book(0), symbols.book("HDFC"));
+    }
+
+    @Test
+    public void find_UnknownTicker_NotRegistered()
+    {
+        SymbolRegistry symbols = new SymbolRegistry();
+
+        assertEquals(-1, symbols.find("HDFC"));
+        assertNull(symbols.book("HDFC"));
+        assertEquals(0, symbols.size());
+    }
+
+    @Test
+    public void register_TakesTickSizeOfBoundTable()
+    {
+        SymbolRegistry symbols = new SymbolRegistry();
+        EngineProperties properties = new EngineProperties();
+        properties.getTickSizes().put("HDFC", new BigDecimal("0.05"));
+        symbols.bind(new TickSizeTable(properties));
+
+        assertEquals(new BigDecimal("0.05"), symbols.book(symbols.register("HDFC")).tickSize);
+        assertEquals(properties.getTickSize(), symbols.book(symbols.register("INFY")).tickSize);
+    }
+
+    @Test
+    public void register_BeyondInitialCapacity_KeepsBooks()
+    {
+        SymbolRegistry symbols = new SymbolRegistry();
+        TickerBook first = symbols.book(symbols.register("S0"));
+        for (int i = 1; i < 8000; i++) {
+            assertEquals(i, symbols.register("S" + i));
+        }
+
+        assertSame(first, symbols.book("S0"));
+        assertEquals("S7999", symbols.book(7999).stockTicker);
+        assertEquals(8000, symbols.books().size());
+    }
+
+    @Test
+    public void shardFor_Symbol_SameShardAsTicker()
+    {
+        for (int i = 0; i < 100; i++) {
+            String stockTicker = "ROUTE" + i;
+            int symbol = OrderProcessor.symbols.register(stockTicker);
+            for (int shardCount = 1; shardCount <= 8; shardCount++) {
+                assertEquals(MatchingEngine.shardFor(stockTicker, shardCount), MatchingEngine.shardFor(symbol, shardCount));
+            }
+        }
+    }
+}
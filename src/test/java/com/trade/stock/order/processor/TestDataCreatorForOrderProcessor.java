@@ -1,32 +1,52 @@
 package com.trade.stock.order.processor;
 
+import com.trade.stock.order.config.EngineProperties;
 import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TimeInForce;
 import com.trade.stock.order.constants.TradeType;
 import com.trade.stock.order.dao.entity.TradeOrderEntity;
 import com.trade.stock.order.processor.OrderProcessor;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.concurrent.PriorityBlockingQueue;
 
 public final class TestDataCreatorForOrderProcessor {
 
 
     static void emptyOrders() {
 
-        OrderProcessor.buyMap.clear();
-        OrderProcessor.sellMap.clear();
+        OrderProcessor.symbols.clear();
+        OrderProcessor.orderIndex.clear();
+    }
+
+    static SnapshotStore noSnapshots() {
+        EngineProperties properties = new EngineProperties();
+        properties.getSnapshot().setEnabled(false);
+        return new SnapshotStore(properties);
     }
 
     static void prepareOneBuyOrder() {
-        OrderProcessor.buyMap.put("HDFC",createListTradeOrdersForBuy());
+        book("HDFC").buy = createListTradeOrdersForBuy();
     }
 
     static void prepareOneSellOrder() {
-        OrderProcessor.sellMap.put("HDFC",createListTradeOrdersForSell());
+        book("HDFC").sell = createListTradeOrdersForSell();
+    }
+
+    static OrderBookSide buySide(String stockTicker) {
+        return book(stockTicker).buy;
+    }
+
+    static OrderBookSide sellSide(String stockTicker) {
+        return book(stockTicker).sell;
+    }
+
+    static int symbol(String stockTicker) {
+        return OrderProcessor.symbols.register(stockTicker);
+    }
+
+    private static TickerBook book(String stockTicker) {
+        return OrderProcessor.symbols.book(symbol(stockTicker));
     }
 
     static TradeOrderEntity createTradeOrderEntity(Long orderId, String stockTicker, TradeType tradeType, BigInteger quantity, BigDecimal price, OrderType orderType,Long timeStamp)
@@ -42,9 +62,29 @@ public final class TestDataCreatorForOrderProcessor {
         return entity;
     }
 
-    static PriorityBlockingQueue<TradeOrderEntity> createListTradeOrdersForBuy()
+    static TradeOrderEntity createStopOrderEntity(Long orderId, String stockTicker, TradeType tradeType, BigInteger quantity, BigDecimal price,
+                                                  BigDecimal stopPrice, OrderType orderType, Long timeStamp)
     {
-        PriorityBlockingQueue<TradeOrderEntity> lst = new PriorityBlockingQueue<TradeOrderEntity>(10 , getComparator(TradeType.BUY));
+        TradeOrderEntity entity = createTradeOrderEntity(orderId, stockTicker, tradeType, quantity, price, orderType, timeStamp);
+        entity.setStopPrice(stopPrice);
+        return entity;
+    }
+
+    static TradeOrderEntity withDisplayQuantity(TradeOrderEntity entity, long displayQuantity)
+    {
+        entity.setDisplayQuantity(BigInteger.valueOf(displayQuantity));
+        return entity;
+    }
+
+    static TradeOrderEntity withTimeInForce(TradeOrderEntity entity, TimeInForce timeInForce)
+    {
+        entity.setTimeInForce(timeInForce);
+        return entity;
+    }
+
+    static OrderBookSide createListTradeOrdersForBuy()
+    {
+        OrderBookSide lst = new OrderBookSide(TradeType.BUY, OrderProcessor.orderIndex);
         TradeOrderEntity entity = new TradeOrderEntity();
         entity.setOrderId(1234L);
         entity.setStockTicker("HDFC");
@@ -52,14 +92,15 @@ public final class TestDataCreatorForOrderProcessor {
         entity.setQuantity(new BigInteger("50"));
         entity.setPrice(new BigDecimal("50"));
         entity.setOrderType(OrderType.LIMIT);
-        lst.offer(entity);
+        //Price in ticks of default tick size 0.01
+        lst.add(new OrderNode(entity, 5000L, 50L));
 
         return lst;
     }
 
-    private static PriorityBlockingQueue<TradeOrderEntity> createListTradeOrdersForSell()
+    private static OrderBookSide createListTradeOrdersForSell()
     {
-        PriorityBlockingQueue<TradeOrderEntity> lst = new PriorityBlockingQueue<TradeOrderEntity>(10 , getComparator(TradeType.BUY));
+        OrderBookSide lst = new OrderBookSide(TradeType.SELL, OrderProcessor.orderIndex);
         TradeOrderEntity entity = new TradeOrderEntity();
         entity.setOrderId(1234L);
         entity.setStockTicker("HDFC");
@@ -67,20 +108,9 @@ public final class TestDataCreatorForOrderProcessor {
         entity.setQuantity(new BigInteger("100"));
         entity.setPrice(new BigDecimal("50"));
         entity.setOrderType(OrderType.LIMIT);
-        lst.offer(entity);
+        //Price in ticks of default tick size 0.01
+        lst.add(new OrderNode(entity, 5000L, 100L));
 
         return lst;
     }
-
-    private static Comparator<TradeOrderEntity> getComparator(TradeType tradeType) {
-        Comparator<TradeOrderEntity> compareByPriceTimeOrders = tradeType == TradeType.BUY ?
-                Comparator.comparing(TradeOrderEntity::getOrderType)
-                .thenComparing(TradeOrderEntity::getPrice)
-                .thenComparing(TradeOrderEntity::getTradeTime) :  Comparator
-                .comparing(TradeOrderEntity::getOrderType)
-                .thenComparing(TradeOrderEntity::getPrice)
-                .thenComparing(TradeOrderEntity::getTradeTime).reversed();
-
-        return compareByPriceTimeOrders;
-    }
 }
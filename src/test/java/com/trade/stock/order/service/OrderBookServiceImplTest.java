@@ -3,25 +3,45 @@ package com.trade.stock.order.service;
 import com.trade.stock.order.constants.OrderType;
 import com.trade.stock.order.constants.TradeType;
 import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.exception.InvalidOrderException;
 import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.MarketDepth;
+import com.trade.stock.order.model.OrderBookPage;
+import com.trade.stock.order.model.OrderBookQuery;
+import com.trade.stock.order.model.OrderBookView;
 import com.trade.stock.order.model.OrderResponse;
+import com.trade.stock.order.model.TopOfBook;
 import com.trade.stock.order.model.TradeRequest;
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.processor.EngineMetrics;
+import com.trade.stock.order.processor.MarketDataFeed;
+import com.trade.stock.order.processor.MatchingEngine;
+import com.trade.stock.order.processor.OrderIdGenerator;
 import com.trade.stock.order.processor.OrderProcessor;
+import com.trade.stock.order.processor.StripedOrderIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import javax.validation.Validation;
+import javax.validation.Validator;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.doThrow;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class OrderBookServiceImplTest {
@@ -29,28 +49,136 @@ public class OrderBookServiceImplTest {
     @Mock
     OrderProcessor processor;
 
+    @Spy
+    MatchingEngine engine = new MatchingEngine(new EngineProperties());
+
+    @Mock
+    MarketDataFeed marketData;
+
+    @Mock
+    OrderBookViewCache views;
+
+    @Spy
+    OrderIdGenerator orderIds = new StripedOrderIdGenerator(new EngineProperties());
+
+    @Spy
+    EngineMetrics metrics = new EngineMetrics(new SimpleMeterRegistry());
+
+    @Spy
+    Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Spy
+    EngineProperties properties = new EngineProperties();
+
     @InjectMocks
     OrderBookServiceImpl orderBookService;
 
+    int hdfc;
+
+    @Before
+    public void registerStock()
+    {
+        hdfc = engine.symbolOf("HDFC");
+    }
+
     @Test
     public void stockOrderCreateValidResponse()
     {
-        assertEquals(successResponse().getResponse(),orderBookService.stockOrder(createTradeRequest()).getResponse());
+        assertEquals(successResponse().getResponse(),orderBookService.stockOrder(createTradeRequest()).join().getResponse());
+        verify(metrics).acked(anyLong());
+    }
+
+    @Test
+    public void stockOrdersBatchValidResponse()
+    {
+        TradeRequest other = createTradeRequest();
+        other.setStockTicker("INFY");
+        when(processor.processBatch(any(), any())).thenAnswer(invocation -> {
+            List<TradeOrderEntity> group = invocation.getArgument(0);
+            List<OrderResponse> outcomes = new ArrayList<>();
+            group.forEach(order -> outcomes.add(successResponse()));
+            return outcomes;
+        });
+        List<OrderResponse> responses = orderBookService.stockOrders(Arrays.asList(createTradeRequest(), other, createTradeRequest())).join();
+
+        assertEquals(3, responses.size());
+        responses.forEach(response -> {
+            assertEquals(successResponse().getResponse(), response.getResponse());
+            assertNotNull(response.getOrderId());
+        });
+        verify(processor, times(3)).validate(any());
+        verify(processor, atLeastOnce()).processBatch(any(), any());
+    }
+
+    @Test
+    public void stockOrdersBatchReturnsOutcomeOfEveryOrder()
+    {
+        TradeRequest other = createTradeRequest();
+        other.setStockTicker("INFY");
+        OrderResponse rejected = new OrderResponse();
+        rejected.setResponse("Rejected : Expire time 1 is in the past");
+        when(processor.processBatch(any(), any())).thenAnswer(invocation -> {
+            List<TradeOrderEntity> group = invocation.getArgument(0);
+            List<OrderResponse> outcomes = new ArrayList<>();
+            group.forEach(order -> outcomes.add("INFY".equals(order.getStockTicker()) ? rejected : successResponse()));
+            return outcomes;
+        });
+
+        List<OrderResponse> responses = orderBookService.stockOrders(Arrays.asList(createTradeRequest(), other, createTradeRequest())).join();
+
+        assertEquals(successResponse().getResponse(), responses.get(0).getResponse());
+        assertEquals(rejected, responses.get(1));
+        assertEquals(successResponse().getResponse(), responses.get(2).getResponse());
+    }
+
+    @Test(expected = InvalidOrderException.class)
+    public void stockOrdersBatchRejectedWhenOneOrderInvalid()
+    {
+        TradeRequest invalid = createTradeRequest();
+        invalid.setStockTicker(null);
+        try {
+            orderBookService.stockOrders(Arrays.asList(createTradeRequest(), invalid));
+        } finally {
+            verify(processor, never()).processBatch(any(), any());
+        }
+    }
+
+    @Test
+    public void stockOrderCreateInvalidOrder_CompletesExceptionally()
+    {
+        doThrow(new InvalidOrderException("Price is mandatory for LIMIT order")).when(processor).process(any(), anyInt());
+        CompletableFuture<OrderResponse> response = orderBookService.stockOrder(createTradeRequest());
+        CompletionException exception = assertThrows(CompletionException.class, response::join);
+        assertTrue(exception.getCause() instanceof InvalidOrderException);
+    }
+
+    @Test
+    public void stockOrderCreateInvalidOrder_RegistersNoStock()
+    {
+        TradeRequest invalid = createTradeRequest();
+        invalid.setStockTicker("NEVER_VALID");
+        doThrow(new InvalidOrderException("Price 10.01 is not a multiple of tick size 0.05 for NEVER_VALID")).when(processor).validate(any());
+
+        CompletionException exception = assertThrows(CompletionException.class, orderBookService.stockOrder(invalid)::join);
+        assertTrue(exception.getCause() instanceof InvalidOrderException);
+        assertEquals(-1, engine.findSymbol("NEVER_VALID"));
+        verify(processor, never()).process(any(), anyInt());
     }
 
     @Test
     public void retrieveOrderBookValidResponse() throws ResourceNotFoundException
     {
-        when(processor.retrieveOrderBook("HDFC")).thenReturn(createListTradeOrders());
-        assertEquals(createListTradeOrders(),orderBookService.retrieveOrderBook("HDFC"));
+        OrderBookPage page = new OrderBookPage(createListTradeOrders(), null);
+        when(processor.retrieveOrderBook(hdfc, new OrderBookQuery())).thenReturn(page);
+        assertEquals(page,orderBookService.retrieveOrderBook("HDFC", new OrderBookQuery()));
     }
 
     @Test
     public void retrieveOrderBookExceptionResponse() throws ResourceNotFoundException
     {
-        when(processor.retrieveOrderBook("HDFC")).thenThrow(ResourceNotFoundException.class);
+        when(processor.retrieveOrderBook(hdfc, new OrderBookQuery())).thenThrow(ResourceNotFoundException.class);
         try {
-            assertEquals(createListTradeOrders(), orderBookService.retrieveOrderBook("HDFC"));
+            orderBookService.retrieveOrderBook("HDFC", new OrderBookQuery());
             fail();
         }catch (ResourceNotFoundException e)
         {
@@ -59,6 +187,53 @@ public class OrderBookServiceImplTest {
 
     }
 
+    @Test
+    public void retrieveOrderBookUnknownStock_NotRegistered()
+    {
+        assertThrows(ResourceNotFoundException.class, () -> orderBookService.retrieveOrderBook("NEVER_TRADED", new OrderBookQuery()));
+        assertThrows(ResourceNotFoundException.class, () -> orderBookService.retrieveDepth("NEVER_TRADED", 5, null));
+        assertEquals(-1, engine.findSymbol("NEVER_TRADED"));
+        verifyNoInteractions(processor);
+    }
+
+    @Test
+    public void retrieveOrderBookViewValidResponse() throws ResourceNotFoundException
+    {
+        OrderBookView view = new OrderBookView("HDFC", 2L, createListTradeOrders(), new byte[0]);
+        when(views.get("HDFC")).thenReturn(view);
+        assertEquals(view, orderBookService.retrieveOrderBookView("HDFC"));
+    }
+
+    @Test
+    public void retrieveOrderBookViewEmptyBook() throws ResourceNotFoundException
+    {
+        when(views.get("HDFC")).thenReturn(new OrderBookView("HDFC", 4L, Collections.emptyList(), new byte[0]));
+        assertThrows(ResourceNotFoundException.class, () -> orderBookService.retrieveOrderBookView("HDFC"));
+    }
+
+    @Test
+    public void retrieveDepthValidResponse() throws ResourceNotFoundException
+    {
+        MarketDepth depth = new MarketDepth("HDFC", 3L, new ArrayList<>(), new ArrayList<>());
+        when(processor.retrieveDepth(hdfc, 5, TradeType.BUY)).thenReturn(depth);
+        assertEquals(depth, orderBookService.retrieveDepth("HDFC", 5, TradeType.BUY));
+    }
+
+    @Test
+    public void retrieveTopOfBookValidResponse() throws ResourceNotFoundException
+    {
+        TopOfBook topOfBook = new TopOfBook("HDFC", 3L, null, null);
+        when(marketData.topOfBook("HDFC")).thenReturn(topOfBook);
+        assertEquals(topOfBook, orderBookService.retrieveTopOfBook("HDFC"));
+        verifyNoInteractions(processor);
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void retrieveTopOfBookExceptionResponse() throws ResourceNotFoundException
+    {
+        orderBookService.retrieveTopOfBook("HDFC");
+    }
+
     @Test
     public void stockOrderUpdateValidResponse() throws ResourceNotFoundException
     {
@@ -70,7 +245,7 @@ public class OrderBookServiceImplTest {
     public void stockOrderUpdateExceptionResponse() throws ResourceNotFoundException
     {
         TradeOrderEntity entity = new TradeOrderEntity();
-        doThrow(new ResourceNotFoundException()).when(processor).processUpdate(any());
+        doThrow(new ResourceNotFoundException()).when(processor).processUpdate(any(), eq(hdfc));
         try {
             assertEquals(successResponse(), orderBookService.stockOrder(12345L,createTradeRequest()));
             fail();
@@ -83,12 +258,14 @@ public class OrderBookServiceImplTest {
     @Test
     public void deleteOrderValidResponse() throws ResourceNotFoundException
     {
+        when(processor.symbolOfOrder(12345L)).thenReturn(hdfc);
         when(processor.deleteOrder(12345L)).thenReturn(successResponse());
         assertEquals(successResponse(),orderBookService.deleteOrder(12345L));
     }
     @Test
     public void deleteOrderExceptionResponse() throws ResourceNotFoundException
     {
+        when(processor.symbolOfOrder(12345L)).thenReturn(hdfc);
         when(processor.deleteOrder(12345L)).thenThrow(ResourceNotFoundException.class);
         try {
             assertEquals(successResponse(), orderBookService.deleteOrder(12345L));
@@ -0,0 +1,111 @@
+package com.trade.stock.order.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.trade.stock.order.config.EngineProperties;
+import com.trade.stock.order.constants.OrderType;
+import com.trade.stock.order.constants.TradeType;
+import com.trade.stock.order.dao.entity.TradeOrderEntity;
+import com.trade.stock.order.dao.journal.NoOpOrderJournal;
+import com.trade.stock.order.exception.ResourceNotFoundException;
+import com.trade.stock.order.model.OrderBookView;
+import com.trade.stock.order.processor.EngineEventLog;
+import com.trade.stock.order.processor.EngineMetrics;
+import com.trade.stock.order.processor.ExecutionReportStream;
+import com.trade.stock.order.processor.MarketDataFeed;
+import com.trade.stock.order.processor.MatchingEngine;
+import com.trade.stock.order.processor.OrderProcessor;
+import com.trade.stock.order.processor.SnapshotStore;
+import com.trade.stock.order.processor.StripedOrderIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderBookViewCacheTest {
+
+    EngineProperties properties = snapshotsDisabled();
+    ExecutionReportStream executionReports = new ExecutionReportStream(properties);
+    OrderProcessor processor = new OrderProcessor(properties, executionReports, new MarketDataFeed(properties),
+            new StripedOrderIdGenerator(properties), new EngineEventLog(properties),
+            new EngineMetrics(new SimpleMeterRegistry()), new NoOpOrderJournal(), new SnapshotStore(properties));
+    MatchingEngine engine = new MatchingEngine(properties);
+    ObjectMapper objectMapper = new ObjectMapper();
+    OrderBookViewCache views = new OrderBookViewCache(processor, engine, objectMapper, properties);
+
+    @After
+    public void cleanUp()
+    {
+        engine.shutdown();
+        executionReports.shutdown();
+    }
+
+    @Test
+    public void get_SameVersion_ReturnsCachedView() throws Exception
+    {
+        engine.run(engine.symbolOf("VIEW1"), () -> processor.process(order(9001L, "VIEW1", TradeType.BUY)));
+
+        OrderBookView first = views.get("VIEW1");
+        OrderBookView second = views.get("VIEW1");
+
+        assertSame(first, second);
+        assertEquals(1, first.getOrders().size());
+        assertEquals(first.getOrders().size(), objectMapper.readTree(first.getJson()).size());
+    }
+
+    @Test
+    public void get_BookChanged_PublishesNewVersion() throws Exception
+    {
+        engine.run(engine.symbolOf("VIEW2"), () -> processor.process(order(9002L, "VIEW2", TradeType.BUY)));
+        OrderBookView before = views.get("VIEW2");
+
+        engine.run(engine.symbolOf("VIEW2"), () -> processor.process(order(9003L, "VIEW2", TradeType.SELL)));
+        OrderBookView after = views.get("VIEW2");
+
+        assertTrue(after.getVersion() > before.getVersion());
+        assertTrue(after.getOrders().isEmpty());
+        assertEquals(1, before.getOrders().size());
+    }
+
+    @Test
+    public void get_BookChangedWithinRefreshInterval_ReturnsLastView() throws Exception
+    {
+        properties.setViewRefreshMs(60000);
+        OrderBookViewCache throttled = new OrderBookViewCache(processor, engine, objectMapper, properties);
+        engine.run(engine.symbolOf("VIEW3"), () -> processor.process(order(9004L, "VIEW3", TradeType.BUY)));
+        OrderBookView before = throttled.get("VIEW3");
+
+        engine.run(engine.symbolOf("VIEW3"), () -> processor.process(order(9005L, "VIEW3", TradeType.BUY)));
+
+        assertSame(before, throttled.get("VIEW3"));
+        assertTrue(views.get("VIEW3").getVersion() > before.getVersion());
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void get_UnknownStock() throws ResourceNotFoundException
+    {
+        views.get("UNKNOWN");
+    }
+
+    private static TradeOrderEntity order(Long orderId, String stockTicker, TradeType tradeType) {
+        TradeOrderEntity entity = new TradeOrderEntity();
+        entity.setOrderId(orderId);
+        entity.setStockTicker(stockTicker);
+        entity.setTradeType(tradeType);
+        entity.setQuantity(BigInteger.TEN);
+        entity.setPrice(BigDecimal.TEN);
+        entity.setOrderType(OrderType.LIMIT);
+        entity.setTradeTime(orderId);
+        return entity;
+    }
+
+    private static EngineProperties snapshotsDisabled() {
+        EngineProperties properties = new EngineProperties();
+        properties.getSnapshot().setEnabled(false);
+        properties.setViewRefreshMs(0);
+        return properties;
+    }
+}
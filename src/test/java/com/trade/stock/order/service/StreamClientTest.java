@@ -0,0 +1,120 @@
+package com.trade.stock.order.service;
+
+import com.trade.stock.order.constants.TradeType;
+import com.trade.stock.order.model.DepthUpdate;
+import com.trade.stock.order.model.ExecutionReport;
+import com.trade.stock.order.model.MarketDepth;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamClientTest {
+
+    private final List<Runnable> senderTasks = new ArrayList<>();
+    private final List<Object> sent = new ArrayList<>();
+    private final SseEmitter emitter = new SseEmitter() {
+        @Override
+        public void send(SseEventBuilder builder) {
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                if (!(data.getData() instanceof String)) {
+                    sent.add(data.getData());
+                }
+            }
+        }
+    };
+
+    @Test
+    public void nothingSent_UntilDepthImage()
+    {
+        StreamClient client = new StreamClient("HDFC", emitter, senderTasks::add, 10);
+        client.offer(update(1L, "10.00", 5L));
+
+        assertTrue(senderTasks.isEmpty());
+
+        client.start(image(0L));
+        runSender();
+
+        assertEquals(2, sent.size());
+        assertEquals(image(0L), sent.get(0));
+        assertEquals(update(1L, "10.00", 5L), sent.get(1));
+    }
+
+    @Test
+    public void clientBehind_UpdatesCoalescedPerLevel()
+    {
+        StreamClient client = new StreamClient("HDFC", emitter, senderTasks::add, 10);
+        client.offer(update(2L, "10.00", 5L));
+        client.start(image(2L));
+        client.offer(update(3L, "10.00", 7L));
+        client.offer(update(4L, "10.01", 1L));
+        client.offer(update(5L, "10.00", 9L));
+        ExecutionReport fill = new ExecutionReport(1L, "HDFC", 2L, 1L, TradeType.SELL, new BigDecimal("10.00"), BigInteger.ONE, 1L);
+        client.offer(fill);
+
+        assertEquals(1, senderTasks.size());
+        runSender();
+
+        assertEquals(4, sent.size());
+        assertEquals(image(2L), sent.get(0));
+        assertEquals(update(4L, "10.01", 1L), sent.get(1));
+        assertEquals(update(5L, "10.00", 9L), sent.get(2));
+        assertEquals(fill, sent.get(3));
+    }
+
+    @Test
+    public void fillBacklogExceeded_ClientDisconnected()
+    {
+        List<StreamClient> closed = new ArrayList<>();
+        StreamClient client = new StreamClient("HDFC", emitter, senderTasks::add, 2, closed::add);
+        for (long i = 1; i <= 3; i++) {
+            client.offer(new ExecutionReport(i, "HDFC", 2L, 1L, TradeType.SELL, BigDecimal.TEN, BigInteger.ONE, 1L));
+        }
+
+        assertTrue(client.isClosed());
+        assertEquals(Collections.singletonList(client), closed);
+        client.start(image(0L));
+        assertTrue(senderTasks.isEmpty());
+    }
+
+    @Test
+    public void sendFailure_ClientHandedToCloseHandler()
+    {
+        List<StreamClient> closed = new ArrayList<>();
+        SseEmitter broken = new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        StreamClient client = new StreamClient("HDFC", broken, senderTasks::add, 10, closed::add);
+        client.start(image(0L));
+        runSender();
+
+        assertTrue(client.isClosed());
+        assertEquals(Collections.singletonList(client), closed);
+    }
+
+    private void runSender() {
+        List<Runnable> tasks = new ArrayList<>(senderTasks);
+        senderTasks.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private static MarketDepth image(long sequence) {
+        return new MarketDepth("HDFC", sequence, Collections.emptyList(), Collections.emptyList());
+    }
+
+    private static DepthUpdate update(long sequence, String price, long quantity) {
+        return new DepthUpdate(sequence, "HDFC", TradeType.BUY, DepthUpdate.Action.CHANGE, new BigDecimal(price),
+                BigInteger.valueOf(quantity), 1);
+    }
+}